@@ -11,33 +11,67 @@ import lombok.Getter;
 import nl.andrewl.concord_client.data.ClientDataStore;
 import nl.andrewl.concord_client.data.JsonClientDataStore;
 import nl.andrewl.concord_client.event.EventManager;
+import nl.andrewl.concord_client.event.handlers.ChannelCountsHandler;
+import nl.andrewl.concord_client.event.handlers.ChannelDirectoryPageHandler;
+import nl.andrewl.concord_client.event.handlers.ChannelDirectoryUpdateHandler;
+import nl.andrewl.concord_client.event.handlers.ChannelMembersHandler;
 import nl.andrewl.concord_client.event.handlers.ChannelMovedHandler;
 import nl.andrewl.concord_client.event.handlers.ChatHistoryResponseHandler;
-import nl.andrewl.concord_client.event.handlers.ServerMetaDataHandler;
-import nl.andrewl.concord_client.event.handlers.ServerUsersHandler;
+import nl.andrewl.concord_client.event.handlers.PresenceUpdateHandler;
 import nl.andrewl.concord_client.gui.MainWindow;
 import nl.andrewl.concord_client.model.ClientModel;
 import nl.andrewl.concord_core.msg.Encryption;
+import nl.andrewl.concord_core.msg.FragmentAssembler;
 import nl.andrewl.concord_core.msg.Message;
 import nl.andrewl.concord_core.msg.Serializer;
-import nl.andrewl.concord_core.msg.types.ServerMetaData;
-import nl.andrewl.concord_core.msg.types.ServerUsers;
+import nl.andrewl.concord_core.msg.types.MessageFragment;
+import nl.andrewl.concord_core.msg.types.Ping;
+import nl.andrewl.concord_core.msg.types.Pong;
+import nl.andrewl.concord_core.msg.types.PresenceUpdate;
+import nl.andrewl.concord_core.msg.types.channel.ChannelCounts;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryPage;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryRequest;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryUpdate;
+import nl.andrewl.concord_core.msg.types.channel.ChannelMembers;
 import nl.andrewl.concord_core.msg.types.channel.MoveToChannel;
 import nl.andrewl.concord_core.msg.types.chat.Chat;
+import nl.andrewl.concord_core.msg.types.chat.ChatBatch;
 import nl.andrewl.concord_core.msg.types.chat.ChatHistoryRequest;
 import nl.andrewl.concord_core.msg.types.chat.ChatHistoryResponse;
 import nl.andrewl.concord_core.msg.types.client_setup.*;
+import nl.andrewl.concord_core.transport.Connection;
+import nl.andrewl.concord_core.transport.SocketConnection;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.Socket;
 import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ConcordClient implements Runnable {
-	private final Socket socket;
+	/**
+	 * The number of channels to load from the channel directory at once.
+	 */
+	private static final int CHANNEL_PAGE_SIZE = 50;
+
+	/**
+	 * The number of milliseconds to wait for chats that seem to be missing,
+	 * in case they're just late, before requesting them from the server.
+	 */
+	private static final long MISSED_CHATS_WAIT_MILLIS = 500;
+
+	/**
+	 * The number of missed chats to request at once. This is no more than the
+	 * server allows by default.
+	 */
+	private static final int MISSED_CHATS_PAGE_SIZE = 50;
+
+	private final Connection connection;
 	private final InputStream in;
 	private final OutputStream out;
 	private final Serializer serializer;
@@ -48,15 +82,26 @@ public class ConcordClient implements Runnable {
 
 	private final EventManager eventManager;
 
+	/**
+	 * Puts large messages back together, which the server sends in fragments.
+	 */
+	private final FragmentAssembler fragmentAssembler;
+
 	private volatile boolean running;
 
-	private ConcordClient(String host, int port) throws IOException {
+	/**
+	 * Whether a check for missed chats is waiting to run.
+	 */
+	private final AtomicBoolean missedChatsCheckScheduled = new AtomicBoolean();
+
+	private ConcordClient(Connection connection) throws IOException {
 		this.eventManager = new EventManager(this);
-		this.socket = new Socket(host, port);
+		this.connection = connection;
 		this.serializer = new Serializer();
+		this.fragmentAssembler = new FragmentAssembler(this.serializer);
 		this.dataStore = new JsonClientDataStore(Path.of("concord-session-tokens.json"));
 		try {
-			var streams = Encryption.upgrade(socket.getInputStream(), socket.getOutputStream(), this.serializer);
+			var streams = Encryption.upgrade(connection.getInputStream(), connection.getOutputStream(), this.serializer);
 			this.in = streams.first();
 			this.out = streams.second();
 		} catch (GeneralSecurityException e) {
@@ -64,14 +109,29 @@ public class ConcordClient implements Runnable {
 		}
 		// Add event listeners.
 		this.eventManager.addHandler(MoveToChannel.class, new ChannelMovedHandler());
-		this.eventManager.addHandler(ServerUsers.class, new ServerUsersHandler());
+		this.eventManager.addHandler(PresenceUpdate.class, new PresenceUpdateHandler());
+		this.eventManager.addHandler(ChannelMembers.class, new ChannelMembersHandler());
+		this.eventManager.addHandler(ChannelCounts.class, new ChannelCountsHandler());
 		this.eventManager.addHandler(ChatHistoryResponse.class, new ChatHistoryResponseHandler());
-		this.eventManager.addHandler(Chat.class, (msg, client) -> client.getModel().getChatHistory().addChat(msg));
-		this.eventManager.addHandler(ServerMetaData.class, new ServerMetaDataHandler());
+		this.eventManager.addHandler(Chat.class, (msg, client) -> client.receiveChat(msg));
+		this.eventManager.addHandler(ChatBatch.class, (msg, client) -> {
+			for (var chat : msg.chats()) client.receiveChat(chat);
+		});
+		this.eventManager.addHandler(ChannelDirectoryPage.class, new ChannelDirectoryPageHandler());
+		this.eventManager.addHandler(ChannelDirectoryUpdate.class, new ChannelDirectoryUpdateHandler());
+		this.eventManager.addHandler(Ping.class, (msg, client) -> client.sendMessage(new Pong(msg.timestamp())));
+		this.eventManager.addHandler(MessageFragment.class, (msg, client) -> {
+			Message message = client.fragmentAssembler.accept(msg);
+			if (message != null) client.eventManager.handle(message);
+		});
 	}
 
 	public static ConcordClient register(String host, int port, String username, String password) throws IOException {
-		var client = new ConcordClient(host, port);
+		return register(SocketConnection.open(host, port), username, password);
+	}
+
+	public static ConcordClient register(Connection connection, String username, String password) throws IOException {
+		var client = new ConcordClient(connection);
 		client.sendMessage(new ClientRegistration(null, null, username, password));
 		Message reply = client.serializer.readMessage(client.in);
 		if (reply instanceof RegistrationStatus status) {
@@ -88,7 +148,11 @@ public class ConcordClient implements Runnable {
 	}
 
 	public static ConcordClient login(String host, int port, String username, String password) throws IOException {
-		var client = new ConcordClient(host, port);
+		return login(SocketConnection.open(host, port), username, password);
+	}
+
+	public static ConcordClient login(Connection connection, String username, String password) throws IOException {
+		var client = new ConcordClient(connection);
 		client.sendMessage(new ClientLogin(username, password));
 		Message reply = client.serializer.readMessage(client.in);
 		if (reply instanceof ServerWelcome welcome) {
@@ -102,8 +166,12 @@ public class ConcordClient implements Runnable {
 	}
 
 	public static ConcordClient loginWithToken(String host, int port) throws IOException {
-		var client = new ConcordClient(host, port);
-		var token = client.dataStore.getSessionToken(client.socket.getInetAddress().getHostName() + ":" + client.socket.getPort());
+		return loginWithToken(SocketConnection.open(host, port));
+	}
+
+	public static ConcordClient loginWithToken(Connection connection) throws IOException {
+		var client = new ConcordClient(connection);
+		var token = client.dataStore.getSessionToken(connection.getRemoteAddress());
 		if (token.isPresent()) {
 			client.sendMessage(new ClientSessionResume(token.get()));
 			Message reply = client.serializer.readMessage(client.in);
@@ -122,26 +190,92 @@ public class ConcordClient implements Runnable {
 				username,
 				welcomeData.currentChannelId(),
 				welcomeData.currentChannelName(),
-				welcomeData.metaData()
+				welcomeData.serverName(),
+				welcomeData.directoryVersion()
 		);
-		this.dataStore.saveSessionToken(this.socket.getInetAddress().getHostName() + ":" + this.socket.getPort(), welcomeData.sessionToken());
+		this.model = model;
+		this.dataStore.saveSessionToken(this.connection.getRemoteAddress(), welcomeData.sessionToken());
+		this.requestChannels();
 		// Start fetching initial data for the channel we were initially put into.
 		this.sendMessage(new ChatHistoryRequest(model.getCurrentChannelId(), ""));
 	}
 
-	public void sendMessage(Message message) throws IOException {
+	/**
+	 * Loads the first page of channels from the server's channel directory,
+	 * forgetting any that were loaded before.
+	 * @throws IOException If the request could not be sent.
+	 */
+	public void requestChannels() throws IOException {
+		this.model.clearChannels();
+		this.sendMessage(new ChannelDirectoryRequest(CHANNEL_PAGE_SIZE));
+	}
+
+	/**
+	 * Loads the next page of channels from the server's channel directory, if
+	 * there are any more.
+	 * @throws IOException If the request could not be sent.
+	 */
+	public void requestMoreChannels() throws IOException {
+		String cursor = this.model.getNextChannelCursor();
+		if (cursor != null) {
+			this.sendMessage(new ChannelDirectoryRequest("", cursor, CHANNEL_PAGE_SIZE));
+		}
+	}
+
+	public synchronized void sendMessage(Message message) throws IOException {
 		this.serializer.writeMessage(message, this.out);
 	}
 
+	/**
+	 * Adds a chat that was sent in the current channel to the chat history.
+	 * If any chats seem to have been missed since the last one, because their
+	 * sequence numbers were skipped, they're requested from the server after
+	 * a short wait, unless they arrive in the meantime.
+	 * @param chat The chat that was received.
+	 */
+	private void receiveChat(Chat chat) {
+		var history = this.model.getChatHistory();
+		long last = history.getLastSequence();
+		history.addChat(chat);
+		if (last > 0 && chat.sequence() > last + 1 && this.missedChatsCheckScheduled.compareAndSet(false, true)) {
+			CompletableFuture.delayedExecutor(MISSED_CHATS_WAIT_MILLIS, TimeUnit.MILLISECONDS).execute(() -> {
+				this.missedChatsCheckScheduled.set(false);
+				try {
+					this.requestMissedChats();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Requests the oldest page of chats that are missing from the chat
+	 * history, if any are. This is done again each time that some of them
+	 * arrive, until all gaps are filled.
+	 * @throws IOException If the request could not be sent.
+	 */
+	public void requestMissedChats() throws IOException {
+		var history = this.model.getChatHistory();
+		long[] gap = history.findGap();
+		if (gap == null) return;
+		long count = Math.min(gap[1] - gap[0] - 1, MISSED_CHATS_PAGE_SIZE);
+		this.sendMessage(new ChatHistoryRequest(history.getChannelId(), Map.of(
+				"after", Long.toString(gap[0]),
+				"before", Long.toString(gap[1]),
+				"count", Long.toString(count)
+		)));
+	}
+
 	public void sendChat(String message) throws IOException {
-		this.serializer.writeMessage(new Chat(this.model.getId(), this.model.getNickname(), System.currentTimeMillis(), message), this.out);
+		this.sendMessage(new Chat(this.model.getId(), this.model.getNickname(), System.currentTimeMillis(), message));
 	}
 
 	public void shutdown() {
 		this.running = false;
-		if (!this.socket.isClosed()) {
+		if (!this.connection.isClosed()) {
 			try {
-				this.socket.close();
+				this.connection.close();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -161,7 +295,7 @@ public class ConcordClient implements Runnable {
 			}
 		}
 		try {
-			this.socket.close();
+			this.connection.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -4,6 +4,7 @@ import nl.andrewl.concord_core.msg.types.ServerMetaData;
 import nl.andrewl.concord_core.msg.types.UserData;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public interface ClientModelListener {
@@ -11,5 +12,7 @@ public interface ClientModelListener {
 
 	default void usersUpdated(List<UserData> users) {}
 
-	default void serverMetaDataUpdated(ServerMetaData metaData) {}
+	default void channelsUpdated(List<ServerMetaData.ChannelData> channels) {}
+
+	default void channelMemberCountsUpdated(Map<UUID, Integer> memberCounts) {}
 }
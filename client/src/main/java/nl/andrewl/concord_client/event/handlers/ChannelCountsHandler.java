@@ -0,0 +1,20 @@
+package nl.andrewl.concord_client.event.handlers;
+
+import nl.andrewl.concord_client.ConcordClient;
+import nl.andrewl.concord_client.event.MessageHandler;
+import nl.andrewl.concord_core.msg.types.channel.ChannelCounts;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+public class ChannelCountsHandler implements MessageHandler<ChannelCounts> {
+	@Override
+	public void handle(ChannelCounts msg, ConcordClient client) {
+		Map<UUID, Integer> memberCounts = new HashMap<>();
+		for (var count : msg.counts()) {
+			memberCounts.put(count.channelId(), count.memberCount());
+		}
+		client.getModel().updateChannelMemberCounts(memberCounts);
+	}
+}
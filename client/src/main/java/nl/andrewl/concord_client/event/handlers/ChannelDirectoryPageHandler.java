@@ -0,0 +1,16 @@
+package nl.andrewl.concord_client.event.handlers;
+
+import nl.andrewl.concord_client.ConcordClient;
+import nl.andrewl.concord_client.event.MessageHandler;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryPage;
+
+public class ChannelDirectoryPageHandler implements MessageHandler<ChannelDirectoryPage> {
+	@Override
+	public void handle(ChannelDirectoryPage msg, ConcordClient client) throws Exception {
+		// Only the unfiltered directory is kept in the model.
+		if (!msg.prefix().isEmpty()) return;
+		if (!client.getModel().addChannelPage(msg)) {
+			client.requestChannels();
+		}
+	}
+}
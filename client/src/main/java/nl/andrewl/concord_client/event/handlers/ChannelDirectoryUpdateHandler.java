@@ -0,0 +1,14 @@
+package nl.andrewl.concord_client.event.handlers;
+
+import nl.andrewl.concord_client.ConcordClient;
+import nl.andrewl.concord_client.event.MessageHandler;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryUpdate;
+
+public class ChannelDirectoryUpdateHandler implements MessageHandler<ChannelDirectoryUpdate> {
+	@Override
+	public void handle(ChannelDirectoryUpdate msg, ConcordClient client) throws Exception {
+		if (!client.getModel().applyDirectoryUpdate(msg)) {
+			client.requestChannels();
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package nl.andrewl.concord_client.event.handlers;
+
+import nl.andrewl.concord_client.ConcordClient;
+import nl.andrewl.concord_client.event.MessageHandler;
+import nl.andrewl.concord_core.msg.types.channel.ChannelMembers;
+
+import java.util.Arrays;
+
+public class ChannelMembersHandler implements MessageHandler<ChannelMembers> {
+	@Override
+	public void handle(ChannelMembers msg, ConcordClient client) {
+		if (!msg.channelId().equals(client.getModel().getCurrentChannelId())) return;
+		client.getModel().setKnownUsers(Arrays.asList(msg.members()));
+	}
+}
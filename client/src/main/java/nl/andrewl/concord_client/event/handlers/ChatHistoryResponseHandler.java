@@ -5,11 +5,16 @@ import nl.andrewl.concord_client.event.MessageHandler;
 import nl.andrewl.concord_core.msg.types.chat.ChatHistoryResponse;
 
 import java.util.Arrays;
-import java.util.List;
 
 public class ChatHistoryResponseHandler implements MessageHandler<ChatHistoryResponse> {
 	@Override
-	public void handle(ChatHistoryResponse msg, ConcordClient client) {
-		client.getModel().getChatHistory().setChats(Arrays.asList(msg.messages()));
+	public void handle(ChatHistoryResponse msg, ConcordClient client) throws Exception {
+		// Ignore responses for a channel that we've since left.
+		if (!msg.channelId().equals(client.getModel().getCurrentChannelId())) return;
+		client.getModel().getChatHistory().setChats(msg.channelId(), Arrays.asList(msg.messages()));
+		// Keep filling any gaps, for as long as that gets us more chats.
+		if (msg.messages().length > 0) {
+			client.requestMissedChats();
+		}
 	}
 }
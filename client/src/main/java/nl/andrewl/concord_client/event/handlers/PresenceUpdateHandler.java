@@ -0,0 +1,15 @@
+package nl.andrewl.concord_client.event.handlers;
+
+import nl.andrewl.concord_client.ConcordClient;
+import nl.andrewl.concord_client.event.MessageHandler;
+import nl.andrewl.concord_core.msg.types.PresenceUpdate;
+
+import java.util.Arrays;
+
+public class PresenceUpdateHandler implements MessageHandler<PresenceUpdate> {
+	@Override
+	public void handle(PresenceUpdate msg, ConcordClient client) {
+		if (!msg.channelId().equals(client.getModel().getCurrentChannelId())) return;
+		client.getModel().updateKnownUsers(Arrays.asList(msg.joined()), Arrays.asList(msg.left()));
+	}
+}
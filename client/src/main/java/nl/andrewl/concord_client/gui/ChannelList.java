@@ -11,7 +11,8 @@ import java.io.IOException;
 
 /**
  * Panel that contains a list of channels. A user can interact with a channel to
- * move to that channel. The current channel is indicated via a "*".
+ * move to that channel. The current channel is indicated via a "*". Channels
+ * are loaded from the server in pages, and the user can load more of them.
  */
 public class ChannelList extends Panel {
 	private final ConcordClient client;
@@ -22,11 +23,15 @@ public class ChannelList extends Panel {
 
 	public void setChannels() {
 		this.removeAllComponents();
-		for (var channel : this.client.getModel().getServerMetaData().channels()) {
+		for (var channel : this.client.getModel().getChannels()) {
 			String name = channel.name();
 			if (client.getModel().getCurrentChannelId().equals(channel.id())) {
 				name = "*" + name;
 			}
+			Integer memberCount = client.getModel().getChannelMemberCounts().get(channel.id());
+			if (memberCount != null) {
+				name += " (" + memberCount + ")";
+			}
 			Button b = new Button(name, () -> {
 				if (!client.getModel().getCurrentChannelId().equals(channel.id())) {
 					try {
@@ -38,5 +43,15 @@ public class ChannelList extends Panel {
 			});
 			this.addComponent(b, LinearLayout.createLayoutData(LinearLayout.Alignment.End));
 		}
+		if (this.client.getModel().getNextChannelCursor() != null) {
+			Button more = new Button("More...", () -> {
+				try {
+					client.requestMoreChannels();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			});
+			this.addComponent(more, LinearLayout.createLayoutData(LinearLayout.Alignment.End));
+		}
 	}
 }
@@ -8,6 +8,7 @@ import nl.andrewl.concord_core.msg.types.ServerMetaData;
 import nl.andrewl.concord_core.msg.types.UserData;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -60,7 +61,14 @@ public class ServerPanel extends Panel implements ClientModelListener {
 	}
 
 	@Override
-	public void serverMetaDataUpdated(ServerMetaData metaData) {
+	public void channelMemberCountsUpdated(Map<UUID, Integer> memberCounts) {
+		this.getTextGUI().getGUIThread().invokeLater(() -> {
+			this.channelList.setChannels();
+		});
+	}
+
+	@Override
+	public void channelsUpdated(List<ServerMetaData.ChannelData> channels) {
 		this.getTextGUI().getGUIThread().invokeLater(() -> {
 			this.channelList.setChannels();
 		});
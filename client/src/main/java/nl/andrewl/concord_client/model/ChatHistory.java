@@ -5,35 +5,110 @@ import nl.andrewl.concord_client.event.ChatHistoryListener;
 import nl.andrewl.concord_core.msg.types.chat.Chat;
 
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Stores information about a snippet of chat history that the client is
  * currently viewing. This might be some older section of chats, or it could be
  * the currently-in-use channel chats.
+ * <p>
+ *     The chats are kept in order of their sequence number, and chats that
+ *     arrive out of order, like the ones that are fetched to fill a gap, are
+ *     merged into their place.
+ * </p>
  */
 public class ChatHistory {
+	/**
+	 * The id of the channel that these chats are from.
+	 */
+	@Getter
+	private UUID channelId;
+
 	@Getter
 	private List<Chat> chats;
 
+	/**
+	 * The sequence number of the newest chat in this history, or 0 if there
+	 * are none.
+	 */
+	@Getter
+	private long lastSequence;
+
 	private final List<ChatHistoryListener> chatHistoryListeners;
 
-	public ChatHistory() {
+	public ChatHistory(UUID channelId) {
+		this.channelId = channelId;
 		this.chats = new CopyOnWriteArrayList<>();
 		this.chatHistoryListeners = new CopyOnWriteArrayList<>();
 	}
 
-	public void setChats(List<Chat> chats) {
+	/**
+	 * Clears this history, so that it can hold the chats from a channel.
+	 * @param channelId The id of the channel.
+	 */
+	public synchronized void reset(UUID channelId) {
+		this.channelId = channelId;
+		this.chats.clear();
+		this.lastSequence = 0;
+		this.chatHistoryListeners.forEach(listener -> listener.chatUpdated(this));
+	}
+
+	/**
+	 * Sets the chats in this history. If they're from the same channel as the
+	 * chats that are already here, they're merged with them, and otherwise
+	 * they replace them.
+	 * @param channelId The id of the channel that the chats are from.
+	 * @param chats The chats, in order of their sequence number.
+	 */
+	public synchronized void setChats(UUID channelId, List<Chat> chats) {
+		if (!channelId.equals(this.channelId)) {
+			this.channelId = channelId;
+			this.chats.clear();
+			this.lastSequence = 0;
+		}
+		Map<Long, Chat> merged = new TreeMap<>();
+		for (var chat : this.chats) merged.put(chat.sequence(), chat);
+		for (var chat : chats) merged.putIfAbsent(chat.sequence(), chat);
 		this.chats.clear();
-		this.chats.addAll(chats);
+		this.chats.addAll(merged.values());
+		if (!this.chats.isEmpty()) {
+			this.lastSequence = this.chats.get(this.chats.size() - 1).sequence();
+		}
 		this.chatHistoryListeners.forEach(listener -> listener.chatUpdated(this));
 	}
 
-	public void addChat(Chat chat) {
+	/**
+	 * Adds a chat that was just sent in this history's channel.
+	 * @param chat The chat to add.
+	 */
+	public synchronized void addChat(Chat chat) {
+		if (chat.sequence() <= this.lastSequence) {
+			this.setChats(this.channelId, List.of(chat));
+			return;
+		}
 		this.chats.add(chat);
+		this.lastSequence = chat.sequence();
 		this.chatHistoryListeners.forEach(listener -> listener.chatAdded(chat));
 	}
 
+	/**
+	 * Finds the oldest gap in this history, where some chats are missing
+	 * between two chats that are here.
+	 * @return The sequence numbers of the chats just before and just after
+	 * the gap, or null if there are no gaps.
+	 */
+	public synchronized long[] findGap() {
+		for (int i = 1; i < this.chats.size(); i++) {
+			long previous = this.chats.get(i - 1).sequence();
+			long next = this.chats.get(i).sequence();
+			if (next > previous + 1) return new long[]{previous, next};
+		}
+		return null;
+	}
+
 	public void addListener(ChatHistoryListener listener) {
 		this.chatHistoryListeners.add(listener);
 	}
@@ -4,34 +4,69 @@ import lombok.Getter;
 import nl.andrewl.concord_client.event.ClientModelListener;
 import nl.andrewl.concord_core.msg.types.ServerMetaData;
 import nl.andrewl.concord_core.msg.types.UserData;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryPage;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryUpdate;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 @Getter
 public class ClientModel {
 	private final UUID id;
 	private String nickname;
-	private ServerMetaData serverMetaData;
+	private final String serverName;
+
+	/**
+	 * The channels that have been loaded from the server's channel directory,
+	 * sorted by name. These are the first pages of the directory, and not
+	 * necessarily all channels.
+	 */
+	private final List<ServerMetaData.ChannelData> channels;
+
+	/**
+	 * The version of the channel directory which {@link ClientModel#channels}
+	 * is up to date with.
+	 */
+	private long directoryVersion;
+
+	/**
+	 * The cursor for loading the next page of channels, or null if all
+	 * channels have been loaded.
+	 */
+	private String nextChannelCursor;
+
+	/**
+	 * Whether the first page of channels has been loaded, and the highest
+	 * version from any update that arrived before it.
+	 */
+	private boolean channelsLoaded;
+	private long pendingDirectoryVersion;
 
 	private UUID currentChannelId;
 	private String currentChannelName;
 	private List<UserData> knownUsers;
+
+	/**
+	 * The number of users in each of the server's channels, by channel id.
+	 */
+	private final Map<UUID, Integer> channelMemberCounts;
 	private final ChatHistory chatHistory;
 
 	private final List<ClientModelListener> modelListeners;
 
-	public ClientModel(UUID id, String nickname, UUID currentChannelId, String currentChannelName, ServerMetaData serverMetaData) {
+	public ClientModel(UUID id, String nickname, UUID currentChannelId, String currentChannelName, String serverName, long directoryVersion) {
 		this.modelListeners = new CopyOnWriteArrayList<>();
 		this.id = id;
 		this.nickname = nickname;
 		this.currentChannelId = currentChannelId;
 		this.currentChannelName = currentChannelName;
-		this.serverMetaData = serverMetaData;
+		this.serverName = serverName;
+		this.channels = new ArrayList<>();
+		this.directoryVersion = directoryVersion;
 		this.knownUsers = new ArrayList<>();
-		this.chatHistory = new ChatHistory();
+		this.channelMemberCounts = new ConcurrentHashMap<>();
+		this.chatHistory = new ChatHistory(currentChannelId);
 	}
 
 	public void setCurrentChannel(UUID channelId, String channelName) {
@@ -39,6 +74,7 @@ public class ClientModel {
 		String oldName = this.currentChannelName;
 		this.currentChannelId = channelId;
 		this.currentChannelName = channelName;
+		this.chatHistory.reset(channelId);
 		this.modelListeners.forEach(listener -> listener.channelMoved(oldId, oldName, channelId, channelName));
 	}
 
@@ -47,9 +83,109 @@ public class ClientModel {
 		this.modelListeners.forEach(listener -> listener.usersUpdated(this.knownUsers));
 	}
 
-	public void setServerMetaData(ServerMetaData metaData) {
-		this.serverMetaData = metaData;
-		this.modelListeners.forEach(listener -> listener.serverMetaDataUpdated(metaData));
+	/**
+	 * Updates the list of known users with the users that joined and left.
+	 * @param joined The users that joined.
+	 * @param left The users that left.
+	 */
+	public void updateKnownUsers(List<UserData> joined, List<UserData> left) {
+		Set<UUID> changedIds = new HashSet<>();
+		joined.forEach(user -> changedIds.add(user.id()));
+		left.forEach(user -> changedIds.add(user.id()));
+		List<UserData> users = new ArrayList<>(this.knownUsers.size() + joined.size());
+		for (var user : this.knownUsers) {
+			if (!changedIds.contains(user.id())) users.add(user);
+		}
+		users.addAll(joined);
+		users.sort(Comparator.comparing(UserData::name));
+		this.setKnownUsers(users);
+	}
+
+	/**
+	 * Updates the number of users in some channels.
+	 * @param memberCounts The new counts, by channel id.
+	 */
+	public void updateChannelMemberCounts(Map<UUID, Integer> memberCounts) {
+		this.channelMemberCounts.putAll(memberCounts);
+		this.modelListeners.forEach(listener -> listener.channelMemberCountsUpdated(this.channelMemberCounts));
+	}
+
+	/**
+	 * @return A copy of the channels that have been loaded, sorted by name.
+	 */
+	public synchronized List<ServerMetaData.ChannelData> getChannels() {
+		return List.copyOf(this.channels);
+	}
+
+	public synchronized String getNextChannelCursor() {
+		return this.nextChannelCursor;
+	}
+
+	/**
+	 * Forgets all loaded channels, before loading them again from the first
+	 * page.
+	 */
+	public synchronized void clearChannels() {
+		this.channels.clear();
+		this.nextChannelCursor = null;
+		this.channelsLoaded = false;
+	}
+
+	/**
+	 * Adds a page of channels from the server's channel directory.
+	 * @param page The page.
+	 * @return True if the page was added, or false if the directory has
+	 * changed since the previous page, so that all channels should be loaded
+	 * again.
+	 */
+	public boolean addChannelPage(ChannelDirectoryPage page) {
+		synchronized (this) {
+			if (this.channelsLoaded ? page.version() != this.directoryVersion : page.version() < this.pendingDirectoryVersion) {
+				return false;
+			}
+			this.directoryVersion = page.version();
+			this.channels.addAll(Arrays.asList(page.channels()));
+			this.nextChannelCursor = page.next();
+			this.channelsLoaded = true;
+		}
+		this.channelsUpdated();
+		return true;
+	}
+
+	/**
+	 * Applies a change to the server's channel directory to the loaded
+	 * channels.
+	 * @param update The update.
+	 * @return True if the update was applied, or false if an update was
+	 * missed, so that all channels should be loaded again.
+	 */
+	public boolean applyDirectoryUpdate(ChannelDirectoryUpdate update) {
+		synchronized (this) {
+			if (!this.channelsLoaded) {
+				// The first page is still coming, and should include this change.
+				this.pendingDirectoryVersion = Math.max(this.pendingDirectoryVersion, update.version());
+				return true;
+			}
+			if (update.version() != this.directoryVersion + 1) return false;
+			this.directoryVersion = update.version();
+			this.channels.removeIf(channel -> channel.id().equals(update.channelId()));
+			// Added channels are only kept if they're within the loaded pages.
+			boolean inLoadedPages = this.nextChannelCursor == null || update.name().compareTo(this.nextChannelCursor) < 0;
+			if (update.type() != ChannelDirectoryUpdate.Type.REMOVED && inLoadedPages) {
+				this.channels.add(new ServerMetaData.ChannelData(update.channelId(), update.name()));
+				this.channels.sort(Comparator.comparing(ServerMetaData.ChannelData::name));
+			}
+			if (update.type() == ChannelDirectoryUpdate.Type.RENAMED && update.channelId().equals(this.currentChannelId)) {
+				this.currentChannelName = update.name();
+			}
+		}
+		this.channelsUpdated();
+		return true;
+	}
+
+	private void channelsUpdated() {
+		var channels = this.getChannels();
+		this.modelListeners.forEach(listener -> listener.channelsUpdated(channels));
 	}
 
 	public void addListener(ClientModelListener listener) {
@@ -0,0 +1,68 @@
+package nl.andrewl.concord_client.model;
+
+import nl.andrewl.concord_core.msg.types.chat.Chat;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChatHistoryTest {
+	private final UUID channelId = UUID.randomUUID();
+
+	@Test
+	public void testFindGap() {
+		var history = new ChatHistory(this.channelId);
+		history.setChats(this.channelId, this.chats(1, 2, 5, 6, 9));
+		assertArrayEquals(new long[]{2, 5}, history.findGap());
+		history.setChats(this.channelId, this.chats(3, 4));
+		assertArrayEquals(new long[]{6, 9}, history.findGap());
+		history.setChats(this.channelId, this.chats(7, 8));
+		assertNull(history.findGap());
+		assertEquals(9, history.getLastSequence());
+	}
+
+	@Test
+	public void testLateChatIsMergedIntoPlace() {
+		var history = new ChatHistory(this.channelId);
+		history.setChats(this.channelId, this.chats(1, 3));
+		history.addChat(this.chat(4));
+		history.addChat(this.chat(2));
+		assertEquals(List.of(1L, 2L, 3L, 4L), this.sequences(history));
+		assertEquals(4, history.getLastSequence());
+		assertNull(history.findGap());
+	}
+
+	@Test
+	public void testDuplicatesAreIgnored() {
+		var history = new ChatHistory(this.channelId);
+		history.setChats(this.channelId, this.chats(1, 2, 3));
+		history.setChats(this.channelId, this.chats(2, 3, 4));
+		assertEquals(List.of(1L, 2L, 3L, 4L), this.sequences(history));
+	}
+
+	@Test
+	public void testChatsFromOtherChannelReplaceHistory() {
+		var history = new ChatHistory(this.channelId);
+		history.setChats(this.channelId, this.chats(1, 2, 3));
+		var otherId = UUID.randomUUID();
+		history.setChats(otherId, this.chats(7));
+		assertEquals(otherId, history.getChannelId());
+		assertEquals(List.of(7L), this.sequences(history));
+		assertEquals(7, history.getLastSequence());
+	}
+
+	private List<Long> sequences(ChatHistory history) {
+		return history.getChats().stream().map(Chat::sequence).toList();
+	}
+
+	private List<Chat> chats(long... sequences) {
+		return Arrays.stream(sequences).mapToObj(this::chat).toList();
+	}
+
+	private Chat chat(long sequence) {
+		return new Chat(UUID.randomUUID(), sequence, UUID.randomUUID(), "tester", sequence, "chat " + sequence);
+	}
+}
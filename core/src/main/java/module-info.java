@@ -12,6 +12,7 @@ module concord_core {
 
 	exports nl.andrewl.concord_core.util to concord_server, concord_client;
 	exports nl.andrewl.concord_core.msg to concord_server, concord_client;
+	exports nl.andrewl.concord_core.transport to concord_server, concord_client;
 
 	exports nl.andrewl.concord_core.msg.types to concord_server, concord_client;
 	exports nl.andrewl.concord_core.msg.types.client_setup to concord_client, concord_server;
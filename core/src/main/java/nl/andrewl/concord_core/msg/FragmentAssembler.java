@@ -0,0 +1,69 @@
+package nl.andrewl.concord_core.msg;
+
+import nl.andrewl.concord_core.msg.types.MessageFragment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits large messages into {@link MessageFragment}s, and puts them back
+ * together on the receiving end. Each receiving connection should use its own
+ * assembler.
+ */
+public class FragmentAssembler {
+	private final Serializer serializer;
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	private int nextIndex = 0;
+
+	public FragmentAssembler(Serializer serializer) {
+		this.serializer = serializer;
+	}
+
+	/**
+	 * Adds a fragment to the message that's being assembled.
+	 * @param fragment The fragment that was received.
+	 * @return The complete message, if this was the last fragment, or null if
+	 * more fragments are needed.
+	 * @throws IOException If the fragment is out of order, or if the complete
+	 * message could not be read.
+	 */
+	public Message accept(MessageFragment fragment) throws IOException {
+		if (fragment.index() != this.nextIndex) {
+			this.reset();
+			throw new IOException("Received fragment " + fragment.index() + " when fragment " + this.nextIndex + " was expected.");
+		}
+		this.buffer.write(fragment.data());
+		this.nextIndex++;
+		if (this.nextIndex < fragment.count()) return null;
+		byte[] data = this.buffer.toByteArray();
+		this.reset();
+		return this.serializer.readMessage(new ByteArrayInputStream(data));
+	}
+
+	private void reset() {
+		this.buffer.reset();
+		this.nextIndex = 0;
+	}
+
+	/**
+	 * Splits a serialized message into fragments.
+	 * @param data The serialized message.
+	 * @param maxFragmentSize The maximum number of bytes of data per fragment.
+	 * @return The list of fragments.
+	 */
+	public static List<MessageFragment> split(byte[] data, int maxFragmentSize) {
+		int count = Math.max(1, (data.length + maxFragmentSize - 1) / maxFragmentSize);
+		List<MessageFragment> fragments = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int start = i * maxFragmentSize;
+			int end = Math.min(data.length, start + maxFragmentSize);
+			byte[] part = new byte[end - start];
+			System.arraycopy(data, start, part, 0, part.length);
+			fragments.add(new MessageFragment(i, count, part));
+		}
+		return fragments;
+	}
+}
@@ -3,8 +3,8 @@ package nl.andrewl.concord_core.msg;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.RecordComponent;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 /**
@@ -25,18 +25,26 @@ public record MessageTypeSerializer<T extends Message>(
 		MessageReader<T> reader,
 		MessageWriter<T> writer
 ) {
-	private static final Map<Class<?>, MessageTypeSerializer<?>> generatedMessageTypes = new HashMap<>();
+	private static final Map<Class<?>, MessageTypeSerializer<?>> generatedMessageTypes = new ConcurrentHashMap<>();
 
 	/**
 	 * Gets the {@link MessageTypeSerializer} instance for a given message class, and
-	 * generates a new implementation if none exists yet.
+	 * generates a new implementation if none exists yet. This is safe to call
+	 * from multiple threads; if two threads generate the same type at once,
+	 * only one of the implementations is kept.
 	 * @param messageClass The class of the message to get a type for.
 	 * @param <T> The type of the message.
 	 * @return The message type.
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T extends Message> MessageTypeSerializer<T> get(Class<T> messageClass) {
-		return (MessageTypeSerializer<T>) generatedMessageTypes.computeIfAbsent(messageClass, c -> generateForRecord((Class<T>) c));
+		var type = (MessageTypeSerializer<T>) generatedMessageTypes.get(messageClass);
+		if (type == null) {
+			type = generateForRecord(messageClass);
+			var existing = (MessageTypeSerializer<T>) generatedMessageTypes.putIfAbsent(messageClass, type);
+			if (existing != null) type = existing;
+		}
+		return type;
 	}
 
 	/**
@@ -42,7 +42,7 @@ public class MessageUtils {
 	public static <T extends Message> int getByteSize(T[] items) {
 		int count = Integer.BYTES;
 		for (var item : items) {
-			count += getByteSize(items);
+			count += getByteSize(item);
 		}
 		return count;
 	}
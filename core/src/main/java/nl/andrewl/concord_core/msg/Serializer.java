@@ -1,12 +1,21 @@
 package nl.andrewl.concord_core.msg;
 
 import nl.andrewl.concord_core.msg.types.Error;
+import nl.andrewl.concord_core.msg.types.MessageFragment;
+import nl.andrewl.concord_core.msg.types.Ping;
+import nl.andrewl.concord_core.msg.types.Pong;
+import nl.andrewl.concord_core.msg.types.PresenceUpdate;
 import nl.andrewl.concord_core.msg.types.ServerMetaData;
-import nl.andrewl.concord_core.msg.types.ServerUsers;
 import nl.andrewl.concord_core.msg.types.UserData;
+import nl.andrewl.concord_core.msg.types.channel.ChannelCounts;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryPage;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryRequest;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryUpdate;
+import nl.andrewl.concord_core.msg.types.channel.ChannelMembers;
 import nl.andrewl.concord_core.msg.types.channel.CreateThread;
 import nl.andrewl.concord_core.msg.types.channel.MoveToChannel;
 import nl.andrewl.concord_core.msg.types.chat.Chat;
+import nl.andrewl.concord_core.msg.types.chat.ChatBatch;
 import nl.andrewl.concord_core.msg.types.chat.ChatHistoryRequest;
 import nl.andrewl.concord_core.msg.types.chat.ChatHistoryResponse;
 import nl.andrewl.concord_core.msg.types.client_setup.*;
@@ -48,7 +57,6 @@ public class Serializer {
 				// Utility messages.
 				Error.class,
 				UserData.class,
-				ServerUsers.class,
 				// Client setup messages.
 				KeyData.class, ClientRegistration.class, ClientLogin.class, ClientSessionResume.class,
 				RegistrationStatus.class, ServerWelcome.class, ServerMetaData.class,
@@ -56,7 +64,14 @@ public class Serializer {
 				Chat.class, ChatHistoryRequest.class, ChatHistoryResponse.class,
 				// Channel messages.
 				MoveToChannel.class,
-				CreateThread.class
+				CreateThread.class,
+				// Connection messages.
+				Ping.class, Pong.class,
+				MessageFragment.class,
+				ChatBatch.class,
+				PresenceUpdate.class,
+				ChannelMembers.class, ChannelCounts.class,
+				ChannelDirectoryRequest.class, ChannelDirectoryPage.class, ChannelDirectoryUpdate.class
 		);
 		for (int id = 0; id < messageClasses.size(); id++) {
 			registerType(id, messageClasses.get(id));
@@ -70,7 +85,7 @@ public class Serializer {
 	 *           class. The value should from 0 to 127.
 	 * @param messageClass The type of message associated with the given id.
 	 */
-	private synchronized <T extends Message> void registerType(int id, Class<T> messageClass) {
+	protected synchronized <T extends Message> void registerType(int id, Class<T> messageClass) {
 		MessageTypeSerializer<T> type = MessageTypeSerializer.get(messageClass);
 		messageTypes.put((byte) id, type);
 		inverseMessageTypes.put(type, (byte) id);
@@ -7,8 +7,15 @@ import nl.andrewl.concord_core.msg.Message;
  * indicate an unsavory situation.
  * @param level The severity level of the error.
  * @param message A message indicating what went wrong.
+ * @param retryAfterMillis If greater than 0, the request was refused because
+ *                         the server is too busy, and may be sent again after
+ *                         this many milliseconds.
  */
-public record Error (Level level, String message) implements Message {
+public record Error (Level level, String message, long retryAfterMillis) implements Message {
+	public Error(Level level, String message) {
+		this(level, message, 0);
+	}
+
 	/**
 	 * The error level gives an indication as to the severity of the error.
 	 * Warnings indicate that a user has attempted to do something which they
@@ -34,4 +41,15 @@ public record Error (Level level, String message) implements Message {
 	public static Error error(String message) {
 		return new Error(Level.ERROR, message);
 	}
+
+	/**
+	 * Creates a warning message which tells the receiver to try again later.
+	 * @param message The message text.
+	 * @param retryAfterMillis The number of milliseconds to wait before trying
+	 *                         again.
+	 * @return A warning-level error message with a retry-after hint.
+	 */
+	public static Error retryLater(String message, long retryAfterMillis) {
+		return new Error(Level.WARNING, message, retryAfterMillis);
+	}
 }
@@ -0,0 +1,15 @@
+package nl.andrewl.concord_core.msg.types;
+
+import nl.andrewl.concord_core.msg.Message;
+
+/**
+ * A piece of a large message, which has been split up so that it can be sent
+ * in several parts, with other messages in between. The receiver should
+ * collect the fragments in order, and read the original message from their
+ * combined data once the last fragment arrives. Fragments of different
+ * messages are never interleaved.
+ * @param index The index of this fragment, starting at 0.
+ * @param count The total number of fragments in the message.
+ * @param data This fragment's part of the serialized message.
+ */
+public record MessageFragment (int index, int count, byte[] data) implements Message {}
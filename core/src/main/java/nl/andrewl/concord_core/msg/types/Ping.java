@@ -0,0 +1,12 @@
+package nl.andrewl.concord_core.msg.types;
+
+import nl.andrewl.concord_core.msg.Message;
+
+/**
+ * Heartbeat message which is sent periodically by the server to each client,
+ * to check that the connection is still alive. Clients must respond with a
+ * {@link Pong} containing the same timestamp.
+ * @param timestamp An opaque timestamp which the server uses to measure the
+ *                  round-trip time of the connection.
+ */
+public record Ping (long timestamp) implements Message {}
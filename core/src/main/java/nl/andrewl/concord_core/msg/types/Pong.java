@@ -0,0 +1,9 @@
+package nl.andrewl.concord_core.msg.types;
+
+import nl.andrewl.concord_core.msg.Message;
+
+/**
+ * The response that a client sends to a {@link Ping}.
+ * @param timestamp The timestamp of the ping that this is a response to.
+ */
+public record Pong (long timestamp) implements Message {}
@@ -0,0 +1,20 @@
+package nl.andrewl.concord_core.msg.types;
+
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_core.msg.types.channel.ChannelMembers;
+
+import java.util.UUID;
+
+/**
+ * This message is sent from the server to the clients in a channel when users
+ * have entered or left that channel, instead of sending the complete list of
+ * members again. A client receives the complete list as a
+ * {@link ChannelMembers} message once, when it enters the channel, and should
+ * apply each update to it after that. Updates may repeat changes that the
+ * client already knows about, so joining users which are already known, and
+ * leaving users which are not, should be ignored.
+ * @param channelId The id of the channel.
+ * @param joined The users that have entered the channel.
+ * @param left The users that have left the channel.
+ */
+public record PresenceUpdate (UUID channelId, UserData[] joined, UserData[] left) implements Message {}
@@ -8,6 +8,10 @@ import java.util.UUID;
  * Metadata is sent by the server to clients to inform them of the structure of
  * the server. This includes basic information about the server's own properties
  * as well as information about all top-level channels.
+ * <p>
+ *     Servers now send their channels in pages instead, via the channel
+ *     directory; see {@link nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryPage}.
+ * </p>
  */
 public record ServerMetaData (String name, ChannelData[] channels) implements Message {
 	/**
@@ -0,0 +1,20 @@
+package nl.andrewl.concord_core.msg.types.channel;
+
+import nl.andrewl.concord_core.msg.Message;
+
+import java.util.UUID;
+
+/**
+ * The number of users in some of the server's channels, which the server sends
+ * to all clients, so that they can show how busy each channel is without
+ * knowing who is in it. A client receives the counts for all channels that
+ * have any users when it logs in, and after that, only the counts which have
+ * changed.
+ * @param counts The number of users in each channel.
+ */
+public record ChannelCounts (ChannelCount[] counts) implements Message {
+	/**
+	 * The number of users in a single channel.
+	 */
+	public static record ChannelCount (UUID channelId, int memberCount) implements Message {}
+}
@@ -0,0 +1,23 @@
+package nl.andrewl.concord_core.msg.types.channel;
+
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_core.msg.types.ServerMetaData;
+
+/**
+ * A page of the server's channel directory, which the server sends in response
+ * to a {@link ChannelDirectoryRequest}. To get the next page, send a request
+ * with the same prefix, after this page's cursor.
+ * @param version The version of the directory that this page is from. If this
+ *                differs from the version of a previous page, the directory
+ *                has changed in between.
+ * @param prefix The prefix that was requested.
+ * @param channels The channels in this page, sorted by name.
+ * @param next The value to send as the next request's <code>after</code> to
+ *             get the next page, or null if this is the last page.
+ */
+public record ChannelDirectoryPage (
+		long version,
+		String prefix,
+		ServerMetaData.ChannelData[] channels,
+		String next
+) implements Message {}
@@ -0,0 +1,20 @@
+package nl.andrewl.concord_core.msg.types.channel;
+
+import nl.andrewl.concord_core.msg.Message;
+
+/**
+ * A request for a page of the server's channel directory, which is the list
+ * of all public channels, sorted by name. The server responds with a
+ * {@link ChannelDirectoryPage}.
+ * @param prefix Only channels whose name starts with this are listed. Use an
+ *               empty string to list all channels.
+ * @param after The name of the last channel of the previous page, or null to
+ *              get the first page.
+ * @param limit The maximum number of channels to get. The server may return
+ *              fewer than this, if its maximum page size is smaller.
+ */
+public record ChannelDirectoryRequest (String prefix, String after, int limit) implements Message {
+	public ChannelDirectoryRequest(int limit) {
+		this("", null, limit);
+	}
+}
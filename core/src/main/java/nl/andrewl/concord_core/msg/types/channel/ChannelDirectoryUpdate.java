@@ -0,0 +1,18 @@
+package nl.andrewl.concord_core.msg.types.channel;
+
+import nl.andrewl.concord_core.msg.Message;
+
+import java.util.UUID;
+
+/**
+ * Sent by the server to all clients whenever a public channel is added,
+ * removed, or renamed. Each update increments the directory's version by one,
+ * so a client that has missed an update should get the directory again.
+ * @param version The version of the directory after this update.
+ * @param type The type of change.
+ * @param channelId The id of the channel that changed.
+ * @param name The channel's name, which is its new name if it was renamed.
+ */
+public record ChannelDirectoryUpdate (long version, Type type, UUID channelId, String name) implements Message {
+	public enum Type {ADDED, REMOVED, RENAMED}
+}
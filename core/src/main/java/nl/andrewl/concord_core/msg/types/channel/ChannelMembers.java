@@ -0,0 +1,16 @@
+package nl.andrewl.concord_core.msg.types.channel;
+
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_core.msg.types.PresenceUpdate;
+import nl.andrewl.concord_core.msg.types.UserData;
+
+import java.util.UUID;
+
+/**
+ * The complete list of users in a channel, which the server sends to a client
+ * when it enters the channel. After that, the client is sent a
+ * {@link PresenceUpdate} whenever users enter or leave the channel.
+ * @param channelId The id of the channel.
+ * @param members The users in the channel, sorted by name.
+ */
+public record ChannelMembers (UUID channelId, UserData[] members) implements Message {}
@@ -7,8 +7,19 @@ import java.util.UUID;
 
 /**
  * This message contains information about a chat message that a user sent.
+ * <p>
+ *     Each chat that the server saves gets a sequence number, which counts
+ *     the chats in its channel, starting at 1, without any gaps. A client can
+ *     use this to notice that it has missed some chats, and to page through
+ *     a channel's history; see {@link ChatHistoryRequest}. Chats that haven't
+ *     been saved yet, like the ones that clients send, have a sequence of 0.
+ * </p>
  */
-public record Chat (UUID id, UUID senderId, String senderNickname, long timestamp, String message) implements Message {
+public record Chat (UUID id, long sequence, UUID senderId, String senderNickname, long timestamp, String message) implements Message {
+	public Chat(UUID id, UUID senderId, String senderNickname, long timestamp, String message) {
+		this(id, 0, senderId, senderNickname, timestamp, message);
+	}
+
 	public Chat(UUID senderId, String senderNickname, long timestamp, String message) {
 		this(null, senderId, senderNickname, timestamp, message);
 	}
@@ -21,6 +32,14 @@ public record Chat (UUID id, UUID senderId, String senderNickname, long timestam
 		this(newId, original.senderId, original.senderNickname, original.timestamp, original.message);
 	}
 
+	/**
+	 * @param sequence The sequence number for the chat.
+	 * @return A copy of this chat with the given sequence number.
+	 */
+	public Chat withSequence(long sequence) {
+		return new Chat(this.id, sequence, this.senderId, this.senderNickname, this.timestamp, this.message);
+	}
+
 	@Override
 	public String toString() {
 		return String.format("%s: %s", this.senderNickname, this.message);
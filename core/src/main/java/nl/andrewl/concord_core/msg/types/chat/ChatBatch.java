@@ -0,0 +1,15 @@
+package nl.andrewl.concord_core.msg.types.chat;
+
+import nl.andrewl.concord_core.msg.Message;
+
+import java.util.UUID;
+
+/**
+ * A group of chat messages that were sent in a channel within a short time of
+ * each other, which the server delivers together to save on writes in busy
+ * channels with many members. The receiver should treat each chat as if it was
+ * sent on its own.
+ * @param channelId The id of the channel that the chat messages belong to.
+ * @param chats The chat messages, in the order in which they were sent.
+ */
+public record ChatBatch (UUID channelId, Chat[] chats) implements Message {}
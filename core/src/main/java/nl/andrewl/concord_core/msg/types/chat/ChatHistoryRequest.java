@@ -34,13 +34,22 @@ import java.util.stream.Collectors;
  *         <li><code>to</code> - ISO-8601 timestamp indicating the timestamp
  *         before which messages should be fetched. Only messages before this
  *         point in time are returned.</li>
+ *         <li><code>after</code> - A sequence number after which messages
+ *         should be fetched. The oldest messages after it are returned, so
+ *         this can be used to page forward through the history, or to fetch
+ *         messages that the client has missed.</li>
+ *         <li><code>before</code> - A sequence number before which messages
+ *         should be fetched. The newest messages before it are returned, so
+ *         this can be used to page back through the history.</li>
  *         <li><code>id</code> - A single message id to fetch. If this parameter
  *         is present, all others are ignored, and a list containing the single
  *         message is returned, if it could be found, otherwise an empty list.</li>
  *     </ul>
  * <p>
  *     Responses to this request are sent via {@link ChatHistoryResponse}, where
- *     the list of messages is always sorted by the timestamp.
+ *     the list of messages is always sorted by the sequence number, which is
+ *     also the order in which they were sent. The sequence cursors are exact,
+ *     so they should be preferred over the timestamps.
  * </p>
  */
 public record ChatHistoryRequest (UUID channelId, String query) implements Message {
@@ -6,7 +6,8 @@ import java.util.UUID;
 
 /**
  * The response that a server sends to a {@link ChatHistoryRequest}. The list of
- * messages is ordered by timestamp, with the newest messages appearing first.
+ * messages is ordered by sequence number, with the oldest messages appearing
+ * first.
  * @param channelId The id of the channel that the chat messages belong to.
  * @param messages The list of messages that comprises the history.
  */
@@ -1,7 +1,7 @@
 package nl.andrewl.concord_core.msg.types.client_setup;
 
 import nl.andrewl.concord_core.msg.Message;
-import nl.andrewl.concord_core.msg.types.ServerMetaData;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryRequest;
 
 import java.util.UUID;
 
@@ -14,12 +14,16 @@ import java.util.UUID;
  *                     server later and still be recognized as the same user.
  * @param currentChannelId The id of the channel that the user is placed in.
  * @param currentChannelName The name of the channel that the user is placed in.
- * @param metaData Information about the server's structure.
+ * @param serverName The name of the server.
+ * @param directoryVersion The version of the server's channel directory. The
+ *                         client can get the directory itself in pages, via
+ *                         {@link ChannelDirectoryRequest}.
  */
 public record ServerWelcome (
 		UUID clientId,
 		String sessionToken,
 		UUID currentChannelId,
 		String currentChannelName,
-		ServerMetaData metaData
+		String serverName,
+		long directoryVersion
 ) implements Message {}
@@ -0,0 +1,94 @@
+package nl.andrewl.concord_core.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * A connection over a blocking {@link SocketChannel}. This is used for Unix
+ * domain sockets, which don't have a {@link java.net.Socket} equivalent.
+ * <p>
+ *     Note that we don't use {@link java.nio.channels.Channels#newInputStream(java.nio.channels.ReadableByteChannel)}
+ *     here, since those streams lock the channel for each read and write, so a
+ *     thread that's blocked reading would prevent any other thread from
+ *     writing.
+ * </p>
+ */
+public class ChannelConnection implements Connection {
+	private final SocketChannel channel;
+	private final String remoteAddress;
+	private final InputStream in;
+	private final OutputStream out;
+
+	public ChannelConnection(SocketChannel channel, String remoteAddress) {
+		this.channel = channel;
+		this.remoteAddress = remoteAddress;
+		this.in = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				int n = this.read(b, 0, 1);
+				return n == -1 ? -1 : b[0] & 0xFF;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (len == 0) return 0;
+				return channel.read(ByteBuffer.wrap(b, off, len));
+			}
+		};
+		this.out = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				this.write(new byte[]{(byte) b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Opens a new connection to a server's Unix domain socket.
+	 * @param path The path of the socket file.
+	 * @return The connection.
+	 * @throws IOException If the connection could not be opened.
+	 */
+	public static ChannelConnection openUnix(Path path) throws IOException {
+		return new ChannelConnection(SocketChannel.open(UnixDomainSocketAddress.of(path)), "unix:" + path);
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return this.in;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return this.out;
+	}
+
+	@Override
+	public String getRemoteAddress() {
+		return this.remoteAddress;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return !this.channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+}
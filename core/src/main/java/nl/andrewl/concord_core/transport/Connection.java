@@ -0,0 +1,34 @@
+package nl.andrewl.concord_core.transport;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A bidirectional connection between a client and a server, over which
+ * messages can be sent and received. One thread may read from the connection
+ * while another writes to it.
+ */
+public interface Connection extends Closeable {
+	/**
+	 * @return The stream from which to read data sent by the other side.
+	 */
+	InputStream getInputStream();
+
+	/**
+	 * @return The stream to which to write data for the other side.
+	 */
+	OutputStream getOutputStream();
+
+	/**
+	 * @return A human-readable description of the address of the other side,
+	 * like "localhost:8123". This is also used to identify the server that a
+	 * client is connected to.
+	 */
+	String getRemoteAddress();
+
+	/**
+	 * @return True if this connection has been closed.
+	 */
+	boolean isClosed();
+}
@@ -0,0 +1,24 @@
+package nl.andrewl.concord_core.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Accepts incoming connections from clients. Closing the acceptor causes any
+ * call to {@link ConnectionAcceptor#accept()} that's waiting to throw an
+ * exception.
+ */
+public interface ConnectionAcceptor extends Closeable {
+	/**
+	 * Waits for a client to connect.
+	 * @return The new connection.
+	 * @throws IOException If the acceptor is closed, or an error occurs.
+	 */
+	Connection accept() throws IOException;
+
+	/**
+	 * @return A human-readable description of the address on which
+	 * connections are accepted.
+	 */
+	String getLocalAddress();
+}
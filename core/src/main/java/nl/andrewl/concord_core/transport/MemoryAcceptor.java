@@ -0,0 +1,71 @@
+package nl.andrewl.concord_core.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Accepts in-memory connections from clients running in the same process,
+ * like bots, or tests that drive the full protocol without any network.
+ */
+public class MemoryAcceptor implements ConnectionAcceptor {
+	private static final int PIPE_CAPACITY = 64 * 1024;
+
+	/**
+	 * Sentinel that's put into the queue to wake up a waiting accept call when
+	 * the acceptor is closed.
+	 */
+	private static final Connection CLOSED = new MemoryConnection(new MemoryPipe(1), new MemoryPipe(1), "closed");
+
+	private final String name;
+	private final BlockingQueue<Connection> pendingConnections = new LinkedBlockingQueue<>();
+	private volatile boolean closed;
+
+	/**
+	 * Constructs a new in-memory acceptor.
+	 * @param name The name of the acceptor, which clients see as the remote
+	 *             address of their connection.
+	 */
+	public MemoryAcceptor(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Opens a new connection to this acceptor.
+	 * @return The client's side of the connection.
+	 * @throws IOException If the acceptor is closed.
+	 */
+	public Connection connect() throws IOException {
+		if (this.closed) throw new IOException("Acceptor is closed.");
+		var toServer = new MemoryPipe(PIPE_CAPACITY);
+		var toClient = new MemoryPipe(PIPE_CAPACITY);
+		this.pendingConnections.add(new MemoryConnection(toServer, toClient, "memory:client"));
+		return new MemoryConnection(toClient, toServer, "memory:" + this.name);
+	}
+
+	@Override
+	public Connection accept() throws IOException {
+		try {
+			var connection = this.pendingConnections.take();
+			if (connection == CLOSED) {
+				this.pendingConnections.add(CLOSED);
+				throw new IOException("Acceptor is closed.");
+			}
+			return connection;
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	@Override
+	public String getLocalAddress() {
+		return "memory:" + this.name;
+	}
+
+	@Override
+	public void close() {
+		this.closed = true;
+		this.pendingConnections.add(CLOSED);
+	}
+}
@@ -0,0 +1,50 @@
+package nl.andrewl.concord_core.transport;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * One end of an in-memory connection between a client and a server in the
+ * same process. Use {@link MemoryAcceptor#connect()} to obtain one.
+ */
+public class MemoryConnection implements Connection {
+	private final MemoryPipe incoming;
+	private final MemoryPipe outgoing;
+	private final String remoteAddress;
+
+	MemoryConnection(MemoryPipe incoming, MemoryPipe outgoing, String remoteAddress) {
+		this.incoming = incoming;
+		this.outgoing = outgoing;
+		this.remoteAddress = remoteAddress;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return this.incoming.getInputStream();
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return this.outgoing.getOutputStream();
+	}
+
+	@Override
+	public String getRemoteAddress() {
+		return this.remoteAddress;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return this.outgoing.isClosed();
+	}
+
+	/**
+	 * Closes both directions of the connection, so that the other side reaches
+	 * the end of its input stream.
+	 */
+	@Override
+	public void close() {
+		this.incoming.close();
+		this.outgoing.close();
+	}
+}
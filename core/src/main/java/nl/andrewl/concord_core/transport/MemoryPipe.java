@@ -0,0 +1,130 @@
+package nl.andrewl.concord_core.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * A one-way, bounded in-memory byte pipe, with an output stream for the
+ * writing side and an input stream for the reading side. Unlike a
+ * {@link java.io.PipedInputStream}, readers and writers wake each other up
+ * as soon as data or space is available, and the pipe doesn't care which
+ * threads use it.
+ */
+class MemoryPipe {
+	private final byte[] buffer;
+	private int readIndex;
+	private int size;
+	private boolean closed;
+
+	private final InputStream in = new InputStream() {
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int n = this.read(b, 0, 1);
+			return n == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return MemoryPipe.this.read(b, off, len);
+		}
+
+		@Override
+		public int available() {
+			synchronized (MemoryPipe.this) {
+				return size;
+			}
+		}
+
+		@Override
+		public void close() {
+			MemoryPipe.this.close();
+		}
+	};
+
+	private final OutputStream out = new OutputStream() {
+		@Override
+		public void write(int b) throws IOException {
+			this.write(new byte[]{(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			MemoryPipe.this.write(b, off, len);
+		}
+
+		@Override
+		public void close() {
+			MemoryPipe.this.close();
+		}
+	};
+
+	MemoryPipe(int capacity) {
+		this.buffer = new byte[capacity];
+	}
+
+	InputStream getInputStream() {
+		return this.in;
+	}
+
+	OutputStream getOutputStream() {
+		return this.out;
+	}
+
+	synchronized boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Closes the pipe. Readers can still read any remaining data, after which
+	 * they'll reach the end of the stream. Writers get an exception.
+	 */
+	synchronized void close() {
+		this.closed = true;
+		this.notifyAll();
+	}
+
+	private synchronized int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		try {
+			while (this.size == 0) {
+				if (this.closed) return -1;
+				this.wait();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		int n = Math.min(len, this.size);
+		int first = Math.min(n, this.buffer.length - this.readIndex);
+		System.arraycopy(this.buffer, this.readIndex, b, off, first);
+		System.arraycopy(this.buffer, 0, b, off + first, n - first);
+		this.readIndex = (this.readIndex + n) % this.buffer.length;
+		this.size -= n;
+		this.notifyAll();
+		return n;
+	}
+
+	private synchronized void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			try {
+				while (this.size == this.buffer.length && !this.closed) {
+					this.wait();
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			if (this.closed) throw new IOException("Pipe closed.");
+			int writeIndex = (this.readIndex + this.size) % this.buffer.length;
+			int n = Math.min(len, this.buffer.length - this.size);
+			int first = Math.min(n, this.buffer.length - writeIndex);
+			System.arraycopy(b, off, this.buffer, writeIndex, first);
+			System.arraycopy(b, off + first, this.buffer, 0, n - first);
+			this.size += n;
+			off += n;
+			len -= n;
+			this.notifyAll();
+		}
+	}
+}
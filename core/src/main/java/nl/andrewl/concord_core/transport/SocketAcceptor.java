@@ -0,0 +1,42 @@
+package nl.andrewl.concord_core.transport;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * Accepts connections over TCP on a given port.
+ */
+public class SocketAcceptor implements ConnectionAcceptor {
+	private final ServerSocket serverSocket;
+
+	/**
+	 * Opens a server socket on the given port.
+	 * @param port The port to listen on, or 0 to pick any free port.
+	 * @throws IOException If the server socket could not be opened.
+	 */
+	public SocketAcceptor(int port) throws IOException {
+		this.serverSocket = new ServerSocket(port);
+	}
+
+	@Override
+	public Connection accept() throws IOException {
+		return new SocketConnection(this.serverSocket.accept());
+	}
+
+	/**
+	 * @return The port that this acceptor is listening on.
+	 */
+	public int getPort() {
+		return this.serverSocket.getLocalPort();
+	}
+
+	@Override
+	public String getLocalAddress() {
+		return "port " + this.getPort();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.serverSocket.close();
+	}
+}
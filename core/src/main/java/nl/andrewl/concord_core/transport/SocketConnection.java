@@ -0,0 +1,59 @@
+package nl.andrewl.concord_core.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * A connection over a TCP socket.
+ */
+public class SocketConnection implements Connection {
+	private final Socket socket;
+	private final InputStream in;
+	private final OutputStream out;
+
+	public SocketConnection(Socket socket) throws IOException {
+		this.socket = socket;
+		// Messages are written in several small pieces, which Nagle's algorithm would otherwise delay.
+		this.socket.setTcpNoDelay(true);
+		this.in = socket.getInputStream();
+		this.out = socket.getOutputStream();
+	}
+
+	/**
+	 * Opens a new TCP connection to a server.
+	 * @param host The server's host.
+	 * @param port The server's port.
+	 * @return The connection.
+	 * @throws IOException If the connection could not be opened.
+	 */
+	public static SocketConnection open(String host, int port) throws IOException {
+		return new SocketConnection(new Socket(host, port));
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return this.in;
+	}
+
+	@Override
+	public OutputStream getOutputStream() {
+		return this.out;
+	}
+
+	@Override
+	public String getRemoteAddress() {
+		return this.socket.getInetAddress().getHostName() + ":" + this.socket.getPort();
+	}
+
+	@Override
+	public boolean isClosed() {
+		return this.socket.isClosed();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.socket.close();
+	}
+}
@@ -0,0 +1,9 @@
+/**
+ * The transport layer that messages are sent over. A {@link nl.andrewl.concord_core.transport.Connection}
+ * is a bidirectional byte stream between a client and a server, and a
+ * {@link nl.andrewl.concord_core.transport.ConnectionAcceptor} accepts new
+ * connections on the server's side. TCP sockets are the standard transport,
+ * but clients on the same host may also use Unix domain sockets, or, within
+ * the same process, in-memory pipes.
+ */
+package nl.andrewl.concord_core.transport;
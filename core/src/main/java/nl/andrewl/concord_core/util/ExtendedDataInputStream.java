@@ -24,8 +24,7 @@ public class ExtendedDataInputStream extends DataInputStream {
 		if (length == -1) return null;
 		if (length == 0) return "";
 		byte[] data = new byte[length];
-		int read = super.read(data);
-		if (read != length) throw new IOException("Not all bytes of a string of length " + length + " could be read.");
+		super.readFully(data);
 		return new String(data, StandardCharsets.UTF_8);
 	}
 
@@ -49,11 +48,24 @@ public class ExtendedDataInputStream extends DataInputStream {
 		int length = super.readInt();
 		T[] array = (T[]) Array.newInstance(type.messageClass(), length);
 		for (int i = 0; i < length; i++) {
-			array[i] = type.reader().read(this);
+			array[i] = this.readMessage(type);
 		}
 		return array;
 	}
 
+	/**
+	 * Reads a nested message, which is preceded by a boolean that indicates
+	 * whether the message is present or null.
+	 * @param type The type of message to read.
+	 * @param <T> The type of message.
+	 * @return The message that was read, or null.
+	 * @throws IOException If an error occurs while reading.
+	 */
+	public <T extends Message> T readMessage(MessageTypeSerializer<T> type) throws IOException {
+		if (!super.readBoolean()) return null;
+		return type.reader().read(this);
+	}
+
 	/**
 	 * Reads an object from the stream that is of a certain expected type.
 	 * @param type The type of object to read.
@@ -80,7 +92,7 @@ public class ExtendedDataInputStream extends DataInputStream {
 			return this.readArray(messageType);
 		} else if (Message.class.isAssignableFrom(type)) {
 			var messageType = MessageTypeSerializer.get((Class<? extends Message>) type);
-			return messageType.reader().read(this);
+			return this.readMessage(messageType);
 		} else {
 			throw new IOException("Unsupported object type: " + type.getSimpleName());
 		}
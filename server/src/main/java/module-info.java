@@ -8,9 +8,12 @@ module concord_server {
 
 	requires java.base;
 	requires java.logging;
+	requires java.management;
 	requires java.net.http;
 
 	requires concord_core;
 
 	opens nl.andrewl.concord_server.config to com.fasterxml.jackson.databind;
+	opens nl.andrewl.concord_server.logging to com.fasterxml.jackson.databind;
+	exports nl.andrewl.concord_server.cluster.msg to concord_core;
 }
\ No newline at end of file
@@ -0,0 +1,203 @@
+package nl.andrewl.concord_server;
+
+import nl.andrewl.concord_server.config.ServerConfig;
+import nl.andrewl.concord_server.logging.ServerLogger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether the server should take on expensive work, based on how busy
+ * it is. Several signals are sampled periodically, and each one is compared to
+ * its configured limit:
+ * <ul>
+ *     <li>The number of message handlers that are running at once.</li>
+ *     <li>The number of logins and registrations waiting for password
+ *     hashing.</li>
+ *     <li>The average time it took to handle a message since the last
+ *     sample.</li>
+ *     <li>The fraction of the heap that was still in use after the last
+ *     garbage collection.</li>
+ * </ul>
+ * The highest of these ratios is the server's pressure. Once the pressure
+ * reaches 1, the server is overloaded, and sheds all kinds of {@link Work};
+ * above 0.75 it's elevated, and only sheds the most expensive kind. A level
+ * is only left once the pressure has dropped well below it, so that the
+ * server doesn't flap between levels. Chat messages are never shed.
+ * <p>
+ *     Shed requests are answered with an error which tells the client when to
+ *     try again. The delay grows with the pressure, and is jittered so that
+ *     refused clients don't all come back at once.
+ * </p>
+ */
+public class AdmissionController {
+	/**
+	 * The kinds of work that may be shed.
+	 */
+	public enum Work {
+		/**
+		 * A chat history request for more than the default number of messages.
+		 */
+		LARGE_HISTORY,
+		REGISTRATION,
+		PRIVATE_CHANNEL_CREATION
+	}
+
+	public enum Level {NORMAL, ELEVATED, OVERLOADED}
+
+	private static final long SAMPLE_INTERVAL_MILLIS = 250;
+	private static final double ELEVATED_PRESSURE = 0.75;
+
+	/**
+	 * The fraction of a level's threshold that the pressure must drop below
+	 * before the level is left.
+	 */
+	private static final double HYSTERESIS = 0.8;
+
+	private final ConcordServer server;
+	private final ServerConfig.AdmissionConfig config;
+	private final ServerLogger log;
+	private final List<MemoryPoolMXBean> heapPools;
+
+	private final Map<Work, LongAdder> admitted = new EnumMap<>(Work.class);
+	private final Map<Work, LongAdder> shed = new EnumMap<>(Work.class);
+
+	private volatile Level level = Level.NORMAL;
+	private volatile double pressure;
+	private volatile String dominantSignal = "none";
+
+	private long lastMessages;
+	private double lastHandlerMillis;
+
+	public AdmissionController(ConcordServer server) {
+		this.server = server;
+		this.config = server.getConfig().getAdmission();
+		this.log = server.getLogger().named(getClass());
+		this.heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+				.filter(pool -> pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported())
+				.toList();
+		for (var work : Work.values()) {
+			this.admitted.put(work, new LongAdder());
+			this.shed.put(work, new LongAdder());
+		}
+		if (this.config.isEnabled()) {
+			server.getScheduledExecutorService().scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Decides whether to do some expensive work now.
+	 * @param work The kind of work.
+	 * @return 0 if the work may be done, or otherwise the number of
+	 * milliseconds after which the client may try again.
+	 */
+	public long admit(Work work) {
+		Level current = this.level;
+		boolean shedWork = current == Level.OVERLOADED || (current == Level.ELEVATED && work == Work.LARGE_HISTORY);
+		if (!shedWork) {
+			this.admitted.get(work).increment();
+			return 0;
+		}
+		this.shed.get(work).increment();
+		double delay = this.config.getRetryAfterMillis() * (1 + Math.min(this.pressure, 4));
+		return (long) (delay * ThreadLocalRandom.current().nextDouble(0.75, 1.25));
+	}
+
+	private void sample() {
+		var signals = new EnumMap<Signal, Double>(Signal.class);
+		signals.put(Signal.HANDLERS, (double) this.server.getEventManager().getHandlersInFlight() / this.config.getMaxHandlersInFlight());
+		signals.put(Signal.AUTH_QUEUE, (double) this.server.getClientManager().getAuthService().getQueueDepth() / this.config.getMaxAuthQueueDepth());
+		signals.put(Signal.HANDLER_LATENCY, this.sampleHandlerMillis() / this.config.getMaxHandlerMillis());
+		signals.put(Signal.HEAP, this.sampleHeapFraction() / this.config.getMaxHeapFraction());
+		var max = signals.entrySet().stream().max(Map.Entry.comparingByValue()).orElseThrow();
+		this.pressure = max.getValue();
+		this.dominantSignal = max.getKey().name().toLowerCase();
+		Level next = nextLevel(this.level, this.pressure);
+		if (next != this.level) {
+			if (next.compareTo(this.level) > 0) {
+				this.log.warning("Load level is now {} (pressure {}, mostly from {}).", next, String.format("%.2f", this.pressure), this.dominantSignal);
+			} else {
+				this.log.info("Load level is now {} (pressure {}).", next, String.format("%.2f", this.pressure));
+			}
+			this.level = next;
+		}
+	}
+
+	/**
+	 * Decides what the next level should be, given the current level and the
+	 * latest pressure.
+	 * @param current The current level.
+	 * @param pressure The latest pressure.
+	 * @return The next level.
+	 */
+	static Level nextLevel(Level current, double pressure) {
+		if (pressure >= 1) return Level.OVERLOADED;
+		if (current == Level.OVERLOADED && pressure >= HYSTERESIS) return Level.OVERLOADED;
+		if (pressure >= ELEVATED_PRESSURE) return Level.ELEVATED;
+		if (current != Level.NORMAL && pressure >= ELEVATED_PRESSURE * HYSTERESIS) return Level.ELEVATED;
+		return Level.NORMAL;
+	}
+
+	/**
+	 * @return The average time it took to handle a message since the last
+	 * sample, in milliseconds.
+	 */
+	private double sampleHandlerMillis() {
+		var usage = this.server.getUsage();
+		long messages = usage.getMessagesReceived();
+		double handlerMillis = usage.getHandlerMillis();
+		long count = messages - this.lastMessages;
+		double average = count == 0 ? 0 : (handlerMillis - this.lastHandlerMillis) / count;
+		this.lastMessages = messages;
+		this.lastHandlerMillis = handlerMillis;
+		return average;
+	}
+
+	/**
+	 * @return The highest fraction of any heap memory pool that was in use
+	 * after the last garbage collection.
+	 */
+	private double sampleHeapFraction() {
+		double fraction = 0;
+		for (var pool : this.heapPools) {
+			var usage = pool.getCollectionUsage();
+			if (usage != null && usage.getMax() > 0) {
+				fraction = Math.max(fraction, (double) usage.getUsed() / usage.getMax());
+			}
+		}
+		return fraction;
+	}
+
+	private enum Signal {HANDLERS, AUTH_QUEUE, HANDLER_LATENCY, HEAP}
+
+	public Level getLevel() {
+		return this.level;
+	}
+
+	public double getPressure() {
+		return this.pressure;
+	}
+
+	/**
+	 * @return The name of the signal which contributed most to the current
+	 * pressure.
+	 */
+	public String getDominantSignal() {
+		return this.dominantSignal;
+	}
+
+	public long getAdmitted(Work work) {
+		return this.admitted.get(work).sum();
+	}
+
+	public long getShed(Work work) {
+		return this.shed.get(work).sum();
+	}
+}
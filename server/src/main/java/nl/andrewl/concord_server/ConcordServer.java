@@ -2,26 +2,38 @@ package nl.andrewl.concord_server;
 
 import lombok.Getter;
 import nl.andrewl.concord_core.msg.Serializer;
-import nl.andrewl.concord_core.msg.types.ServerMetaData;
+import nl.andrewl.concord_core.msg.types.Error;
+import nl.andrewl.concord_core.transport.*;
 import nl.andrewl.concord_server.channel.ChannelManager;
 import nl.andrewl.concord_server.cli.ServerCli;
 import nl.andrewl.concord_server.client.ClientManager;
 import nl.andrewl.concord_server.client.ClientThread;
+import nl.andrewl.concord_server.client.ConnectionMonitor;
+import nl.andrewl.concord_server.client.OutboundStats;
+import nl.andrewl.concord_server.cluster.ClusterManager;
 import nl.andrewl.concord_server.config.ServerConfig;
 import nl.andrewl.concord_server.event.EventManager;
+import nl.andrewl.concord_server.host.AcceptLoop;
+import nl.andrewl.concord_server.host.ResourceUsage;
+import nl.andrewl.concord_server.host.ServerRuntime;
+import nl.andrewl.concord_server.logging.ServerLogger;
 import nl.andrewl.concord_server.util.IdProvider;
+import nl.andrewl.concord_server.util.ScopedExecutorService;
+import nl.andrewl.concord_server.util.TimeOrderedIdProvider;
 import nl.andrewl.concord_server.util.UUIDProvider;
 import org.dizitart.no2.Nitrite;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.nio.file.Path;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * The main server implementation, which serves as the entry point for
@@ -30,12 +42,12 @@ import java.util.concurrent.TimeUnit;
  */
 public class ConcordServer implements Runnable {
 	/**
-	 * The path to this server's configuration file.
+	 * The default path to this server's configuration file.
 	 */
 	private static final Path CONFIG_FILE = Path.of("server-config.json");
 
 	/**
-	 * The path to this server's database file.
+	 * The default path to this server's database file.
 	 */
 	private static final Path DATABASE_FILE = Path.of("concord-server.db");
 
@@ -45,9 +57,33 @@ public class ConcordServer implements Runnable {
 	private volatile boolean running;
 
 	/**
-	 * This server's socket, used to accept new client connections.
+	 * Latch that's released once the server has completely shut down.
 	 */
-	private final ServerSocket serverSocket;
+	private final CountDownLatch terminated = new CountDownLatch(1);
+
+	/**
+	 * Latch that's released when the server is asked to stop.
+	 */
+	private final CountDownLatch stopRequested = new CountDownLatch(1);
+
+	/**
+	 * The listener for TCP connections on the server's configured port.
+	 */
+	private final AcceptLoop.Listener tcpListener;
+
+	/**
+	 * The acceptor for in-memory connections from within the same process,
+	 * like bots or tests.
+	 */
+	@Getter
+	private final MemoryAcceptor memoryAcceptor;
+
+	/**
+	 * All acceptors other than the TCP listener that are used to accept new
+	 * client connections, which are the in-memory acceptor, and the Unix
+	 * domain socket acceptor if one is configured.
+	 */
+	private final List<ConnectionAcceptor> acceptors;
 
 	/**
 	 * A utility serializer that's mostly used when preparing a message to
@@ -65,7 +101,9 @@ public class ConcordServer implements Runnable {
 	private final ServerConfig config;
 
 	/**
-	 * The component that generates new user and channel ids.
+	 * The component that generates new user, channel, and message ids. These
+	 * are ordered by the time at which they were generated; see
+	 * {@link TimeOrderedIdProvider}.
 	 */
 	@Getter
 	private final IdProvider idProvider;
@@ -76,11 +114,49 @@ public class ConcordServer implements Runnable {
 	@Getter
 	private final Nitrite db;
 
+	/**
+	 * The threads that this server runs on, which may be shared with other
+	 * servers in the same process.
+	 */
+	@Getter
+	private final ServerRuntime runtime;
+
+	/**
+	 * Whether this server created its own runtime, and should thus shut it
+	 * down when it stops.
+	 */
+	private final boolean ownsRuntime;
+
+	/**
+	 * This server's view of the runtime's executors. Shutting it down cancels
+	 * all of this server's tasks.
+	 */
+	private final ScopedExecutorService scope;
+
 	/**
 	 * A general-purpose executor service that can be used to submit async tasks.
 	 */
 	@Getter
-	private final ExecutorService executorService = Executors.newCachedThreadPool();
+	private final ExecutorService executorService;
+
+	/**
+	 * The server's logger. Components should use a logger that's named after
+	 * them, via {@link ServerLogger#named(Class)}.
+	 */
+	@Getter
+	private final ServerLogger logger;
+
+	/**
+	 * Accounting of the resources that this server uses.
+	 */
+	@Getter
+	private final ResourceUsage usage = new ResourceUsage();
+
+	/**
+	 * Statistics about how long messages wait to be sent to clients.
+	 */
+	@Getter
+	private final OutboundStats outboundStats = new OutboundStats();
 
 	/**
 	 * Manager that handles incoming messages and events by clients.
@@ -88,6 +164,12 @@ public class ConcordServer implements Runnable {
 	@Getter
 	private final EventManager eventManager;
 
+	/**
+	 * Controller that sheds expensive requests when the server is overloaded.
+	 */
+	@Getter
+	private final AdmissionController admissionController;
+
 	/**
 	 * Manager that handles the collection of channels in this server.
 	 */
@@ -100,27 +182,171 @@ public class ConcordServer implements Runnable {
 	@Getter
 	private final ClientManager clientManager;
 
+	/**
+	 * Component which checks that each client's connection is still alive.
+	 */
+	@Getter
+	private final ConnectionMonitor connectionMonitor;
+
+	/**
+	 * Manager that handles this server's participation in a cluster. This is
+	 * null if the server is not part of a cluster.
+	 */
+	@Getter
+	private final ClusterManager clusterManager;
+
 	private final DiscoveryServerPublisher discoveryServerPublisher;
 
 	@Getter
-	private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+	private final ScheduledExecutorService scheduledExecutorService;
 
 	/**
-	 * Constructs the server and opens a server socket at the configured port.
+	 * The number of milliseconds that each phase of starting the server took,
+	 * in the order in which they ran.
+	 */
+	private final Map<String, Long> startupMillis = new LinkedHashMap<>();
+
+	/**
+	 * Constructs the server and opens a server socket at the configured port,
+	 * using the default configuration and database files in the working
+	 * directory.
 	 * @throws IOException If a server socket could not be opened.
 	 */
 	public ConcordServer() throws IOException {
-		this.idProvider = new UUIDProvider();
-		this.config = ServerConfig.loadOrCreate(CONFIG_FILE, idProvider);
-		this.discoveryServerPublisher = new DiscoveryServerPublisher(this.config);
-		this.db = Nitrite.builder().filePath(DATABASE_FILE.toFile()).openOrCreate();
+		this(CONFIG_FILE, DATABASE_FILE);
+	}
+
+	/**
+	 * Constructs the server and opens a server socket at the configured port.
+	 * @param configFile The path to the server's configuration file.
+	 * @param databaseFile The path to the server's database file.
+	 * @throws IOException If a server socket could not be opened.
+	 */
+	public ConcordServer(Path configFile, Path databaseFile) throws IOException {
+		this(ServerConfig.loadOrCreate(configFile, new UUIDProvider()), databaseFile);
+	}
+
+	/**
+	 * Constructs the server with the given configuration, and opens a server
+	 * socket at the configured port. If the configured port is 0, any free
+	 * port is used; see {@link ConcordServer#getPort()}.
+	 * @param config The server's configuration.
+	 * @param databaseFile The path to the server's database file, or null to
+	 *                     keep all data in memory, and discard it when the
+	 *                     server stops.
+	 * @throws IOException If a server socket could not be opened.
+	 */
+	public ConcordServer(ServerConfig config, Path databaseFile) throws IOException {
+		this(config, databaseFile, null);
+	}
+
+	/**
+	 * Constructs the server with the given configuration, running on the given
+	 * runtime, and binds the configured port.
+	 * @param config The server's configuration.
+	 * @param databaseFile The path to the server's database file, or null to
+	 *                     keep all data in memory.
+	 * @param runtime The runtime to run the server on, which may be shared with
+	 *                other servers. If this is null, the server creates its own
+	 *                runtime, and shuts it down when it stops.
+	 * @throws IOException If the port could not be bound.
+	 */
+	public ConcordServer(ServerConfig config, Path databaseFile, ServerRuntime runtime) throws IOException {
+		long phaseStart = System.nanoTime();
+		this.ownsRuntime = runtime == null;
+		this.runtime = runtime != null ? runtime : new ServerRuntime(config.getAuthThreadShare(), config.getLogBufferSize());
+		this.logger = new ServerLogger(this.runtime.getLogBuffer(), config.getName(), config.getLogLevel(), config.getLogLevels());
+		this.scope = this.runtime.newScope();
+		this.executorService = this.scope;
+		this.scheduledExecutorService = this.scope;
+		this.idProvider = new TimeOrderedIdProvider(config.getCluster() == null ? 0 : config.getCluster().getLocalNodeNumber());
+		this.config = config;
+		this.discoveryServerPublisher = new DiscoveryServerPublisher(this.config, this.logger.named(DiscoveryServerPublisher.class));
+		phaseStart = this.recordStartupPhase("runtime", phaseStart);
+		var dbBuilder = Nitrite.builder();
+		if (databaseFile != null) {
+			dbBuilder.filePath(databaseFile.toFile());
+		}
+		this.db = dbBuilder.openOrCreate();
+		phaseStart = this.recordStartupPhase("database", phaseStart);
 		this.eventManager = new EventManager(this);
 		this.channelManager = new ChannelManager(this);
+		phaseStart = this.recordStartupPhase("channels", phaseStart);
 		this.clientManager = new ClientManager(this);
-		this.serverSocket = new ServerSocket(this.config.getPort());
+		this.admissionController = new AdmissionController(this);
+		this.connectionMonitor = new ConnectionMonitor(this);
+		phaseStart = this.recordStartupPhase("clients", phaseStart);
+		this.clusterManager = this.config.getCluster() == null ? null : new ClusterManager(this, this.config.getCluster());
+		this.tcpListener = this.runtime.getAcceptLoop().bind(this.config.getPort());
+		this.memoryAcceptor = new MemoryAcceptor(this.config.getName());
+		this.acceptors = new ArrayList<>(List.of(this.memoryAcceptor));
+		if (this.config.getUnixSocketPath() != null) {
+			this.acceptors.add(new UnixSocketAcceptor(Path.of(this.config.getUnixSocketPath())));
+		}
+		this.recordStartupPhase("network", phaseStart);
 		this.serializer = new Serializer();
 	}
 
+	/**
+	 * Records how long a phase of starting the server took.
+	 * @param phase The name of the phase.
+	 * @param start The time at which the phase started, from {@link System#nanoTime()}.
+	 * @return The time at which the phase ended, which is when the next phase
+	 * starts.
+	 */
+	private long recordStartupPhase(String phase, long start) {
+		long now = System.nanoTime();
+		this.startupMillis.put(phase, TimeUnit.NANOSECONDS.toMillis(now - start));
+		return now;
+	}
+
+	/**
+	 * Creates an ephemeral server which keeps all its data in memory, and
+	 * doesn't read or write any files. This is useful for tests, load tests,
+	 * and short-lived servers.
+	 * @param config The server's configuration. Use a port of 0 to pick any
+	 *               free port.
+	 * @return The server, which has not been started yet.
+	 * @throws IOException If a server socket could not be opened.
+	 */
+	public static ConcordServer inMemory(ServerConfig config) throws IOException {
+		return new ConcordServer(config, null);
+	}
+
+	/**
+	 * Starts the server on a new thread.
+	 * @return The port on which the server accepts TCP connections.
+	 */
+	public int start() {
+		new Thread(this, "concord-server").start();
+		return this.getPort();
+	}
+
+	/**
+	 * @return The port on which the server accepts TCP connections.
+	 */
+	public int getPort() {
+		return this.tcpListener.getPort();
+	}
+
+	/**
+	 * Stops the server, and waits until it has shut down. This should only be
+	 * called once the server has been started.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public void stopAndWait() throws InterruptedException {
+		this.stop();
+		this.awaitTermination();
+	}
+
+	/**
+	 * Waits until the server has shut down, after it was stopped.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public void awaitTermination() throws InterruptedException {
+		this.terminated.await();
+	}
+
 	/**
 	 * @return True if the server is currently running, meaning it is accepting
 	 * connections, or false otherwise.
@@ -135,75 +361,161 @@ public class ConcordServer implements Runnable {
 	 */
 	public void stop() {
 		this.running = false;
-		if (!this.serverSocket.isClosed()) {
+		try {
+			this.tcpListener.close();
+		} catch (IOException e) {
+			this.logger.error("Could not close the TCP listener.", e);
+		}
+		this.stopRequested.countDown();
+		for (var acceptor : this.acceptors) {
 			try {
-				this.serverSocket.close();
+				acceptor.close();
 			} catch (IOException e) {
-				e.printStackTrace();
+				this.logger.error("Could not close acceptor {}.", acceptor.getLocalAddress(), e);
 			}
 		}
 	}
 
 	/**
-	 * @return The server's metadata.
-	 */
-	public ServerMetaData getMetaData() {
-		return new ServerMetaData(
-				this.config.getName(),
-				this.channelManager.getChannels().stream()
-						.map(channel -> new ServerMetaData.ChannelData(channel.getId(), channel.getName()))
-						.sorted(Comparator.comparing(ServerMetaData.ChannelData::name))
-						.toList().toArray(new ServerMetaData.ChannelData[0])
-		);
-	}
-
-	/**
-	 * Shuts down the server cleanly by doing the following things:
+	 * Shuts down the server cleanly, within the configured shutdown timeout,
+	 * by doing the following things:
 	 * <ol>
-	 *     <li>Disconnecting all clients.</li>
+	 *     <li>Sending a shutdown notice to all clients, and disconnecting them
+	 *     in parallel.</li>
 	 *     <li>Shutting down any executor services.</li>
-	 *     <li>Flushing and compacting the message database.</li>
+	 *     <li>Flushing pending session tokens, and closing the database.</li>
 	 *     <li>Flushing the server configuration one last time.</li>
+	 *     <li>Writing any log events that are still waiting.</li>
 	 * </ol>
+	 * New connections are already refused by the time this is called, since
+	 * {@link ConcordServer#stop()} closes all acceptors.
 	 */
 	private void shutdown() {
-		System.out.println("Shutting down the server.");
-		for (var clientId : this.clientManager.getConnectedIds()) {
-			this.clientManager.handleLogOut(clientId);
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.SECONDS.toNanos(this.config.getShutdownTimeoutSeconds());
+		this.logger.info("Shutting down the server.");
+		if (this.clusterManager != null) {
+			this.clusterManager.shutdown();
+		}
+		int clientCount = this.connectionMonitor.getConnectionCount();
+		try {
+			int forced = this.clientManager.disconnectAll(Error.warning("The server is shutting down."), deadline);
+			if (forced > 0) {
+				this.logger.warning("Disconnected {} clients forcibly, because they could not be disconnected in time.", forced);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
-		this.scheduledExecutorService.shutdown();
-		this.executorService.shutdown();
+		this.scope.shutdown();
+		try {
+			// Let tasks that are still running finish before the database is closed.
+			if (!this.scope.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+				this.logger.warning("Some tasks were still running after the shutdown timeout.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.clientManager.getAuthService().flushSessionTokens();
 		this.db.close();
 		try {
 			this.config.save();
 		} catch (IOException e) {
-			System.err.println("Could not save configuration on shutdown: " + e.getMessage());
+			this.logger.error("Could not save configuration on shutdown: {}", e.getMessage());
+		}
+		this.logger.info("Shut down in {} ms, disconnecting {} clients.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), clientCount);
+		if (this.ownsRuntime) {
+			this.runtime.shutdown();
+		} else {
+			try {
+				this.runtime.getLogBuffer().flush(Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 		}
 	}
 
 	@Override
 	public void run() {
+		long phaseStart = System.nanoTime();
 		this.running = true;
 		this.scheduledExecutorService.scheduleAtFixedRate(this.discoveryServerPublisher::publish, 0, 1, TimeUnit.MINUTES);
-		System.out.printf("Opened server on port %d.\n", config.getPort());
+		if (this.clusterManager != null) {
+			this.clusterManager.start();
+		}
+		phaseStart = this.recordStartupPhase("cluster", phaseStart);
+		for (var acceptor : this.acceptors) {
+			var acceptorThread = new Thread(() -> this.acceptConnections(acceptor), "concord-accept-" + acceptor.getLocalAddress());
+			acceptorThread.setDaemon(true);
+			acceptorThread.start();
+		}
+		this.tcpListener.start(this::acceptConnection);
+		this.recordStartupPhase("accepting", phaseStart);
+		this.channelManager.warmUp();
+		this.logger.info(
+				"Accepting connections on port {}, after starting in {} ms ({}).",
+				this.getPort(),
+				this.startupMillis.values().stream().mapToLong(Long::longValue).sum(),
+				this.startupMillis.entrySet().stream()
+						.map(entry -> entry.getKey() + " " + entry.getValue() + " ms")
+						.collect(Collectors.joining(", "))
+		);
+		try {
+			this.stopRequested.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.shutdown();
+		this.terminated.countDown();
+	}
+
+	/**
+	 * Starts a new client thread for a newly accepted connection, unless the
+	 * server already has the maximum number of connections, in which case the
+	 * connection is closed.
+	 * @param connection The connection.
+	 */
+	public void acceptConnection(Connection connection) {
+		if (!this.usage.tryOpenConnection(this.config.getMaxConnections())) {
+			try {
+				connection.close();
+			} catch (IOException e) {
+				this.logger.warning("Could not close rejected connection.", e);
+			}
+			return;
+		}
+		new ClientThread(connection, this).start();
+	}
+
+	/**
+	 * Accepts new client connections from the given acceptor until the server
+	 * is stopped, starting a new client thread for each one.
+	 * @param acceptor The acceptor to accept connections from.
+	 */
+	private void acceptConnections(ConnectionAcceptor acceptor) {
+		this.logger.info("Accepting connections on {}.", acceptor.getLocalAddress());
 		while (this.running) {
 			try {
-				Socket socket = this.serverSocket.accept();
-				ClientThread clientThread = new ClientThread(socket, this);
-				clientThread.start();
+				this.acceptConnection(acceptor.accept());
 			} catch (IOException e) {
-				if (!e.getMessage().equalsIgnoreCase("socket closed")) {
-					System.err.println("Could not accept new client connection: " + e.getMessage());
+				if (this.running) {
+					this.logger.warning("Could not accept new client connection: {}", e.getMessage());
 				}
 			}
 		}
-		this.shutdown();
 	}
 
 
-
+	/**
+	 * Starts the server. Optionally, the paths to the configuration file and
+	 * database file can be given as arguments, which makes it possible to run
+	 * several servers, like the nodes of a cluster, from the same directory.
+	 * @param args The command-line arguments.
+	 * @throws IOException If the server could not be started.
+	 */
 	public static void main(String[] args) throws IOException {
-		var server = new ConcordServer();
+		Path configFile = args.length > 0 ? Path.of(args[0]) : CONFIG_FILE;
+		Path databaseFile = args.length > 1 ? Path.of(args[1]) : DATABASE_FILE;
+		var server = new ConcordServer(configFile, databaseFile);
 		new Thread(server).start();
 		new ServerCli(server).run();
 	}
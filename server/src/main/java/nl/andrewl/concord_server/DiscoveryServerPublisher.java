@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import nl.andrewl.concord_server.config.ServerConfig;
+import nl.andrewl.concord_server.logging.ServerLogger;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -22,9 +23,11 @@ public class DiscoveryServerPublisher {
 	private final ObjectMapper mapper = new ObjectMapper();
 	private final HttpClient httpClient = HttpClient.newHttpClient();
 	private final ServerConfig config;
+	private final ServerLogger log;
 
-	public DiscoveryServerPublisher(ServerConfig config) {
+	public DiscoveryServerPublisher(ServerConfig config, ServerLogger log) {
 		this.config = config;
+		this.log = log;
 	}
 
 	public void publish() {
@@ -49,7 +52,7 @@ public class DiscoveryServerPublisher {
 			try {
 				this.httpClient.send(request, HttpResponse.BodyHandlers.discarding());
 			} catch (IOException | InterruptedException e) {
-				System.err.println("Could not publish metadata to " + discoveryServer + " because of exception: " + e.getClass().getSimpleName());
+				this.log.warning("Could not publish metadata to {} because of exception: {}", discoveryServer, e.getClass().getSimpleName());
 			}
 		}
 	}
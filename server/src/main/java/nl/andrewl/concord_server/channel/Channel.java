@@ -1,18 +1,25 @@
 package nl.andrewl.concord_server.channel;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import nl.andrewl.concord_core.msg.Message;
 import nl.andrewl.concord_core.msg.types.UserData;
+import nl.andrewl.concord_core.msg.types.chat.Chat;
 import nl.andrewl.concord_server.ConcordServer;
 import nl.andrewl.concord_server.client.ClientThread;
+import nl.andrewl.concord_server.client.PresenceIndex;
 import nl.andrewl.concord_server.util.CollectionUtils;
-import org.dizitart.no2.IndexType;
-import org.dizitart.no2.NitriteCollection;
+import org.dizitart.no2.*;
+import org.dizitart.no2.filters.Filters;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Represents a single communication area in which messages are sent by clients
@@ -24,39 +31,260 @@ import java.util.concurrent.ConcurrentHashMap;
 public class Channel implements Comparable<Channel> {
 	private final ConcordServer server;
 	private final UUID id;
-	private String name;
+	private volatile String name;
 
 	/**
 	 * The set of clients that are connected to this channel.
 	 */
 	private final Set<ClientThread> connectedClients;
 
+	/**
+	 * The users in this channel, sorted by name, together with the changes
+	 * that haven't been sent to the channel's clients yet.
+	 */
+	private final PresenceIndex members;
+
 	/**
 	 * A document collection which holds all messages created in this channel,
-	 * indexed on id, timestamp, message, and sender's username.
+	 * indexed on id, sequence, timestamp, message, and sender's username. It's
+	 * only opened when it's first needed; see {@link Channel#activate()}. It's
+	 * only used through {@link Channel#useMessageCollection(Function)}, so that
+	 * it isn't closed while someone is using it.
+	 */
+	@Getter(AccessLevel.NONE)
+	private volatile NitriteCollection messageCollection;
+
+	/**
+	 * The sequence number of the last message that was saved in this channel,
+	 * which is only known once the channel is active.
+	 */
+	@Getter(AccessLevel.NONE)
+	private long lastSequence;
+
+	/**
+	 * The number of calls to {@link Channel#useMessageCollection(Function)}
+	 * that are still running.
+	 */
+	@Getter(AccessLevel.NONE)
+	private int collectionUsers;
+
+	/**
+	 * Whether the message collection should be closed as soon as nobody is
+	 * using it anymore.
+	 */
+	@Getter(AccessLevel.NONE)
+	private boolean closeWhenUnused;
+
+	/**
+	 * Whether this channel has been unloaded from memory, after which no
+	 * clients may join it; see {@link Channel#unload()}.
+	 */
+	@Getter(AccessLevel.NONE)
+	private boolean unloaded;
+
+	/**
+	 * Batches chats for delivery when the channel has very many members.
+	 */
+	private final ChatBatcher batcher;
+
+	/**
+	 * A chat that's waiting to be delivered.
+	 * @param chat The chat.
+	 * @param relay If not null, this is given the chat to deliver it
+	 *              elsewhere, like to the other nodes of a cluster.
+	 */
+	private record Delivery(Chat chat, Consumer<Chat> relay) {}
+
+	/**
+	 * The chats that are waiting to be delivered, in the order of their
+	 * sequence numbers.
+	 */
+	@Getter(AccessLevel.NONE)
+	private final Queue<Delivery> deliveries = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The lock that's held by the thread that's delivering chats, so that
+	 * chats are delivered one at a time, in order. The {@link ChatBatcher}
+	 * also holds it while it sends a batch.
 	 */
-	private final NitriteCollection messageCollection;
+	@Getter(AccessLevel.PACKAGE)
+	private final ReentrantLock deliveryLock = new ReentrantLock();
 
 	public Channel(ConcordServer server, UUID id, String name) {
 		this.server = server;
 		this.id = id;
 		this.name = name;
 		this.connectedClients = ConcurrentHashMap.newKeySet();
-		this.messageCollection = server.getDb().getCollection("channel-" + id);
-		CollectionUtils.ensureIndexes(this.messageCollection, Map.of(
-				"timestamp", IndexType.NonUnique,
-				"senderNickname", IndexType.Fulltext,
-				"message", IndexType.Fulltext,
-				"id", IndexType.Unique
-		));
+		this.members = new PresenceIndex(true);
+		this.batcher = new ChatBatcher(this, server);
+	}
+
+	void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Opens this channel's message collection, and makes sure that it has the
+	 * right indexes, if that hasn't been done yet. This can take a while for
+	 * a channel with many messages, so channels are only activated like this
+	 * when they're first used, or in the background when the server starts.
+	 */
+	public synchronized void activate() {
+		this.openMessageCollection();
+	}
+
+	/**
+	 * Opens this channel's message collection, if it isn't open yet. This
+	 * must be called while holding this channel's lock.
+	 * @return The channel's message collection.
+	 */
+	private NitriteCollection openMessageCollection() {
+		if (this.messageCollection == null) {
+			var collection = this.server.getDb().getCollection(this.getCollectionName());
+			if (this.unloaded) {
+				// Someone looked this channel up just before it was unloaded, so
+				// let them read from it without activating it again, and close
+				// it when they're done.
+				this.closeWhenUnused = true;
+			} else {
+				CollectionUtils.ensureIndexes(collection, Map.of(
+						"sequence", IndexType.Unique,
+						"timestamp", IndexType.NonUnique,
+						"senderNickname", IndexType.Fulltext,
+						"message", IndexType.Fulltext,
+						"id", IndexType.Unique
+				));
+				this.lastSequence = this.loadLastSequence(collection);
+			}
+			this.messageCollection = collection;
+		}
+		return this.messageCollection;
+	}
+
+	/**
+	 * Finds the sequence number of the last message in a channel's message
+	 * collection. Messages are numbered from 1 without any gaps, so the last
+	 * one's number is the number of messages. If that message can't be found,
+	 * the collection has messages from before they were numbered, so all
+	 * messages are numbered again, in the order in which they were sent.
+	 * @param collection The channel's message collection.
+	 * @return The sequence number of the last message.
+	 */
+	private long loadLastSequence(NitriteCollection collection) {
+		long size = collection.size();
+		if (size == 0 || collection.find(Filters.eq("sequence", size)).size() > 0) {
+			return size;
+		}
+		List<Document> docs = new ArrayList<>((int) size);
+		for (var doc : collection.find(FindOptions.sort("timestamp", SortOrder.Ascending))) {
+			docs.add(doc);
+		}
+		// Some messages may already have the numbers that others get now, so
+		// the unique index is only built again once they're all numbered.
+		collection.dropIndex("sequence");
+		long sequence = 0;
+		for (var doc : docs) {
+			doc.put("sequence", ++sequence);
+			collection.update(doc);
+		}
+		collection.createIndex("sequence", IndexOptions.indexOptions(IndexType.Unique));
+		this.server.getLogger().named(getClass()).info("Numbered {} messages in #{}.", sequence, this);
+		return sequence;
+	}
+
+	/**
+	 * @return The sequence number of the last message that was saved in this
+	 * channel, or 0 if there are none.
+	 */
+	public synchronized long getLastSequence() {
+		if (!this.unloaded) this.openMessageCollection();
+		return this.lastSequence;
+	}
+
+	/**
+	 * @return The name of this channel's message collection.
+	 */
+	public String getCollectionName() {
+		return "channel-" + this.id;
+	}
+
+	/**
+	 * @return True if this channel's message collection has been opened.
+	 */
+	public boolean isActive() {
+		return this.messageCollection != null;
+	}
+
+	/**
+	 * Runs an action with this channel's message collection, which is
+	 * activated first if it isn't yet. The collection isn't closed until the
+	 * action is done, even if the channel is unloaded in the meantime. The
+	 * action must not keep the collection, or anything that reads from it,
+	 * like a cursor, after it returns.
+	 * @param action The action to run.
+	 * @param <T> The type of the action's result.
+	 * @return The action's result.
+	 */
+	public <T> T useMessageCollection(Function<NitriteCollection, T> action) {
+		NitriteCollection collection;
+		synchronized (this) {
+			collection = this.openMessageCollection();
+			this.collectionUsers++;
+		}
+		try {
+			return action.apply(collection);
+		} finally {
+			synchronized (this) {
+				this.collectionUsers--;
+				if (this.collectionUsers == 0 && this.closeWhenUnused) {
+					this.closeMessageCollection();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes the message collection right away if nobody is using it, or
+	 * otherwise as soon as the last user is done with it.
+	 */
+	private void closeMessageCollection() {
+		if (this.collectionUsers > 0) {
+			this.closeWhenUnused = true;
+		} else if (this.messageCollection != null) {
+			this.messageCollection.close();
+			this.messageCollection = null;
+			this.closeWhenUnused = false;
+		}
+	}
+
+	/**
+	 * Unloads this channel from memory, if no clients are in it and no chats
+	 * are waiting to be delivered. Its message collection is closed once
+	 * nobody is using it, and no clients may join it anymore; the channel
+	 * must be loaded again instead.
+	 * @return True if the channel was unloaded.
+	 */
+	synchronized boolean unload() {
+		if (!this.connectedClients.isEmpty() || this.batcher.isActive()) return false;
+		this.unloaded = true;
+		this.closeMessageCollection();
+		return true;
 	}
 
 	/**
 	 * Adds a client to this channel.
 	 * @param clientThread The client to add.
+	 * @return True if the client is in the channel, or false if the channel
+	 * has been unloaded, and must be loaded again.
 	 */
-	public void addClient(ClientThread clientThread) {
-		this.connectedClients.add(clientThread);
+	public boolean addClient(ClientThread clientThread) {
+		synchronized (this) {
+			if (this.unloaded) return false;
+			if (!this.connectedClients.add(clientThread)) return true;
+			this.members.join(clientThread.toData());
+		}
+		this.server.getClientManager().channelMembersChanged(this);
+		return true;
 	}
 
 	/**
@@ -64,7 +292,73 @@ public class Channel implements Comparable<Channel> {
 	 * @param clientThread The client to remove.
 	 */
 	public void removeClient(ClientThread clientThread) {
-		this.connectedClients.remove(clientThread);
+		if (this.connectedClients.remove(clientThread)) {
+			this.members.leave(clientThread.getClientId());
+			this.server.getClientManager().channelMembersChanged(this);
+		}
+	}
+
+	/**
+	 * Saves a chat to this channel's message collection, as the next message
+	 * in the channel's sequence.
+	 * @param chat The chat to save.
+	 * @return The chat, with its sequence number.
+	 */
+	public Chat saveMessage(Chat chat) {
+		return this.useMessageCollection(collection -> {
+			synchronized (this) {
+				return this.insertMessage(collection, chat);
+			}
+		});
+	}
+
+	/**
+	 * Inserts a chat into the message collection, as the next message in
+	 * this channel's sequence. This must be called while holding this
+	 * channel's lock.
+	 * @param collection The channel's message collection.
+	 * @param chat The chat to insert.
+	 * @return The chat, with its sequence number.
+	 */
+	private Chat insertMessage(NitriteCollection collection, Chat chat) {
+		long sequence = this.lastSequence + 1;
+		Document doc = new Document(Map.of(
+				"id", chat.id(),
+				"sequence", sequence,
+				"senderId", chat.senderId(),
+				"senderNickname", chat.senderNickname(),
+				"timestamp", chat.timestamp(),
+				"message", chat.message()
+		));
+		collection.insert(doc);
+		this.lastSequence = sequence;
+		return chat.withSequence(sequence);
+	}
+
+	/**
+	 * Saves a chat as the next message in this channel's sequence, and
+	 * delivers it. The chat is queued for delivery while still holding the
+	 * channel's lock, so that chats are always delivered in the order of
+	 * their sequence numbers, and clients only see a gap in the sequence if
+	 * they really missed a chat. The delivery itself happens after the lock
+	 * is released, either by this thread, or by another thread that's
+	 * delivering chats in this channel already.
+	 * @param chat The chat to publish.
+	 * @param relay If not null, this is given the saved chat, in the same
+	 *              order, to deliver it elsewhere, like to the other nodes of
+	 *              a cluster.
+	 * @return The chat, with its sequence number.
+	 */
+	public Chat publishChat(Chat chat, Consumer<Chat> relay) {
+		var saved = this.useMessageCollection(collection -> {
+			synchronized (this) {
+				var inserted = this.insertMessage(collection, chat);
+				this.deliveries.add(new Delivery(inserted, relay));
+				return inserted;
+			}
+		});
+		this.deliverQueuedChats();
+		return saved;
 	}
 
 	/**
@@ -84,17 +378,56 @@ public class Channel implements Comparable<Channel> {
 		}
 	}
 
+	/**
+	 * Sends a chat that has already been saved, like by another node of a
+	 * cluster, to all clients that are currently connected to this channel,
+	 * after any chats that are still waiting to be delivered.
+	 * @param chat The chat to send.
+	 */
+	public void sendChat(Chat chat) {
+		this.deliveries.add(new Delivery(chat, null));
+		this.deliverQueuedChats();
+	}
+
+	/**
+	 * Delivers the chats that are waiting, one at a time, unless another
+	 * thread is delivering them already, in which case that thread delivers
+	 * them too. If the channel has very many members, chats are delivered
+	 * with the next batch, as described in {@link ChatBatcher}.
+	 */
+	void deliverQueuedChats() {
+		do {
+			if (!this.deliveryLock.tryLock()) return;
+			try {
+				Delivery delivery;
+				while ((delivery = this.deliveries.poll()) != null) {
+					this.deliver(delivery);
+				}
+			} finally {
+				this.deliveryLock.unlock();
+			}
+		} while (!this.deliveries.isEmpty());
+	}
+
+	private void deliver(Delivery delivery) {
+		try {
+			if (this.batcher.isActive()) {
+				this.batcher.add(delivery.chat());
+			} else {
+				this.sendMessage(delivery.chat());
+			}
+		} catch (IOException e) {
+			this.server.getLogger().named(getClass()).error("Could not deliver a chat in #{}.", this, e);
+		}
+		if (delivery.relay() != null) delivery.relay().accept(delivery.chat());
+	}
+
 	/**
 	 * Gets a list of information about each user in this channel.
 	 * @return A list of {@link UserData} objects.
 	 */
 	public List<UserData> getUserData() {
-		List<UserData> users = new ArrayList<>(this.connectedClients.size());
-		for (var clientThread : this.getConnectedClients()) {
-			users.add(clientThread.toData());
-		}
-		users.sort(Comparator.comparing(UserData::name));
-		return users;
+		return this.members.getUsers();
 	}
 
 	public String getAsTag() {
@@ -105,13 +438,15 @@ public class Channel implements Comparable<Channel> {
 	public boolean equals(Object o) {
 		if (this == o) return true;
 		if (!(o instanceof Channel channel)) return false;
-		if (Objects.equals(this.id, channel.getId())) return true;
-		return Objects.equals(this.name, channel.getName());
+		return Objects.equals(this.id, channel.getId());
 	}
 
+	/**
+	 * Channels are identified only by their id, since their name may change.
+	 */
 	@Override
 	public int hashCode() {
-		return Objects.hash(id, name);
+		return Objects.hashCode(this.id);
 	}
 
 	@Override
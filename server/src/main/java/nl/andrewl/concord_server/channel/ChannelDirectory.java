@@ -0,0 +1,153 @@
+package nl.andrewl.concord_server.channel;
+
+import nl.andrewl.concord_core.msg.types.ServerMetaData;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryPage;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryUpdate;
+import nl.andrewl.concord_server.ConcordServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The directory of the server's public channels, sorted by name, from which
+ * clients get the channels in pages, instead of all at once. Clients can
+ * search the directory by a prefix of the channel's name, which is a range
+ * lookup in the sorted index.
+ * <p>
+ *     Each change to the directory increments its version, and results in a
+ *     {@link ChannelDirectoryUpdate} that should be sent to all clients, so
+ *     that they can keep the pages they've already gotten up to date.
+ * </p>
+ * <p>
+ *     Every client gets the first page of the whole directory when it logs
+ *     in. A serialized snapshot of that page is kept until the version
+ *     changes, so that sending it to any number of clients doesn't mean
+ *     building and serializing it again each time.
+ * </p>
+ */
+public class ChannelDirectory {
+	private final ConcordServer server;
+	private final NavigableMap<String, ServerMetaData.ChannelData> channelsByName = new ConcurrentSkipListMap<>();
+	private long version;
+
+	/**
+	 * The most recently serialized snapshot, which may be outdated.
+	 */
+	private volatile Snapshot snapshot;
+
+	/**
+	 * A serialized snapshot of the first page of the directory.
+	 * @param version The version of the directory that this was made from.
+	 * @param limit The maximum number of channels in the page.
+	 * @param bytes The serialized message.
+	 */
+	private record Snapshot(long version, int limit, byte[] bytes) {}
+
+	public ChannelDirectory(ConcordServer server) {
+		this.server = server;
+	}
+
+	/**
+	 * @return The current version of the directory.
+	 */
+	public synchronized long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * @return The number of channels in the directory.
+	 */
+	public int size() {
+		return this.channelsByName.size();
+	}
+
+	/**
+	 * Adds a channel to the directory.
+	 * @param id The channel's id.
+	 * @param name The channel's name.
+	 * @return The update to send to clients.
+	 */
+	public synchronized ChannelDirectoryUpdate add(UUID id, String name) {
+		this.channelsByName.put(name, new ServerMetaData.ChannelData(id, name));
+		return new ChannelDirectoryUpdate(++this.version, ChannelDirectoryUpdate.Type.ADDED, id, name);
+	}
+
+	/**
+	 * Removes a channel from the directory.
+	 * @param id The channel's id.
+	 * @param name The channel's name.
+	 * @return The update to send to clients.
+	 */
+	public synchronized ChannelDirectoryUpdate remove(UUID id, String name) {
+		this.channelsByName.remove(name);
+		return new ChannelDirectoryUpdate(++this.version, ChannelDirectoryUpdate.Type.REMOVED, id, name);
+	}
+
+	/**
+	 * Changes the name of a channel in the directory.
+	 * @param id The channel's id.
+	 * @param oldName The channel's previous name.
+	 * @param newName The channel's new name.
+	 * @return The update to send to clients.
+	 */
+	public synchronized ChannelDirectoryUpdate rename(UUID id, String oldName, String newName) {
+		this.channelsByName.remove(oldName);
+		this.channelsByName.put(newName, new ServerMetaData.ChannelData(id, newName));
+		return new ChannelDirectoryUpdate(++this.version, ChannelDirectoryUpdate.Type.RENAMED, id, newName);
+	}
+
+	/**
+	 * Gets a page of channels from the directory.
+	 * @param prefix Only channels whose name starts with this are included.
+	 * @param after The name after which the page starts, or null to start at
+	 *              the first channel with the given prefix.
+	 * @param limit The maximum number of channels in the page.
+	 * @return The page.
+	 */
+	public ChannelDirectoryPage getPage(String prefix, String after, int limit) {
+		if (prefix == null) prefix = "";
+		long pageVersion = this.getVersion();
+		NavigableMap<String, ServerMetaData.ChannelData> range = (after != null && after.compareTo(prefix) >= 0)
+				? this.channelsByName.tailMap(after, false)
+				: this.channelsByName.tailMap(prefix, true);
+		List<ServerMetaData.ChannelData> channels = new ArrayList<>(Math.min(limit, 64));
+		String next = null;
+		for (var entry : range.entrySet()) {
+			if (!entry.getKey().startsWith(prefix)) break;
+			if (channels.size() == limit) {
+				next = channels.get(channels.size() - 1).name();
+				break;
+			}
+			channels.add(entry.getValue());
+		}
+		return new ChannelDirectoryPage(pageVersion, prefix, channels.toArray(new ServerMetaData.ChannelData[0]), next);
+	}
+
+	/**
+	 * Gets the first page of the whole directory, as a serialized
+	 * {@link ChannelDirectoryPage} message. This is only rebuilt after the
+	 * directory has changed.
+	 * @param limit The maximum number of channels in the page.
+	 * @return The serialized page, which must not be modified.
+	 * @throws IOException If the page could not be serialized.
+	 */
+	public byte[] getFirstPageBytes(int limit) throws IOException {
+		var snapshot = this.snapshot;
+		long version = this.getVersion();
+		if (snapshot == null || snapshot.version() != version || snapshot.limit() != limit) {
+			// If the directory changes while we build, the version changes too,
+			// so the next call builds a new snapshot.
+			var page = this.getPage("", null, limit);
+			var baos = new ByteArrayOutputStream();
+			this.server.getSerializer().writeMessage(page, baos);
+			snapshot = new Snapshot(page.version(), limit, baos.toByteArray());
+			this.snapshot = snapshot;
+		}
+		return snapshot.bytes();
+	}
+}
@@ -1,19 +1,30 @@
 package nl.andrewl.concord_server.channel;
 
+import nl.andrewl.concord_core.msg.types.UserData;
+import nl.andrewl.concord_core.msg.types.channel.ChannelCounts;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryUpdate;
+import nl.andrewl.concord_core.msg.types.channel.ChannelMembers;
 import nl.andrewl.concord_core.msg.types.channel.MoveToChannel;
 import nl.andrewl.concord_server.ConcordServer;
 import nl.andrewl.concord_server.client.ClientThread;
+import nl.andrewl.concord_server.logging.ServerLogger;
 import nl.andrewl.concord_server.util.CollectionUtils;
+import nl.andrewl.concord_server.util.UUIDMap;
 import org.dizitart.no2.Document;
 import org.dizitart.no2.IndexType;
 import org.dizitart.no2.NitriteCollection;
+import org.dizitart.no2.exceptions.UniqueConstraintException;
 import org.dizitart.no2.filters.Filters;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -22,28 +33,64 @@ import java.util.stream.Collectors;
  */
 public class ChannelManager {
 	private final ConcordServer server;
+	private final ServerLogger log;
 	private final Map<String, Channel> channelNameMap;
-	private final Map<UUID, Channel> channelIdMap;
+	private final UUIDMap<Channel> channelIdMap;
+	private final ChannelDirectory directory;
 
-	private final Map<Set<UUID>, Channel> privateChannels;
+	private final PrivateChannelCache privateChannels;
 	private final NitriteCollection privateChannelCollection;
 
 	public ChannelManager(ConcordServer server) {
 		this.server = server;
+		this.log = server.getLogger().named(getClass());
 		this.channelNameMap = new ConcurrentHashMap<>();
-		this.channelIdMap = new ConcurrentHashMap<>();
-		this.privateChannels = new ConcurrentHashMap<>();
+		this.channelIdMap = new UUIDMap<>();
+		this.directory = new ChannelDirectory(server);
+		this.privateChannels = new PrivateChannelCache();
 		this.privateChannelCollection = this.server.getDb().getCollection("private-channels");
 		CollectionUtils.ensureIndexes(this.privateChannelCollection, Map.of(
 				"idHash", IndexType.Unique,
 				"id", IndexType.Unique
 		));
+		long evictionPeriod = Math.max(1, Math.min(60, server.getConfig().getPrivateChannelIdleSeconds() / 2));
+		server.getScheduledExecutorService().scheduleWithFixedDelay(this::evictPrivateChannels, evictionPeriod, evictionPeriod, TimeUnit.SECONDS);
 		// Initialize the channels according to what's defined in the server's config.
 		for (var channelConfig : server.getConfig().getChannels()) {
 			this.addChannel(new Channel(server, UUID.fromString(channelConfig.getId()), channelConfig.getName()));
 		}
 	}
 
+	/**
+	 * Activates all public channels in the background, a few at a time, so
+	 * that the first clients to use each channel don't have to wait for its
+	 * collection to be opened and indexed. Channels that are used before
+	 * they're warmed up are simply activated right away.
+	 */
+	public void warmUp() {
+		Queue<Channel> queue = new ConcurrentLinkedQueue<>(this.channelIdMap.values());
+		int total = queue.size();
+		if (total == 0) return;
+		int workers = Math.min(total, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+		var remaining = new AtomicInteger(workers);
+		long start = System.nanoTime();
+		for (int i = 0; i < workers; i++) {
+			this.server.getExecutorService().execute(() -> {
+				Channel channel;
+				while (this.server.isRunning() && (channel = queue.poll()) != null) {
+					try {
+						channel.activate();
+					} catch (RuntimeException e) {
+						this.log.error("Could not activate channel {}.", channel, e);
+					}
+				}
+				if (remaining.decrementAndGet() == 0 && this.server.isRunning()) {
+					this.log.info("Warmed up {} channels in {} ms.", total, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				}
+			});
+		}
+	}
+
 	public Set<Channel> getChannels() {
 		return Set.copyOf(this.channelIdMap.values());
 	}
@@ -53,22 +100,55 @@ public class ChannelManager {
 		if (optionalDefault.isPresent()) {
 			return optionalDefault;
 		}
-		System.err.println("Could not find a channel with the name \"" + this.server.getConfig().getDefaultChannel() + "\".");
+		this.log.warning("Could not find a channel with the name \"{}\".", this.server.getConfig().getDefaultChannel());
 		for (var channel : this.getChannels()) {
 			return Optional.of(channel);
 		}
-		System.err.println("Could not find any channel to use as a default channel.");
+		this.log.error("Could not find any channel to use as a default channel.");
 		return Optional.empty();
 	}
 
-	public void addChannel(Channel channel) {
+	/**
+	 * Adds a public channel to the server.
+	 * @param channel The channel to add.
+	 * @return The update to send to clients, to tell them about the channel.
+	 */
+	public ChannelDirectoryUpdate addChannel(Channel channel) {
 		this.channelNameMap.put(channel.getName(), channel);
 		this.channelIdMap.put(channel.getId(), channel);
+		return this.directory.add(channel.getId(), channel.getName());
 	}
 
-	public void removeChannel(Channel channel) {
+	/**
+	 * Removes a public channel from the server.
+	 * @param channel The channel to remove.
+	 * @return The update to send to clients, to tell them about the removal.
+	 */
+	public ChannelDirectoryUpdate removeChannel(Channel channel) {
 		this.channelNameMap.remove(channel.getName());
 		this.channelIdMap.remove(channel.getId());
+		return this.directory.remove(channel.getId(), channel.getName());
+	}
+
+	/**
+	 * Renames a public channel.
+	 * @param channel The channel to rename.
+	 * @param name The channel's new name, which must not be in use yet.
+	 * @return The update to send to clients, to tell them about the new name.
+	 */
+	public ChannelDirectoryUpdate renameChannel(Channel channel, String name) {
+		String oldName = channel.getName();
+		this.channelNameMap.put(name, channel);
+		channel.setName(name);
+		this.channelNameMap.remove(oldName);
+		return this.directory.rename(channel.getId(), oldName, name);
+	}
+
+	/**
+	 * @return The directory of the server's public channels.
+	 */
+	public ChannelDirectory getDirectory() {
+		return this.directory;
 	}
 
 	public Optional<Channel> getChannelByName(String name) {
@@ -85,15 +165,42 @@ public class ChannelManager {
 	 * new channel, and sending them a message to indicate that it has been done.
 	 * @param client The client to move.
 	 * @param channel The channel to move the client to.
+	 * @return True if the client was moved, or false if the channel is a
+	 * private channel that was unloaded in the meantime, in which case the
+	 * client stays where it is.
 	 */
-	public void moveToChannel(ClientThread client, Channel channel) {
-		if (client.getCurrentChannel() != null) {
-			var previousChannel = client.getCurrentChannel();
+	public boolean moveToChannel(ClientThread client, Channel channel) {
+		if (!channel.addClient(client)) return false;
+		var previousChannel = client.getCurrentChannel();
+		if (previousChannel != null && previousChannel != channel) {
 			previousChannel.removeClient(client);
 		}
-		channel.addClient(client);
 		client.setCurrentChannel(channel);
 		client.sendToClient(new MoveToChannel(channel.getId(), channel.getName()));
+		this.sendMembers(client, channel);
+		return true;
+	}
+
+	/**
+	 * Sends the complete list of a channel's members to a client that has just
+	 * entered the channel. After this, the client gets updates as members
+	 * enter and leave.
+	 * @param client The client to send the list to.
+	 * @param channel The channel that the client is in.
+	 */
+	public void sendMembers(ClientThread client, Channel channel) {
+		client.sendToClient(new ChannelMembers(channel.getId(), channel.getUserData().toArray(new UserData[0])));
+	}
+
+	/**
+	 * @return The number of members in each of the server's public channels
+	 * that has any members. Clients can assume that other channels are empty.
+	 */
+	public ChannelCounts getChannelCounts() {
+		return new ChannelCounts(this.channelIdMap.values().stream()
+				.filter(channel -> !channel.getConnectedClients().isEmpty())
+				.map(channel -> new ChannelCounts.ChannelCount(channel.getId(), channel.getConnectedClients().size()))
+				.toArray(ChannelCounts.ChannelCount[]::new));
 	}
 
 	/**
@@ -107,7 +214,22 @@ public class ChannelManager {
 		if (clientIds.size() < 2) {
 			throw new IllegalArgumentException("At least 2 client ids are required for a private channel.");
 		}
-		return this.privateChannels.computeIfAbsent(clientIds, this::getPrivateChannelFromDatabase);
+		Channel channel = this.privateChannels.get(clientIds);
+		if (channel != null) return channel;
+		// Load the channel without holding any of the cache's locks, since that
+		// would block lookups of other channels while we wait for the database.
+		return this.privateChannels.add(clientIds, this.getPrivateChannelFromDatabase(clientIds));
+	}
+
+	/**
+	 * Checks whether the private channel for the given client ids is already
+	 * loaded, so that getting it is cheap.
+	 * @param clientIds The id of each client which has access to the channel.
+	 * @return True if the channel is loaded, or false if getting it would
+	 * require loading or creating it.
+	 */
+	public boolean isPrivateChannelLoaded(Set<UUID> clientIds) {
+		return this.privateChannels.contains(clientIds);
 	}
 
 	/**
@@ -118,23 +240,32 @@ public class ChannelManager {
 	 * @return The private channel.
 	 */
 	public Optional<Channel> getPrivateChannel(UUID clientId, UUID channelId) {
-		Channel privateChannel = this.privateChannels.entrySet().stream()
-				.filter(entry -> entry.getKey().contains(clientId) && entry.getValue().getId().equals(channelId))
-				.findAny().map(Map.Entry::getValue).orElse(null);
-		if (privateChannel == null) {
-			var cursor = this.privateChannelCollection.find(Filters.and(Filters.eq("id", channelId), Filters.in("clientIds", clientId)));
-			Document channelInfo = cursor.firstOrDefault();
-			if (channelInfo != null) {
-				privateChannel = new Channel(
-						this.server,
-						channelInfo.get("id", UUID.class),
-						channelInfo.get("name", String.class)
-				);
-				Set<UUID> clientIds = Set.of(channelInfo.get("clientIds", UUID[].class));
-				this.privateChannels.put(clientIds, privateChannel);
-			}
+		Channel privateChannel = this.privateChannels.get(clientId, channelId);
+		if (privateChannel != null) return Optional.of(privateChannel);
+		Document channelInfo = this.privateChannelCollection.find(Filters.eq("id", channelId)).firstOrDefault();
+		if (channelInfo == null) return Optional.empty();
+		Set<UUID> clientIds = Set.of(channelInfo.get("clientIds", UUID[].class));
+		if (!clientIds.contains(clientId)) return Optional.empty();
+		return Optional.of(this.privateChannels.add(clientIds, this.toChannel(channelInfo)));
+	}
+
+	/**
+	 * Unloads the private channels that haven't been used for a while, or
+	 * that are the least recently used when too many are loaded.
+	 */
+	private void evictPrivateChannels() {
+		var config = this.server.getConfig();
+		int evicted = this.privateChannels.evict(
+				TimeUnit.SECONDS.toMillis(config.getPrivateChannelIdleSeconds()),
+				config.getPrivateChannelCacheSize()
+		);
+		if (evicted > 0) {
+			this.log.debug("Unloaded {} private channels, {} remain loaded.", evicted, this.privateChannels.size());
 		}
-		return Optional.ofNullable(privateChannel);
+	}
+
+	public PrivateChannelCache getPrivateChannelCache() {
+		return this.privateChannels;
 	}
 
 	/**
@@ -147,27 +278,33 @@ public class ChannelManager {
 	private Channel getPrivateChannelFromDatabase(Set<UUID> clientIds) {
 		// First check if a private channel for these clients exists in the database.
 		String idHash = clientIds.stream().sorted().map(UUID::toString).collect(Collectors.joining());
-		var cursor = this.privateChannelCollection.find(Filters.eq("idHash", idHash));
-		Document channelInfo = cursor.firstOrDefault();
+		Document channelInfo = this.privateChannelCollection.find(Filters.eq("idHash", idHash)).firstOrDefault();
 		if (channelInfo != null) {
 			// If it does exist, instantiate a channel with its info.
-			return new Channel(
-					this.server,
-					channelInfo.get("id", UUID.class),
-					channelInfo.get("name", String.class)
-			);
-		} else {
-			// Otherwise, create the channel anew and save it in the collection.
-			var channel = new Channel(this.server, this.server.getIdProvider().newId(), "Private Channel");
-			channelInfo = new Document(Map.of(
-					"idHash", idHash,
-					"id", channel.getId(),
-					"name", channel.getName(),
-					"clientIds", clientIds.toArray(new UUID[0])
-			));
+			return this.toChannel(channelInfo);
+		}
+		// Otherwise, create the channel anew and save it in the collection.
+		channelInfo = new Document(Map.of(
+				"idHash", idHash,
+				"id", this.server.getIdProvider().newId(),
+				"name", "Private Channel",
+				"clientIds", clientIds.toArray(new UUID[0])
+		));
+		try {
 			this.privateChannelCollection.insert(channelInfo);
-			System.out.println("Created new private channel for clients: " + clientIds);
-			return channel;
+		} catch (UniqueConstraintException e) {
+			// Another thread created the channel at the same time, so use theirs.
+			return this.toChannel(this.privateChannelCollection.find(Filters.eq("idHash", idHash)).firstOrDefault());
 		}
+		this.log.info("Created new private channel for clients: {}", clientIds);
+		return this.toChannel(channelInfo);
+	}
+
+	private Channel toChannel(Document channelInfo) {
+		return new Channel(
+				this.server,
+				channelInfo.get("id", UUID.class),
+				channelInfo.get("name", String.class)
+		);
 	}
 }
@@ -0,0 +1,191 @@
+package nl.andrewl.concord_server.channel;
+
+import nl.andrewl.concord_server.client.ClientThread;
+import nl.andrewl.concord_server.util.UUIDMap;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds the private channels that are loaded, indexed by the set of clients
+ * that each one is for, by id, and by each of its members. Lookups never
+ * block, and each one marks the channel as used.
+ * <p>
+ *     The cache is bounded by {@link PrivateChannelCache#evict(long, int)},
+ *     which should be called periodically. It unloads channels that haven't
+ *     been used for a while, and then the least-recently-used ones while
+ *     there are too many, and closes their message collections. Channels with
+ *     connected clients are never unloaded. An unloaded channel is simply
+ *     loaded again from the database the next time it's needed.
+ * </p>
+ * <p>
+ *     A channel is checked for clients and unloaded while holding its lock,
+ *     so no client can join it in the meantime. Someone who looked up the
+ *     channel just before it was unloaded can't join it, and has to look it
+ *     up again; see {@link Channel#addClient(ClientThread)}. Adding and
+ *     removing channels is serialized, so that a channel that's loaded again
+ *     isn't removed from the indexes together with its unloaded copy.
+ * </p>
+ */
+public class PrivateChannelCache {
+	private static final class Entry {
+		private final Set<UUID> clientIds;
+		private final Channel channel;
+		private volatile long lastUsed;
+
+		private Entry(Set<UUID> clientIds, Channel channel) {
+			this.clientIds = clientIds;
+			this.channel = channel;
+			this.lastUsed = System.currentTimeMillis();
+		}
+
+		private Channel use() {
+			this.lastUsed = System.currentTimeMillis();
+			return this.channel;
+		}
+	}
+
+	private final Map<Set<UUID>, Entry> byClientIds = new ConcurrentHashMap<>();
+	private final UUIDMap<Entry> byId = new UUIDMap<>();
+	private final Map<UUID, Set<UUID>> idsByClient = new ConcurrentHashMap<>();
+	private final Object writeLock = new Object();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Gets the loaded private channel for a set of clients.
+	 * @param clientIds The id of each client which has access to the channel.
+	 * @return The channel, or null if it's not loaded.
+	 */
+	public Channel get(Set<UUID> clientIds) {
+		return this.record(this.byClientIds.get(clientIds));
+	}
+
+	/**
+	 * Gets a loaded private channel by its id, if the given client is one of
+	 * its members.
+	 * @param clientId The id of the client that's requesting the channel.
+	 * @param channelId The id of the channel.
+	 * @return The channel, or null if it's not loaded, or the client isn't a
+	 * member of it.
+	 */
+	public Channel get(UUID clientId, UUID channelId) {
+		var channelIds = this.idsByClient.get(clientId);
+		if (channelIds == null || !channelIds.contains(channelId)) {
+			this.misses.increment();
+			return null;
+		}
+		return this.record(this.byId.get(channelId));
+	}
+
+	/**
+	 * Checks whether a private channel is loaded, without marking it as used.
+	 * @param clientIds The id of each client which has access to the channel.
+	 * @return True if the channel is loaded.
+	 */
+	public boolean contains(Set<UUID> clientIds) {
+		return this.byClientIds.containsKey(clientIds);
+	}
+
+	private Channel record(Entry entry) {
+		if (entry == null) {
+			this.misses.increment();
+			return null;
+		}
+		this.hits.increment();
+		return entry.use();
+	}
+
+	/**
+	 * Adds a private channel that has just been loaded, unless the same
+	 * channel has been loaded by another thread in the meantime.
+	 * @param clientIds The id of each client which has access to the channel.
+	 * @param channel The channel that was loaded.
+	 * @return The channel that's in the cache.
+	 */
+	public Channel add(Set<UUID> clientIds, Channel channel) {
+		var entry = new Entry(clientIds, channel);
+		synchronized (this.writeLock) {
+			var existing = this.byClientIds.putIfAbsent(clientIds, entry);
+			if (existing != null) return existing.use();
+			this.byId.put(channel.getId(), entry);
+			for (var clientId : clientIds) {
+				this.idsByClient.computeIfAbsent(clientId, id -> ConcurrentHashMap.newKeySet()).add(channel.getId());
+			}
+		}
+		return channel;
+	}
+
+	/**
+	 * Unloads channels that have no connected clients, and that either
+	 * haven't been used for the given time, or are the least recently used
+	 * of more than the given number of channels.
+	 * @param maxIdleMillis The number of milliseconds after which an unused
+	 *                      channel is unloaded.
+	 * @param maxSize The maximum number of channels to keep loaded.
+	 * @return The number of channels that were unloaded.
+	 */
+	public int evict(long maxIdleMillis, int maxSize) {
+		long now = System.currentTimeMillis();
+		int evicted = 0;
+		for (var entry : this.byClientIds.values()) {
+			if (now - entry.lastUsed > maxIdleMillis && this.remove(entry)) evicted++;
+		}
+		int excess = this.byClientIds.size() - maxSize;
+		if (excess > 0) {
+			var candidates = this.byClientIds.values().stream()
+					.sorted(Comparator.comparingLong(entry -> entry.lastUsed))
+					.toList();
+			for (var entry : candidates) {
+				if (excess == 0) break;
+				if (this.remove(entry)) {
+					evicted++;
+					excess--;
+				}
+			}
+		}
+		return evicted;
+	}
+
+	private boolean remove(Entry entry) {
+		var channel = entry.channel;
+		synchronized (channel) {
+			if (!channel.getConnectedClients().isEmpty() || channel.getBatcher().isActive()) return false;
+			synchronized (this.writeLock) {
+				if (!this.byClientIds.remove(entry.clientIds, entry)) return false;
+				this.byId.remove(channel.getId());
+				for (var clientId : entry.clientIds) {
+					this.idsByClient.computeIfPresent(clientId, (id, channelIds) -> {
+						channelIds.remove(channel.getId());
+						return channelIds.isEmpty() ? null : channelIds;
+					});
+				}
+			}
+			channel.unload();
+		}
+		this.evictions.increment();
+		return true;
+	}
+
+	public int size() {
+		return this.byClientIds.size();
+	}
+
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	public long getEvictions() {
+		return this.evictions.sum();
+	}
+}
@@ -0,0 +1,84 @@
+package nl.andrewl.concord_server.cli;
+
+import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.host.ConcordHost;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command-line interface that's available when running a {@link ConcordHost}.
+ * Besides its own commands, it can run any server command on a single tenant.
+ */
+public class HostCli implements Runnable {
+	private final ConcordHost host;
+	private final Map<String, ServerCli> tenantClis = new HashMap<>();
+
+	public HostCli(ConcordHost host) {
+		this.host = host;
+		host.getTenants().forEach((id, server) -> this.tenantClis.put(id, new ServerCli(server)));
+	}
+
+	@Override
+	public void run() {
+		System.out.println("Host command-line-interface initialized.\n\tType \"help\" for a list of available commands.\n\tType \"stop\" to stop all tenants.");
+		BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+		try {
+			while (this.host.isRunning() && (line = reader.readLine()) != null) {
+				this.execute(line);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void execute(String line) {
+		if (line.isBlank()) return;
+		String[] words = line.trim().split("\\s+", 3);
+		switch (words[0].toLowerCase()) {
+			case "help" -> System.out.println("""
+					The following commands are available:
+						tenants
+						tenant <id> <command...>
+						stop""");
+			case "tenants" -> this.showTenants();
+			case "tenant" -> {
+				if (words.length < 3) {
+					System.err.println("Usage: tenant <id> <command...>");
+					return;
+				}
+				var cli = this.tenantClis.get(words[1]);
+				if (cli == null) {
+					System.err.println("Unknown tenant: " + words[1]);
+					return;
+				}
+				cli.execute(words[2]);
+			}
+			case "stop" -> this.host.stop();
+			default -> System.err.println("Unknown command.");
+		}
+	}
+
+	private void showTenants() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-20s %6s %8s %8s %12s %12s %12s\n", "Tenant", "Port", "Clients", "Rejected", "Received", "Sent", "Handler ms"));
+		for (var entry : this.host.getTenants().entrySet()) {
+			ConcordServer server = entry.getValue();
+			var usage = server.getUsage();
+			sb.append(String.format(
+					"%-20s %6d %8d %8d %12d %12d %12.1f\n",
+					entry.getKey(),
+					server.getPort(),
+					usage.getActiveConnections(),
+					usage.getRejectedConnections(),
+					usage.getMessagesReceived(),
+					usage.getMessagesSent(),
+					usage.getHandlerMillis()
+			));
+		}
+		System.out.print(sb);
+	}
+}
@@ -3,6 +3,8 @@ package nl.andrewl.concord_server.cli;
 import nl.andrewl.concord_server.ConcordServer;
 import nl.andrewl.concord_server.cli.command.ChannelCommand;
 import nl.andrewl.concord_server.cli.command.ListClientsCommand;
+import nl.andrewl.concord_server.cli.command.SessionsCommand;
+import nl.andrewl.concord_server.cli.command.StatsCommand;
 import nl.andrewl.concord_server.cli.command.StopCommand;
 
 import java.io.BufferedReader;
@@ -26,6 +28,8 @@ public class ServerCli implements Runnable {
 		this.commands.put("list-clients", new ListClientsCommand());
 		this.commands.put("channel", new ChannelCommand());
 		this.commands.put("stop", new StopCommand());
+		this.commands.put("stats", new StatsCommand());
+		this.commands.put("sessions", new SessionsCommand());
 
 		this.commands.put("help", (s, args) -> {
 			System.out.println("The following commands are available:");
@@ -42,24 +46,31 @@ public class ServerCli implements Runnable {
 		String line;
 		try {
 			while (this.server.isRunning() && (line = reader.readLine()) != null) {
-				if (!line.isBlank()) {
-					String[] words = line.split("\\s+");
-					String command = words[0];
-					String[] args = Arrays.copyOfRange(words, 1, words.length);
-					var cliCommand = this.commands.get(command.trim().toLowerCase());
-					if (cliCommand != null) {
-						try {
-							cliCommand.handle(this.server, args);
-						} catch (Exception e) {
-							e.printStackTrace();
-						}
-					} else {
-						System.err.println("Unknown command.");
-					}
-				}
+				this.execute(line);
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * Executes a single line of input as a command.
+	 * @param line The line to execute.
+	 */
+	public void execute(String line) {
+		if (line.isBlank()) return;
+		String[] words = line.trim().split("\\s+");
+		String command = words[0];
+		String[] args = Arrays.copyOfRange(words, 1, words.length);
+		var cliCommand = this.commands.get(command.toLowerCase());
+		if (cliCommand != null) {
+			try {
+				cliCommand.handle(this.server, args);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		} else {
+			System.err.println("Unknown command.");
+		}
+	}
 }
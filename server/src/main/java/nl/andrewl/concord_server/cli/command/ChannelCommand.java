@@ -17,7 +17,7 @@ public class ChannelCommand implements ServerCliCommand {
 	@Override
 	public void handle(ConcordServer server, String[] args) throws Exception {
 		if (args.length < 1) {
-			System.err.println("Missing required subcommand. Valid subcommands are: add, remove, list");
+			System.err.println("Missing required subcommand. Valid subcommands are: add, remove, rename, list");
 			return;
 		}
 		String subcommand = args[0];
@@ -25,6 +25,7 @@ public class ChannelCommand implements ServerCliCommand {
 		switch (subcommand) {
 			case "add" -> addChannel(server, args);
 			case "remove" -> removeChannel(server, args);
+			case "rename" -> renameChannel(server, args);
 			case "list" -> listChannels(server);
 			default -> System.err.println("Unknown subcommand.");
 		}
@@ -54,8 +55,7 @@ public class ChannelCommand implements ServerCliCommand {
 		server.getConfig().save();
 
 		var channel = new Channel(server, id, name);
-		server.getChannelManager().addChannel(channel);
-		server.getClientManager().broadcast(server.getMetaData());
+		server.getClientManager().broadcast(server.getChannelManager().addChannel(channel));
 		System.out.println("Added channel " + channel.getAsTag() + ".");
 	}
 
@@ -85,14 +85,49 @@ public class ChannelCommand implements ServerCliCommand {
 		for (var client : channelToRemove.getConnectedClients()) {
 			server.getChannelManager().moveToChannel(client, alternative);
 		}
-		server.getChannelManager().removeChannel(channelToRemove);
-		server.getDb().getContext().dropCollection(channelToRemove.getMessageCollection().getName());
+		var update = server.getChannelManager().removeChannel(channelToRemove);
+		server.getDb().getContext().dropCollection(channelToRemove.getCollectionName());
 		server.getConfig().getChannels().removeIf(channelConfig -> channelConfig.getName().equals(channelToRemove.getName()));
 		server.getConfig().save();
-		server.getClientManager().broadcast(server.getMetaData());
+		server.getClientManager().broadcast(update);
 		System.out.println("Removed the channel " + channelToRemove);
 	}
 
+	private void renameChannel(ConcordServer server, String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Missing required channel name and new name.");
+			return;
+		}
+		String name = args[0].trim().toLowerCase();
+		String newName = args[1].trim().toLowerCase().replaceAll("\\s+", "-");
+		Optional<Channel> optionalChannel = server.getChannelManager().getChannelByName(name);
+		if (optionalChannel.isEmpty()) {
+			System.err.println("No channel with that name exists.");
+			return;
+		}
+		if (newName.isBlank()) {
+			System.err.println("Cannot rename channel to a blank name.");
+			return;
+		}
+		if (server.getChannelManager().getChannelByName(newName).isPresent()) {
+			System.err.println("Channel with that name already exists.");
+			return;
+		}
+		Channel channel = optionalChannel.get();
+		var update = server.getChannelManager().renameChannel(channel, newName);
+		for (var channelConfig : server.getConfig().getChannels()) {
+			if (channelConfig.getId().equals(channel.getId().toString())) {
+				channelConfig.setName(newName);
+			}
+		}
+		if (name.equals(server.getConfig().getDefaultChannel())) {
+			server.getConfig().setDefaultChannel(newName);
+		}
+		server.getConfig().save();
+		server.getClientManager().broadcast(update);
+		System.out.println("Renamed the channel " + name + " to " + channel.getAsTag() + ".");
+	}
+
 	private void listChannels(ConcordServer server) {
 		StringBuilder sb = new StringBuilder();
 		server.getChannelManager().getChannels().stream().sorted()
@@ -2,9 +2,12 @@ package nl.andrewl.concord_server.cli.command;
 
 import nl.andrewl.concord_server.ConcordServer;
 import nl.andrewl.concord_server.cli.ServerCliCommand;
+import nl.andrewl.concord_server.client.ClientThread;
 
 /**
- * This command shows a list of all clients that are currently connected to the server.
+ * This command shows a list of all clients that are currently connected to the
+ * server, together with the round-trip time of each client's connection, and
+ * how often each client was throttled for sending too much.
  */
 public class ListClientsCommand implements ServerCliCommand {
 	@Override
@@ -15,9 +18,25 @@ public class ListClientsCommand implements ServerCliCommand {
 		} else {
 			StringBuilder sb = new StringBuilder("Online Users:\n");
 			for (var userData : users) {
-				sb.append("\t").append(userData.name()).append(" (").append(userData.id()).append(")\n");
+				sb.append("\t").append(userData.name()).append(" (").append(userData.id()).append(")");
+				var client = server.getClientManager().getClientById(userData.id()).orElse(null);
+				if (client == null) {
+					sb.append(", connected to another node");
+				} else {
+					sb.append(", round-trip time ").append(formatRoundTripTime(client));
+					if (client.getThrottleCount() > 0) {
+						sb.append(", throttled ").append(client.getThrottleCount()).append(" times");
+					}
+				}
+				sb.append("\n");
 			}
 			System.out.print(sb);
 		}
 	}
+
+	private static String formatRoundTripTime(ClientThread client) {
+		long nanos = client.getRoundTripTimeNanos();
+		if (nanos < 0) return "not measured yet";
+		return String.format("%.1f ms", nanos / 1_000_000.0);
+	}
 }
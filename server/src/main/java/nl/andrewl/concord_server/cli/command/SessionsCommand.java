@@ -0,0 +1,53 @@
+package nl.andrewl.concord_server.cli.command;
+
+import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.cli.ServerCliCommand;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Command for managing users' session tokens.
+ */
+public class SessionsCommand implements ServerCliCommand {
+	@Override
+	public void handle(ConcordServer server, String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Missing required subcommand. Valid subcommands are: revoke, rotate-key");
+			return;
+		}
+		String subcommand = args[0];
+		args = Arrays.copyOfRange(args, 1, args.length);
+		switch (subcommand) {
+			case "revoke" -> revokeSessions(server, args);
+			case "rotate-key" -> rotateKey(server);
+			default -> System.err.println("Unknown subcommand.");
+		}
+	}
+
+	private void revokeSessions(ConcordServer server, String[] args) {
+		if (args.length != 1) {
+			System.err.println("Missing required user id.");
+			return;
+		}
+		UUID userId;
+		try {
+			userId = UUID.fromString(args[0].trim());
+		} catch (IllegalArgumentException e) {
+			System.err.println("Invalid user id.");
+			return;
+		}
+		server.getClientManager().getAuthService().revokeSessions(userId);
+		System.out.println("Revoked all sessions of user " + userId + ".");
+	}
+
+	private void rotateKey(ConcordServer server) {
+		var signer = server.getClientManager().getAuthService().getTokenSigner();
+		if (signer == null) {
+			System.err.println("This server does not use signed session tokens.");
+			return;
+		}
+		signer.rotateKey();
+		System.out.println("Session tokens are now signed with key version " + signer.getCurrentKeyVersion() + ".");
+	}
+}
@@ -0,0 +1,103 @@
+package nl.andrewl.concord_server.cli.command;
+
+import nl.andrewl.concord_server.AdmissionController;
+import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.cli.ServerCliCommand;
+import nl.andrewl.concord_server.client.OutboundQueue;
+
+import java.util.Map;
+
+/**
+ * This command shows some statistics about the server's internal components,
+ * which can be useful for diagnosing performance issues.
+ */
+public class StatsCommand implements ServerCliCommand {
+	@Override
+	public void handle(ConcordServer server, String[] args) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		var authService = server.getClientManager().getAuthService();
+		sb.append("Authentication:\n")
+				.append("\tThreads: ").append(authService.getThreadCount()).append("\n")
+				.append("\tQueue depth: ").append(authService.getQueueDepth()).append("\n")
+				.append("\tCompleted operations: ").append(authService.getCompletedOperations()).append("\n")
+				.append(String.format("\tLatency: avg %.1f ms, max %.1f ms\n", authService.getAverageLatencyMillis(), authService.getMaxLatencyMillis()));
+		var connectionMonitor = server.getConnectionMonitor();
+		sb.append("Connections:\n")
+				.append("\tMonitored: ").append(connectionMonitor.getConnectionCount()).append("\n")
+				.append("\tEvicted for being idle: ").append(connectionMonitor.getEvictions()).append("\n");
+		var usage = server.getUsage();
+		sb.append("Usage:\n")
+				.append("\tActive connections: ").append(usage.getActiveConnections()).append("\n")
+				.append("\tAccepted connections: ").append(usage.getAcceptedConnections()).append("\n")
+				.append("\tRejected connections: ").append(usage.getRejectedConnections()).append("\n")
+				.append("\tMessages received: ").append(usage.getMessagesReceived()).append("\n")
+				.append("\tMessages sent: ").append(usage.getMessagesSent()).append("\n")
+				.append(String.format("\tTime spent handling messages: %.1f ms\n", usage.getHandlerMillis()))
+				.append(String.format("\tClients throttled: %d times, for %.1f ms in total\n", usage.getThrottleEvents(), usage.getThrottledMillis()));
+		var watchdog = server.getEventManager().getWatchdog();
+		sb.append("Handlers (slow after ").append(server.getConfig().getHandlerSlowThresholdMillis()).append(" ms):\n");
+		watchdog.getStats().entrySet().stream()
+				.sorted(Map.Entry.comparingByKey())
+				.forEach(entry -> sb.append(String.format(
+						"\t%s: %d calls, %d slow, %d reported while running, max %.1f ms\n",
+						entry.getKey(),
+						entry.getValue().getCalls(),
+						entry.getValue().getSlowCalls(),
+						entry.getValue().getStuckReports(),
+						entry.getValue().getMaxMillis()
+				)));
+		if (args.length > 0 && args[0].equals("last-slow") && watchdog.getLastReport() != null) {
+			sb.append("Last slow handler report:\n").append(watchdog.getLastReport()).append("\n");
+		}
+		var admission = server.getAdmissionController();
+		sb.append(String.format(
+				"Admission:\n\tLevel: %s (pressure %.2f, mostly from %s)\n",
+				admission.getLevel(),
+				admission.getPressure(),
+				admission.getDominantSignal()
+		));
+		for (var work : AdmissionController.Work.values()) {
+			sb.append(String.format(
+					"\t%s: %d admitted, %d shed\n",
+					work.name().toLowerCase(),
+					admission.getAdmitted(work),
+					admission.getShed(work)
+			));
+		}
+		sb.append("Chat batching (at ").append(server.getConfig().getChatBatchThreshold()).append(" members):\n");
+		for (var channel : server.getChannelManager().getChannels()) {
+			var batcher = channel.getBatcher();
+			if (batcher.getBatchesSent() == 0) continue;
+			sb.append(String.format(
+					"\t%s: %d chats in %d batches\n",
+					channel.getAsTag(),
+					batcher.getChatsBatched(),
+					batcher.getBatchesSent()
+			));
+		}
+		var privateChannels = server.getChannelManager().getPrivateChannelCache();
+		sb.append("Private channels:\n")
+				.append("\tLoaded: ").append(privateChannels.size()).append(" of ").append(server.getConfig().getPrivateChannelCacheSize()).append("\n")
+				.append("\tHits: ").append(privateChannels.getHits()).append("\n")
+				.append("\tMisses: ").append(privateChannels.getMisses()).append("\n")
+				.append("\tUnloaded: ").append(privateChannels.getEvictions()).append("\n");
+		var logBuffer = server.getLogger().getBuffer();
+		sb.append("Logging:\n")
+				.append("\tWritten: ").append(logBuffer.getWritten()).append("\n")
+				.append("\tPending: ").append(logBuffer.getPending()).append(" of ").append(logBuffer.getCapacity()).append("\n")
+				.append("\tDropped: ").append(logBuffer.getDropped()).append("\n");
+		sb.append("Outbound:\n");
+		for (var lane : OutboundQueue.Lane.values()) {
+			var laneStats = server.getOutboundStats().get(lane);
+			sb.append(String.format(
+					"\t%s: %d frames, %d bytes, wait avg %.2f ms, max %.2f ms\n",
+					lane.name().toLowerCase(),
+					laneStats.getFrames(),
+					laneStats.getBytes(),
+					laneStats.getAverageWaitMillis(),
+					laneStats.getMaxWaitMillis()
+			));
+		}
+		System.out.print(sb);
+	}
+}
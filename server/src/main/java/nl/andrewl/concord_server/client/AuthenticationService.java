@@ -6,6 +6,7 @@ import nl.andrewl.concord_core.msg.types.client_setup.ClientRegistration;
 import nl.andrewl.concord_core.msg.types.client_setup.ClientSessionResume;
 import nl.andrewl.concord_server.ConcordServer;
 import nl.andrewl.concord_server.util.CollectionUtils;
+import nl.andrewl.concord_server.util.ExpiringCache;
 import nl.andrewl.concord_server.util.StringUtils;
 import org.dizitart.no2.Document;
 import org.dizitart.no2.IndexType;
@@ -14,20 +15,85 @@ import org.dizitart.no2.filters.Filters;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /**
  * This authentication service provides support for managing the client's
  * authentication status, such as registering new clients, generating tokens,
  * and logging in.
+ * <p>
+ *     Password hashing and verification is expensive, so it is done on a
+ *     dedicated pool of auth threads whose size is a configurable share of the
+ *     available processors. Operations which need it return a future that is
+ *     completed once the work is done.
+ * </p>
+ * <p>
+ *     Session tokens and user records are cached in memory so that resuming a
+ *     session usually doesn't need to touch the database, and new session
+ *     tokens are written to the database in batches, shortly after they're
+ *     generated.
+ * </p>
+ * <p>
+ *     Alternatively, if the server is configured to use signed session tokens,
+ *     tokens are never stored at all, and are instead verified in memory by a
+ *     {@link SessionTokenSigner}.
+ * </p>
  */
 public class AuthenticationService {
+	/**
+	 * The amount of time that a user's record is cached for.
+	 */
+	private static final long USER_CACHE_TTL = TimeUnit.MINUTES.toMillis(10);
+
+	/**
+	 * The amount of time that a session token is valid for.
+	 */
+	private static final long SESSION_TOKEN_TTL = TimeUnit.DAYS.toMillis(7);
+
 	private final NitriteCollection userCollection;
 	private final NitriteCollection sessionTokenCollection;
 	private final ConcordServer server;
 
+	/**
+	 * Cache which maps session tokens to the id of the user they belong to.
+	 */
+	private final ExpiringCache<String, UUID> sessionTokenCache;
+
+	/**
+	 * Cache which maps user ids to their user record.
+	 */
+	private final ExpiringCache<UUID, Document> userCache;
+
+	/**
+	 * Session token documents which have been generated, but not yet written
+	 * to the database.
+	 */
+	private final Queue<Document> pendingSessionTokens = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The signer that's used to create and verify session tokens, if the server
+	 * is configured to use signed session tokens. Otherwise, this is null.
+	 */
+	private final SessionTokenSigner tokenSigner;
+
+	/**
+	 * The executor on which all password hashing and verification is done.
+	 * This is shared by all servers on the same runtime.
+	 */
+	private final ThreadPoolExecutor authExecutor;
+
+	/**
+	 * Statistics about the latency of auth operations, measured from the time
+	 * that they're submitted until they're complete.
+	 */
+	private final LongAdder completedOperations = new LongAdder();
+	private final LongAdder totalLatencyNanos = new LongAdder();
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+
 	public AuthenticationService(ConcordServer server, NitriteCollection userCollection) {
 		this.server = server;
 		this.userCollection = userCollection;
@@ -37,76 +103,243 @@ public class AuthenticationService {
 				"userId", IndexType.NonUnique,
 				"expiresAt", IndexType.NonUnique
 		));
+		this.sessionTokenCache = new ExpiringCache<>(server.getConfig().getSessionCacheSize());
+		this.userCache = new ExpiringCache<>(server.getConfig().getSessionCacheSize());
+		if (server.getConfig().isSignedSessionTokens()) {
+			this.tokenSigner = new SessionTokenSigner(server.getDb());
+		} else {
+			this.tokenSigner = null;
+			server.getScheduledExecutorService().scheduleWithFixedDelay(this::flushSessionTokens, 1, 1, TimeUnit.SECONDS);
+		}
+		this.authExecutor = server.getRuntime().getAuthExecutor();
 	}
 
-	public ClientConnectionData registerNewClient(ClientRegistration registration) {
-		UUID id = this.server.getIdProvider().newId();
-		String sessionToken = this.generateSessionToken(id);
-		String passwordHash = BCrypt.withDefaults().hashToString(12, registration.password().toCharArray());
-		Document doc = new Document(Map.of(
-				"id", id,
-				"username", registration.username(),
-				"passwordHash", passwordHash,
-				"name", registration.name(),
-				"description", registration.description(),
-				"createdAt", System.currentTimeMillis(),
-				"pending", false
-		));
-		this.userCollection.insert(doc);
-		return new ClientConnectionData(id, registration.username(), sessionToken, true);
+	public CompletableFuture<ClientConnectionData> registerNewClient(ClientRegistration registration) {
+		return this.submit(() -> {
+			UUID id = this.server.getIdProvider().newId();
+			String sessionToken = this.generateSessionToken(id);
+			String passwordHash = BCrypt.withDefaults().hashToString(12, registration.password().toCharArray());
+			Document doc = new Document(Map.of(
+					"id", id,
+					"username", registration.username(),
+					"passwordHash", passwordHash,
+					"name", registration.name(),
+					"description", registration.description(),
+					"createdAt", System.currentTimeMillis(),
+					"pending", false
+			));
+			this.userCollection.insert(doc);
+			return new ClientConnectionData(id, registration.username(), sessionToken, true);
+		});
 	}
 
-	public UUID registerPendingClient(ClientRegistration registration) {
-		UUID id = this.server.getIdProvider().newId();
-		String passwordHash = BCrypt.withDefaults().hashToString(12, registration.password().toCharArray());
-		Document doc = new Document(Map.of(
-				"id", id,
-				"username", registration.username(),
-				"passwordHash", passwordHash,
-				"name", registration.name(),
-				"description", registration.description(),
-				"createdAt", System.currentTimeMillis(),
-				"pending", true
-		));
-		this.userCollection.insert(doc);
-		return id;
+	public CompletableFuture<UUID> registerPendingClient(ClientRegistration registration) {
+		return this.submit(() -> {
+			UUID id = this.server.getIdProvider().newId();
+			String passwordHash = BCrypt.withDefaults().hashToString(12, registration.password().toCharArray());
+			Document doc = new Document(Map.of(
+					"id", id,
+					"username", registration.username(),
+					"passwordHash", passwordHash,
+					"name", registration.name(),
+					"description", registration.description(),
+					"createdAt", System.currentTimeMillis(),
+					"pending", true
+			));
+			this.userCollection.insert(doc);
+			return id;
+		});
 	}
 
-	public Document findAndAuthenticateUser(ClientLogin login) {
+	/**
+	 * Finds a user with the given login's username, and verifies their password.
+	 * @param login The login credentials.
+	 * @return A future that completes with the user's document, or null if the
+	 * credentials are not valid.
+	 */
+	public CompletableFuture<Document> findAndAuthenticateUser(ClientLogin login) {
 		Document userDoc = this.userCollection.find(Filters.eq("username", login.username())).firstOrDefault();
-		if (userDoc != null) {
+		if (userDoc == null) return CompletableFuture.completedFuture(null);
+		return this.submit(() -> {
 			byte[] passwordHash = userDoc.get("passwordHash", String.class).getBytes(StandardCharsets.UTF_8);
 			if (BCrypt.verifyer().verify(login.password().getBytes(StandardCharsets.UTF_8), passwordHash).verified) {
+				this.userCache.put(userDoc.get("id", UUID.class), userDoc, System.currentTimeMillis() + USER_CACHE_TTL);
 				return userDoc;
 			}
-		}
-		return null;
+			return null;
+		});
 	}
 
 	public Document findAndAuthenticateUser(ClientSessionResume sessionResume) {
-		Document tokenDoc = this.sessionTokenCollection.find(Filters.and(
-				Filters.eq("sessionToken", sessionResume.sessionToken()),
-				Filters.gt("expiresAt", Instant.now().toEpochMilli())
-		)).firstOrDefault();
-		if (tokenDoc == null) return null;
-		UUID userId = tokenDoc.get("userId", UUID.class);
-		return this.userCollection.find(Filters.eq("id", userId)).firstOrDefault();
+		if (this.tokenSigner != null) {
+			UUID userId = this.tokenSigner.verify(sessionResume.sessionToken());
+			if (userId == null) return null;
+			return this.findUserById(userId);
+		}
+		UUID userId = this.sessionTokenCache.get(sessionResume.sessionToken());
+		if (userId == null) {
+			Document tokenDoc = this.sessionTokenCollection.find(Filters.and(
+					Filters.eq("sessionToken", sessionResume.sessionToken()),
+					Filters.gt("expiresAt", Instant.now().toEpochMilli())
+			)).firstOrDefault();
+			if (tokenDoc == null) return null;
+			userId = tokenDoc.get("userId", UUID.class);
+			this.sessionTokenCache.put(sessionResume.sessionToken(), userId, tokenDoc.get("expiresAt", Long.class));
+		}
+		return this.findUserById(userId);
 	}
 
+	/**
+	 * Finds a user's record by their id, using the cache if possible.
+	 * @param userId The id of the user.
+	 * @return The user's document, or null if no such user exists.
+	 */
+	private Document findUserById(UUID userId) {
+		Document userDoc = this.userCache.get(userId);
+		if (userDoc == null) {
+			userDoc = this.userCollection.find(Filters.eq("id", userId)).firstOrDefault();
+			if (userDoc != null) {
+				this.userCache.put(userId, userDoc, System.currentTimeMillis() + USER_CACHE_TTL);
+			}
+		}
+		return userDoc;
+	}
+
+	/**
+	 * Removes a user's record from the cache. This should be called whenever
+	 * a user's record is updated or removed.
+	 * @param userId The id of the user.
+	 */
+	public void invalidateUser(UUID userId) {
+		this.userCache.remove(userId);
+	}
+
+	/**
+	 * Generates a new session token for a user. The token can be used
+	 * immediately, but it is only written to the database on the next call to
+	 * {@link AuthenticationService#flushSessionTokens()}. If signed session
+	 * tokens are used, nothing is written at all.
+	 * @param userId The id of the user to generate a token for.
+	 * @return The session token.
+	 */
 	public String generateSessionToken(UUID userId) {
+		long expiresAt = System.currentTimeMillis() + SESSION_TOKEN_TTL;
+		if (this.tokenSigner != null) {
+			return this.tokenSigner.sign(userId, expiresAt);
+		}
 		String sessionToken = StringUtils.random(128);
-		long expiresAt = Instant.now().plus(7, ChronoUnit.DAYS).toEpochMilli();
 		Document doc = new Document(Map.of(
 				"sessionToken", sessionToken,
 				"userId", userId,
 				"expiresAt", expiresAt
 		));
-		this.sessionTokenCollection.insert(doc);
+		this.sessionTokenCache.put(sessionToken, userId, expiresAt);
+		this.pendingSessionTokens.add(doc);
 		return sessionToken;
 	}
 
+	/**
+	 * Writes any newly-generated session tokens to the database, in a single
+	 * batch.
+	 */
+	public void flushSessionTokens() {
+		List<Document> docs = new ArrayList<>();
+		Document doc;
+		while ((doc = this.pendingSessionTokens.poll()) != null) {
+			docs.add(doc);
+		}
+		if (!docs.isEmpty()) {
+			this.sessionTokenCollection.insert(docs.toArray(new Document[0]));
+		}
+	}
+
 	public void removeExpiredSessionTokens() {
 		long now = System.currentTimeMillis();
+		if (this.tokenSigner != null) {
+			this.tokenSigner.removeRevocationsBefore(now - SESSION_TOKEN_TTL);
+			return;
+		}
 		this.sessionTokenCollection.remove(Filters.lt("expiresAt", now));
+		this.sessionTokenCache.removeExpired();
+	}
+
+	/**
+	 * Revokes all sessions of a user, so that they must log in with their
+	 * credentials again the next time they connect.
+	 * @param userId The id of the user whose sessions to revoke.
+	 */
+	public void revokeSessions(UUID userId) {
+		if (this.tokenSigner != null) {
+			this.tokenSigner.revoke(userId);
+			return;
+		}
+		this.flushSessionTokens();
+		this.sessionTokenCollection.remove(Filters.eq("userId", userId));
+		this.sessionTokenCache.removeIf(userId::equals);
+	}
+
+	/**
+	 * @return The signer that's used for signed session tokens, or null if the
+	 * server uses stored session tokens.
+	 */
+	public SessionTokenSigner getTokenSigner() {
+		return this.tokenSigner;
+	}
+
+	/**
+	 * @return The number of auth operations that are waiting for a free auth
+	 * thread.
+	 */
+	public int getQueueDepth() {
+		return this.authExecutor.getQueue().size();
+	}
+
+	/**
+	 * @return The number of auth threads.
+	 */
+	public int getThreadCount() {
+		return this.authExecutor.getMaximumPoolSize();
+	}
+
+	/**
+	 * @return The number of auth operations that have completed.
+	 */
+	public long getCompletedOperations() {
+		return this.completedOperations.sum();
+	}
+
+	/**
+	 * @return The average time, in milliseconds, between submitting an auth
+	 * operation and its completion.
+	 */
+	public double getAverageLatencyMillis() {
+		long count = this.completedOperations.sum();
+		if (count == 0) return 0;
+		return this.totalLatencyNanos.sum() / (count * 1_000_000.0);
+	}
+
+	/**
+	 * @return The longest time, in milliseconds, between submitting an auth
+	 * operation and its completion.
+	 */
+	public double getMaxLatencyMillis() {
+		return this.maxLatencyNanos.get() / 1_000_000.0;
+	}
+
+	/**
+	 * Submits an auth operation to the auth executor, and records its latency
+	 * once it completes.
+	 * @param task The task to run.
+	 * @param <T> The type of result.
+	 * @return A future that completes with the task's result.
+	 */
+	private <T> CompletableFuture<T> submit(Supplier<T> task) {
+		final long submittedAt = System.nanoTime();
+		return CompletableFuture.supplyAsync(task, this.authExecutor).whenComplete((result, throwable) -> {
+			long latency = System.nanoTime() - submittedAt;
+			this.completedOperations.increment();
+			this.totalLatencyNanos.add(latency);
+			this.maxLatencyNanos.accumulateAndGet(latency, Math::max);
+		});
 	}
 }
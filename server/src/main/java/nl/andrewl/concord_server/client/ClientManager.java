@@ -1,11 +1,15 @@
 package nl.andrewl.concord_server.client;
 
 import nl.andrewl.concord_core.msg.Message;
-import nl.andrewl.concord_core.msg.types.ServerUsers;
 import nl.andrewl.concord_core.msg.types.UserData;
+import nl.andrewl.concord_core.msg.types.channel.ChannelCounts;
 import nl.andrewl.concord_core.msg.types.client_setup.*;
+import nl.andrewl.concord_server.AdmissionController;
 import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.channel.Channel;
+import nl.andrewl.concord_server.logging.ServerLogger;
 import nl.andrewl.concord_server.util.CollectionUtils;
+import nl.andrewl.concord_server.util.UUIDMap;
 import org.dizitart.no2.Document;
 import org.dizitart.no2.IndexType;
 import org.dizitart.no2.NitriteCollection;
@@ -14,8 +18,12 @@ import org.dizitart.no2.filters.Filters;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
@@ -27,16 +35,45 @@ public class ClientManager {
 	 * A reference to the server that this client manager is for.
 	 */
 	private final ConcordServer server;
+	private final ServerLogger log;
 
 	/**
 	 * The set of connected clients, mapped by their id.
 	 */
-	private final Map<UUID, ClientThread> clients;
+	private final UUIDMap<ClientThread> clients;
 
 	/**
 	 * The set of connected pending clients, mapped by their id.
 	 */
-	private final Map<UUID, ClientThread> pendingClients;
+	private final UUIDMap<ClientThread> pendingClients;
+
+	/**
+	 * The lists of clients connected to other nodes of the cluster, mapped by
+	 * node id. This is empty if the server is not part of a cluster.
+	 */
+	private final Map<String, List<UserData>> remoteClients;
+
+	/**
+	 * The sorted index of all online users, including those connected to
+	 * other nodes of the cluster.
+	 */
+	private final PresenceIndex presence = new PresenceIndex(false);
+
+	/**
+	 * The channels whose members have changed since the last announcement.
+	 */
+	private final Set<Channel> changedChannels = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Whether an announcement of the latest presence changes is scheduled.
+	 */
+	private final AtomicBoolean presenceUpdateScheduled = new AtomicBoolean();
+
+	/**
+	 * Whether the set of clients connected to this node has changed since the
+	 * last announcement, so that the other nodes of the cluster should be told.
+	 */
+	private volatile boolean localPresenceChanged;
 
 	/**
 	 * The nitrite collection containing user data.
@@ -48,14 +85,22 @@ public class ClientManager {
 	 */
 	private final AuthenticationService authService;
 
+	/**
+	 * Set once the server starts shutting down, after which clients that log
+	 * out are removed without notifying anyone, since everyone is leaving.
+	 */
+	private volatile boolean draining;
+
 	/**
 	 * Constructs a new client manager for the given server.
 	 * @param server The server that the client manager is for.
 	 */
 	public ClientManager(ConcordServer server) {
 		this.server = server;
-		this.clients = new ConcurrentHashMap<>();
-		this.pendingClients = new ConcurrentHashMap<>();
+		this.log = server.getLogger().named(getClass());
+		this.clients = new UUIDMap<>();
+		this.pendingClients = new UUIDMap<>();
+		this.remoteClients = new ConcurrentHashMap<>();
 		this.userCollection = server.getDb().getCollection("users");
 		CollectionUtils.ensureIndexes(this.userCollection, Map.of(
 				"id", IndexType.Unique,
@@ -77,22 +122,35 @@ public class ClientManager {
 	 * the client's registration is pending approval. The client can choose to
 	 * remain connected and wait for approval, or disconnect and try logging in
 	 * later.
+	 * <p>
+	 *     The password hashing is done asynchronously by the {@link AuthenticationService},
+	 *     so this method returns immediately with a future that completes once
+	 *     the client has been registered.
+	 * </p>
 	 *
 	 * @param registration The client's registration information.
 	 * @param clientThread The client thread.
-	 * @throws InvalidIdentificationException If the user's registration info is
-	 * not valid.
+	 * @return A future that completes when the registration is done, or which
+	 * completes exceptionally with an {@link InvalidIdentificationException} if
+	 * the user's registration info is not valid.
 	 */
-	public void handleRegistration(ClientRegistration registration, ClientThread clientThread) throws InvalidIdentificationException {
+	public CompletableFuture<Void> handleRegistration(ClientRegistration registration, ClientThread clientThread) {
 		Document userDoc = this.userCollection.find(Filters.eq("username", registration.username())).firstOrDefault();
-		if (userDoc != null) throw new InvalidIdentificationException("Username is taken.");
+		if (userDoc != null) return CompletableFuture.failedFuture(new InvalidIdentificationException("Username is taken."));
+		long retryAfter = this.server.getAdmissionController().admit(AdmissionController.Work.REGISTRATION);
+		if (retryAfter > 0) {
+			return CompletableFuture.failedFuture(new InvalidIdentificationException("The server is too busy to accept new registrations right now.", retryAfter));
+		}
 		if (this.server.getConfig().isAcceptAllNewClients()) {
-			var clientData = this.authService.registerNewClient(registration);
-			clientThread.sendToClient(new RegistrationStatus(RegistrationStatus.Type.ACCEPTED, null));
-			this.initializeClientConnection(clientData, clientThread);
+			return this.authService.registerNewClient(registration).thenAcceptAsync(clientData -> {
+				clientThread.sendToClient(new RegistrationStatus(RegistrationStatus.Type.ACCEPTED, null));
+				this.initializeClientConnection(clientData, clientThread);
+			}, this.server.getExecutorService());
 		} else {
-			var clientId = this.authService.registerPendingClient(registration);
-			this.initializePendingClientConnection(clientId, registration.username(), clientThread);
+			return this.authService.registerPendingClient(registration).thenAcceptAsync(
+					clientId -> this.initializePendingClientConnection(clientId, registration.username(), clientThread),
+					this.server.getExecutorService()
+			);
 		}
 	}
 
@@ -107,24 +165,31 @@ public class ClientManager {
 	 *     <li>For non-pending (normal) users, they will be logged into the
 	 *     server and sent a {@link ServerWelcome} message.</li>
 	 * </ul>
+	 * <p>
+	 *     The user's password is verified asynchronously by the {@link AuthenticationService},
+	 *     so this method returns immediately with a future that completes once
+	 *     the client has been logged in.
+	 * </p>
 	 *
 	 * @param login The client's login credentials.
 	 * @param clientThread The client thread managing the connection.
-	 * @throws InvalidIdentificationException If the client's credentials are
-	 * incorrect.
+	 * @return A future that completes when the login is done, or which completes
+	 * exceptionally with an {@link InvalidIdentificationException} if the
+	 * client's credentials are incorrect.
 	 */
-	public void handleLogin(ClientLogin login, ClientThread clientThread) throws InvalidIdentificationException {
-		Document userDoc = this.authService.findAndAuthenticateUser(login);
-		if (userDoc == null) throw new InvalidIdentificationException("Username or password is incorrect.");
-		UUID userId = userDoc.get("id", UUID.class);
-		String username = userDoc.get("username", String.class);
-		boolean pending = userDoc.get("pending", Boolean.class);
-		if (pending) {
-			this.initializePendingClientConnection(userId, username, clientThread);
-		} else {
-			String sessionToken = this.authService.generateSessionToken(userId);
-			this.initializeClientConnection(new ClientConnectionData(userId, username, sessionToken, false), clientThread);
-		}
+	public CompletableFuture<Void> handleLogin(ClientLogin login, ClientThread clientThread) {
+		return this.authService.findAndAuthenticateUser(login).thenAcceptAsync(userDoc -> {
+			if (userDoc == null) throw new CompletionException(new InvalidIdentificationException("Username or password is incorrect."));
+			UUID userId = userDoc.get("id", UUID.class);
+			String username = userDoc.get("username", String.class);
+			boolean pending = userDoc.get("pending", Boolean.class);
+			if (pending) {
+				this.initializePendingClientConnection(userId, username, clientThread);
+			} else {
+				String sessionToken = this.authService.generateSessionToken(userId);
+				this.initializeClientConnection(new ClientConnectionData(userId, username, sessionToken, false), clientThread);
+			}
+		}, this.server.getExecutorService());
 	}
 
 	/**
@@ -160,6 +225,7 @@ public class ClientManager {
 			if (accepted) {
 				userDoc.put("pending", false);
 				this.userCollection.update(userDoc);
+				this.authService.invalidateUser(userId);
 				// If the pending user is still connected, upgrade them to a normal connected client.
 				var clientThread = this.pendingClients.remove(userId);
 				if (clientThread != null) {
@@ -170,6 +236,7 @@ public class ClientManager {
 				}
 			} else {
 				this.userCollection.remove(userDoc);
+				this.authService.invalidateUser(userId);
 				var clientThread = this.pendingClients.remove(userId);
 				if (clientThread != null) {
 					clientThread.sendToClient(new RegistrationStatus(RegistrationStatus.Type.REJECTED, reason));
@@ -188,11 +255,22 @@ public class ClientManager {
 		clientThread.setClientId(clientData.id());
 		clientThread.setClientNickname(clientData.username());
 		var defaultChannel = this.server.getChannelManager().getDefaultChannel().orElseThrow();
-		clientThread.sendToClient(new ServerWelcome(clientData.id(), clientData.sessionToken(), defaultChannel.getId(), defaultChannel.getName(), this.server.getMetaData()));
+		clientThread.sendToClient(new ServerWelcome(
+				clientData.id(),
+				clientData.sessionToken(),
+				defaultChannel.getId(),
+				defaultChannel.getName(),
+				this.server.getConfig().getName(),
+				this.server.getChannelManager().getDirectory().getVersion()
+		));
 		this.clients.put(clientData.id(), clientThread); // We only add the client after sending the welcome, to make sure that we send the welcome packet first.
 		defaultChannel.addClient(clientThread);
 		clientThread.setCurrentChannel(defaultChannel);
-		this.broadcast(new ServerUsers(this.getConnectedClients().toArray(new UserData[0])));
+		this.presence.join(clientThread.toData());
+		// The new client gets the full lists once, and only updates after that.
+		this.server.getChannelManager().sendMembers(clientThread, defaultChannel);
+		clientThread.sendToClient(this.server.getChannelManager().getChannelCounts());
+		this.connectedClientsChanged();
 	}
 
 	/**
@@ -224,8 +302,157 @@ public class ClientManager {
 		if (client != null) {
 			client.getCurrentChannel().removeClient(client);
 			client.shutdown();
-			System.out.println("Client " + client + " has disconnected.");
-			this.broadcast(new ServerUsers(this.getConnectedClients().toArray(new UserData[0])));
+			this.presence.leave(clientId);
+			if (!this.draining) {
+				this.log.info("Client {} has disconnected.", client);
+				this.connectedClientsChanged();
+			}
+		}
+	}
+
+	/**
+	 * Disconnects every client, as part of shutting down the server. Each
+	 * identified client is sent the given notice, and then all connections are
+	 * flushed and closed in parallel. Connections which can't be flushed by the
+	 * deadline, because the client isn't reading, are closed right away.
+	 * Finally, this waits for the client threads to log out, so that none of
+	 * them are still using the database once this returns.
+	 * <p>
+	 *     Clients that log out from now on don't cause the list of users to be
+	 *     broadcast, which would otherwise make this quadratic in the number
+	 *     of clients.
+	 * </p>
+	 * @param notice The notice to send to all clients.
+	 * @param deadlineNanos The {@link System#nanoTime()} by which all clients
+	 *                      should be disconnected.
+	 * @return The number of connections that had to be closed without being
+	 * flushed.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public int disconnectAll(Message notice, long deadlineNanos) throws InterruptedException {
+		this.draining = true;
+		var connections = this.server.getConnectionMonitor().getConnections();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try {
+			this.server.getSerializer().writeMessage(notice, baos);
+		} catch (IOException e) {
+			this.log.error("Could not serialize {}.", notice.getClass().getSimpleName(), e);
+		}
+		byte[] data = baos.toByteArray();
+		Set<ClientThread> remaining = ConcurrentHashMap.newKeySet();
+		remaining.addAll(connections);
+		for (var client : connections) {
+			if (client.isIdentified() && data.length > 0) {
+				client.sendToClient(data);
+			}
+			try {
+				this.server.getExecutorService().execute(() -> {
+					client.flushAndShutdown();
+					remaining.remove(client);
+				});
+			} catch (RejectedExecutionException e) {
+				client.shutdown();
+				remaining.remove(client);
+			}
+		}
+		while (!remaining.isEmpty() && System.nanoTime() < deadlineNanos) {
+			Thread.sleep(5);
+		}
+		int forced = remaining.size();
+		remaining.forEach(ClientThread::shutdown);
+		while ((!this.clients.isEmpty() || !this.pendingClients.isEmpty()) && System.nanoTime() < deadlineNanos) {
+			Thread.sleep(5);
+		}
+		return forced;
+	}
+
+	/**
+	 * Updates the list of clients that are connected to another node of the
+	 * cluster.
+	 * @param nodeId The id of the other node.
+	 * @param users The list of clients connected to that node.
+	 */
+	public void setRemoteClients(String nodeId, List<UserData> users) {
+		var previous = this.remoteClients.put(nodeId, List.copyOf(users));
+		Set<UUID> currentIds = users.stream().map(UserData::id).collect(Collectors.toSet());
+		if (previous != null) {
+			for (var user : previous) {
+				if (!currentIds.contains(user.id()) && this.clients.get(user.id()) == null) {
+					this.presence.leave(user.id());
+				}
+			}
+		}
+		users.forEach(this.presence::join);
+	}
+
+	/**
+	 * Records that clients have entered or left a channel, so that the other
+	 * clients in the channel, and the counts of its members, are updated once
+	 * the presence coalescing window has passed.
+	 * @param channel The channel whose members changed.
+	 */
+	public void channelMembersChanged(Channel channel) {
+		if (this.draining) return;
+		this.changedChannels.add(channel);
+		this.schedulePresenceUpdate();
+	}
+
+	/**
+	 * Notifies any other nodes of the cluster that the set of clients
+	 * connected to this node has changed. This is done once the presence
+	 * coalescing window has passed, so that a burst of logins or logouts
+	 * results in a single update.
+	 */
+	private void connectedClientsChanged() {
+		this.localPresenceChanged = true;
+		this.schedulePresenceUpdate();
+	}
+
+	private void schedulePresenceUpdate() {
+		if (!this.presenceUpdateScheduled.compareAndSet(false, true)) return;
+		try {
+			this.server.getScheduledExecutorService().schedule(
+					this::sendPresenceUpdate,
+					this.server.getConfig().getPresenceCoalesceMillis(),
+					TimeUnit.MILLISECONDS
+			);
+		} catch (RejectedExecutionException e) {
+			// The server is shutting down, so there's no one left to tell.
+			this.presenceUpdateScheduled.set(false);
+		}
+	}
+
+	/**
+	 * Sends the changes to each channel's members since the last update to
+	 * the clients in that channel, and the new member counts of public
+	 * channels to every client. If the set of local clients changed, the other
+	 * nodes of the cluster are told too.
+	 */
+	private void sendPresenceUpdate() {
+		this.presenceUpdateScheduled.set(false);
+		List<ChannelCounts.ChannelCount> counts = new ArrayList<>();
+		for (var iterator = this.changedChannels.iterator(); iterator.hasNext();) {
+			var channel = iterator.next();
+			iterator.remove();
+			var update = channel.getMembers().takeUpdate(channel.getId());
+			if (update != null) {
+				try {
+					channel.sendMessage(update);
+				} catch (IOException e) {
+					this.log.error("Could not send presence update to #{}.", channel, e);
+				}
+			}
+			if (this.server.getChannelManager().getChannelById(channel.getId()).isPresent()) {
+				counts.add(new ChannelCounts.ChannelCount(channel.getId(), channel.getConnectedClients().size()));
+			}
+		}
+		if (!counts.isEmpty()) {
+			this.broadcast(new ChannelCounts(counts.toArray(new ChannelCounts.ChannelCount[0])));
+		}
+		var cluster = this.server.getClusterManager();
+		if (cluster != null && this.localPresenceChanged) {
+			this.localPresenceChanged = false;
+			cluster.publishPresence(this.getLocalClients());
 		}
 	}
 
@@ -238,22 +465,45 @@ public class ClientManager {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream(message.byteSize());
 		try {
 			this.server.getSerializer().writeMessage(message, baos);
-			byte[] data = baos.toByteArray();
-			for (var client : this.clients.values()) {
-				client.sendToClient(data);
-			}
+			this.broadcast(baos.toByteArray(), OutboundQueue.laneOf(message));
 		} catch (IOException e) {
-			e.printStackTrace();
+			this.log.error("Could not broadcast {}.", message.getClass().getSimpleName(), e);
+		}
+	}
+
+	/**
+	 * Sends an already serialized message to all connected clients.
+	 * @param data The serialized message.
+	 * @param lane The lane to send the message in.
+	 */
+	public void broadcast(byte[] data, OutboundQueue.Lane lane) {
+		for (var client : this.clients.values()) {
+			client.sendToClient(data, lane);
 		}
 	}
 
 	/**
-	 * @return The list of connected clients.
+	 * @return The service that's used to authenticate incoming connections.
+	 */
+	public AuthenticationService getAuthService() {
+		return this.authService;
+	}
+
+	/**
+	 * @return The list of connected clients, including those connected to
+	 * other nodes of the cluster.
 	 */
 	public List<UserData> getConnectedClients() {
-		return this.clients.values().stream()
-				.sorted(Comparator.comparing(ClientThread::getClientNickname))
-				.map(ClientThread::toData)
+		return this.presence.getUsers();
+	}
+
+	/**
+	 * @return The list of clients connected to this node, sorted by name.
+	 */
+	public List<UserData> getLocalClients() {
+		if (this.remoteClients.isEmpty()) return this.presence.getUsers();
+		return this.presence.getUsers().stream()
+				.filter(user -> this.clients.get(user.id()) != null)
 				.collect(Collectors.toList());
 	}
 
@@ -268,10 +518,10 @@ public class ClientManager {
 	}
 
 	/**
-	 * @return The set of ids of all connected clients.
+	 * @return A snapshot of the set of ids of all connected clients.
 	 */
 	public Set<UUID> getConnectedIds() {
-		return this.clients.keySet();
+		return this.clients.keys();
 	}
 
 	/**
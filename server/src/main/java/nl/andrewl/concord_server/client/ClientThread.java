@@ -9,25 +9,48 @@ import nl.andrewl.concord_core.msg.types.UserData;
 import nl.andrewl.concord_core.msg.types.client_setup.ClientLogin;
 import nl.andrewl.concord_core.msg.types.client_setup.ClientRegistration;
 import nl.andrewl.concord_core.msg.types.client_setup.ClientSessionResume;
+import nl.andrewl.concord_core.transport.Connection;
 import nl.andrewl.concord_server.ConcordServer;
 import nl.andrewl.concord_server.channel.Channel;
+import nl.andrewl.concord_server.logging.ServerLogger;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.Socket;
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This thread is responsible for handling the connection to a single client of
  * a server. The client thread acts as the server's representation of a client.
  */
 public class ClientThread extends Thread {
-	private final Socket socket;
+	private final Connection connection;
 	private InputStream in;
 	private OutputStream out;
 
 	private final ConcordServer server;
+	private final ServerLogger log;
+
+	/**
+	 * Limits how often the client may send each type of message.
+	 */
+	private final RateLimiter rateLimiter;
+
+	/**
+	 * The number of times that the client was made to wait because it sent
+	 * more than its budget allows.
+	 */
+	@Getter
+	private volatile long throttleCount;
+
+	/**
+	 * The queue of messages to write to the client. This is created once the
+	 * connection is encrypted.
+	 */
+	private volatile OutboundQueue outbound;
 
 	@Getter
 	@Setter
@@ -42,88 +65,166 @@ public class ClientThread extends Thread {
 
 	private volatile boolean running;
 
+	/**
+	 * Whether the client has identified itself, and is ready to receive normal
+	 * messages.
+	 */
+	@Getter
+	private volatile boolean identified;
+
+	/**
+	 * The time at which anything was last received from the client.
+	 */
+	@Getter
+	private volatile long lastActivity;
+
+	/**
+	 * The most recently measured round-trip time of the connection, in
+	 * nanoseconds, or -1 if it hasn't been measured yet.
+	 */
+	@Getter
+	@Setter
+	private volatile long roundTripTimeNanos = -1;
+
 	/**
 	 * Constructs a new client thread.
-	 * @param socket The socket to use to communicate with the client.
+	 * @param connection The connection to use to communicate with the client.
 	 * @param server The server to which this thread belongs.
-	 * @throws IOException If we cannot obtain the input and output streams from
-	 * the socket.
 	 */
-	public ClientThread(Socket socket, ConcordServer server) throws IOException {
-		this.socket = socket;
+	public ClientThread(Connection connection, ConcordServer server) {
+		this.connection = connection;
 		this.server = server;
-		this.in = socket.getInputStream();
-		this.out = socket.getOutputStream();
+		this.log = server.getLogger().named(getClass());
+		this.rateLimiter = new RateLimiter(server.getConfig().getRateLimits());
+		this.in = connection.getInputStream();
+		this.out = connection.getOutputStream();
+		this.lastActivity = System.currentTimeMillis();
 	}
 
 	/**
-	 * Sends the given message to the client. Note that this method is
-	 * synchronized, such that multiple messages cannot be sent simultaneously.
+	 * Sends the given message to the client, in the lane that's appropriate for
+	 * its type. See {@link OutboundQueue#laneOf(Message)}.
 	 * @param message The message to send.
 	 */
-	public synchronized void sendToClient(Message message) {
+	public void sendToClient(Message message) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		try {
-			this.server.getSerializer().writeMessage(message, this.out);
+			this.server.getSerializer().writeMessage(message, baos);
 		} catch (IOException e) {
-			e.printStackTrace();
+			this.log.error("Could not serialize {}.", message.getClass().getSimpleName(), e);
+			return;
 		}
+		this.sendToClient(baos.toByteArray(), OutboundQueue.laneOf(message));
 	}
 
 	/**
-	 * Sends the given bytes to the client. This is a shortcut for {@link ClientThread#sendToClient(Message)}
-	 * which can be used to optimize message sending in certain instances.
+	 * Sends the given bytes to the client, as an interactive message. This is a
+	 * shortcut for {@link ClientThread#sendToClient(Message)} which can be used
+	 * to optimize message sending in certain instances.
 	 * @param bytes The bytes to send.
 	 */
-	public synchronized void sendToClient(byte[] bytes) {
-		try {
-			this.out.write(bytes);
-			this.out.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
-			System.err.printf("Could not send to client %s(%s): %s", this.clientId, this.clientNickname, e.getMessage());
+	public void sendToClient(byte[] bytes) {
+		this.sendToClient(bytes, OutboundQueue.Lane.INTERACTIVE);
+	}
+
+	/**
+	 * Sends the given bytes to the client, in the given lane.
+	 * @param bytes The bytes to send.
+	 * @param lane The lane to send the bytes in.
+	 */
+	public void sendToClient(byte[] bytes, OutboundQueue.Lane lane) {
+		if (this.outbound == null) {
+			this.log.warning("Cannot send to client {} before the connection is encrypted.", this);
+			return;
 		}
+		this.outbound.send(bytes, lane);
+		this.server.getUsage().recordMessageSent();
 	}
 
 	/**
-	 * Shuts down this client thread, closing the underlying socket and setting
+	 * Shuts down this client thread, closing the underlying connection and setting
 	 * {@link ClientThread#running} to false so that the main thread loop will
 	 * exit shortly.
 	 */
 	public void shutdown() {
 		try {
-			this.socket.close();
+			this.connection.close();
 		} catch (IOException e) {
-			e.printStackTrace();
+			this.log.warning("Could not close connection to client {}.", this, e);
 		}
 		this.running = false;
 	}
 
+	/**
+	 * Writes any messages that are still waiting to be sent, and then shuts
+	 * down this client thread.
+	 */
+	public void flushAndShutdown() {
+		if (this.outbound != null) {
+			this.outbound.flush();
+		}
+		this.shutdown();
+	}
+
 	@Override
 	public void run() {
 		this.running = true;
+		this.server.getConnectionMonitor().register(this);
 		if (!identifyClient()) {
-			System.err.println("Could not identify the client; aborting connection.");
+			this.log.warning("Could not identify the client; aborting connection.");
 			this.running = false;
+		} else {
+			this.identified = true;
 		}
 		while (this.running) {
 			try {
 				var msg = this.server.getSerializer().readMessage(this.in);
+				this.lastActivity = System.currentTimeMillis();
+				this.throttle(msg);
+				long start = System.nanoTime();
 				this.server.getEventManager().handle(msg, this);
+				this.server.getUsage().recordMessageReceived(System.nanoTime() - start);
 			} catch (IOException e) {
 				this.running = false;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				this.running = false;
 			}
 		}
 
+		this.server.getConnectionMonitor().unregister(this);
 		if (this.clientId != null) {
 			this.server.getClientManager().handleLogOut(this.clientId);
 		}
+		if (this.outbound != null && !this.connection.isClosed()) {
+			this.outbound.flush();
+		}
 		try {
-			if (!this.socket.isClosed()) {
-				this.socket.close();
+			if (!this.connection.isClosed()) {
+				this.connection.close();
 			}
 		} catch (IOException e) {
-			e.printStackTrace();
+			this.log.warning("Could not close connection to client {}.", this, e);
 		}
+		this.server.getUsage().closeConnection();
+	}
+
+	/**
+	 * Waits until the client may send the given message, if it has used up its
+	 * budget for that type of message. While this thread waits, nothing more
+	 * is read from the connection, so a client that sends too much is slowed
+	 * down by the transport's own flow control, instead of piling up work on
+	 * the server.
+	 * @param msg The message that was received.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	private void throttle(Message msg) throws InterruptedException {
+		long waitNanos = this.rateLimiter.acquire(msg);
+		if (waitNanos <= 0) return;
+		this.throttleCount++;
+		this.server.getUsage().recordThrottle(waitNanos);
+		this.log.debug("Client {} is sending too many {} messages; waiting {} ms.", this, msg.getClass().getSimpleName(), TimeUnit.NANOSECONDS.toMillis(waitNanos));
+		TimeUnit.NANOSECONDS.sleep(waitNanos);
 	}
 
 	/**
@@ -135,30 +236,53 @@ public class ClientThread extends Thread {
 	 */
 	private boolean identifyClient() {
 		if (!establishEncryption()) {
-			System.err.println("Could not establish end-to-end encryption with the client.");
+			this.log.warning("Could not establish end-to-end encryption with the client.");
 			return false;
 		}
 		final var clientManager = this.server.getClientManager();
+		final var watchdog = this.server.getEventManager().getWatchdog();
 		int attempts = 0;
 		while (attempts < 5) {
 			try {
 				var msg = this.server.getSerializer().readMessage(this.in);
+				this.lastActivity = System.currentTimeMillis();
 				if (msg instanceof ClientRegistration cr) {
-					clientManager.handleRegistration(cr, this);
+					watchdog.begin("Registration", msg.getClass().getSimpleName(), null);
+					try {
+						clientManager.handleRegistration(cr, this).join();
+					} finally {
+						watchdog.end();
+					}
 					return true;
 				} else if (msg instanceof ClientLogin cl) {
-					clientManager.handleLogin(cl, this);
+					watchdog.begin("Login", msg.getClass().getSimpleName(), null);
+					try {
+						clientManager.handleLogin(cl, this).join();
+					} finally {
+						watchdog.end();
+					}
 					return true;
 				} else if (msg instanceof ClientSessionResume csr) {
-					clientManager.handleSessionResume(csr, this);
+					watchdog.begin("SessionResume", msg.getClass().getSimpleName(), null);
+					try {
+						clientManager.handleSessionResume(csr, this);
+					} finally {
+						watchdog.end();
+					}
 					return true;
 				} else {
 					this.sendToClient(Error.warning("Invalid identification message: " + msg.getClass().getSimpleName() + ", expected ClientRegistration, ClientLogin, or ClientSessionResume."));
 				}
 			} catch (InvalidIdentificationException e) {
-				this.sendToClient(Error.warning(e.getMessage()));
+				this.sendToClient(Error.retryLater(e.getMessage(), e.getRetryAfterMillis()));
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof InvalidIdentificationException iie) {
+					this.sendToClient(Error.retryLater(iie.getMessage(), iie.getRetryAfterMillis()));
+				} else {
+					this.log.error("Could not identify client.", e);
+				}
 			} catch (IOException e) {
-				e.printStackTrace();
+				this.log.warning("Could not read identification from client: {}", e.getMessage());
 			}
 			attempts++;
 		}
@@ -178,9 +302,21 @@ public class ClientThread extends Thread {
 			var streams = Encryption.upgrade(this.in, this.out, server.getSerializer());
 			this.in = streams.first();
 			this.out = streams.second();
+			this.outbound = new OutboundQueue(
+					this.out,
+					this.server.getSerializer(),
+					this.server.getExecutorService(),
+					this.server.getOutboundStats(),
+					this.log,
+					this.server.getConfig().getMaxOutboundQueueBytes(),
+					() -> {
+						this.log.warning("Disconnecting client {} because it isn't reading its messages fast enough.", this);
+						this.shutdown();
+					}
+			);
 			return true;
 		} catch (Exception e) {
-			e.printStackTrace();
+			this.log.warning("Could not establish encryption: {}", e.getMessage());
 			return false;
 		}
 	}
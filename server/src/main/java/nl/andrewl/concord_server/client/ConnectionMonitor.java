@@ -0,0 +1,129 @@
+package nl.andrewl.concord_server.client;
+
+import nl.andrewl.concord_core.msg.types.Ping;
+import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.logging.ServerLogger;
+import nl.andrewl.concord_server.util.HashedTimingWheel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The connection monitor keeps track of whether each client's connection is
+ * still alive. It periodically sends a {@link Ping} to every identified client,
+ * and tracks an idle deadline for every connection in a {@link HashedTimingWheel}.
+ * Any connection from which nothing has been received before its deadline is
+ * assumed to be dead, and is shut down.
+ * <p>
+ *     Rather than rescheduling a connection's deadline each time a message is
+ *     received, each client thread simply records the time of its latest
+ *     activity. When a deadline expires, it's extended if there has been any
+ *     activity in the meantime.
+ * </p>
+ */
+public class ConnectionMonitor {
+	private final ConcordServer server;
+	private final ServerLogger log;
+	private final long idleTimeoutMillis;
+	private final HashedTimingWheel<ClientThread> idleWheel;
+
+	/**
+	 * The set of all connections that are being monitored.
+	 */
+	private final Set<ClientThread> connections = ConcurrentHashMap.newKeySet();
+
+	private final LongAdder evictions = new LongAdder();
+
+	public ConnectionMonitor(ConcordServer server) {
+		this.server = server;
+		this.log = server.getLogger().named(getClass());
+		this.idleTimeoutMillis = TimeUnit.SECONDS.toMillis(server.getConfig().getIdleTimeoutSeconds());
+		this.idleWheel = new HashedTimingWheel<>(500, 512, this::deadlineExpired);
+		var executor = server.getScheduledExecutorService();
+		executor.scheduleAtFixedRate(this.idleWheel::tick, this.idleWheel.getTickMillis(), this.idleWheel.getTickMillis(), TimeUnit.MILLISECONDS);
+		long heartbeatInterval = server.getConfig().getHeartbeatIntervalSeconds();
+		executor.scheduleAtFixedRate(this::sendPings, heartbeatInterval, heartbeatInterval, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Starts monitoring a connection.
+	 * @param clientThread The client thread managing the connection.
+	 */
+	public void register(ClientThread clientThread) {
+		this.connections.add(clientThread);
+		this.idleWheel.schedule(clientThread, this.idleTimeoutMillis);
+	}
+
+	/**
+	 * Stops monitoring a connection.
+	 * @param clientThread The client thread managing the connection.
+	 */
+	public void unregister(ClientThread clientThread) {
+		this.connections.remove(clientThread);
+	}
+
+	/**
+	 * Called by the idle wheel when a connection's deadline expires. If there
+	 * has been any activity on the connection since, the deadline is extended,
+	 * and otherwise, the connection is shut down.
+	 * @param clientThread The client thread whose deadline expired.
+	 */
+	private void deadlineExpired(ClientThread clientThread) {
+		if (!this.connections.contains(clientThread)) return;
+		long idleMillis = System.currentTimeMillis() - clientThread.getLastActivity();
+		if (idleMillis < this.idleTimeoutMillis) {
+			this.idleWheel.schedule(clientThread, this.idleTimeoutMillis - idleMillis);
+		} else {
+			this.log.info("Client {} has been idle for {} ms. Disconnecting.", clientThread, idleMillis);
+			this.evictions.increment();
+			this.connections.remove(clientThread);
+			clientThread.shutdown();
+		}
+	}
+
+	/**
+	 * Sends a ping to every identified client. The ping is serialized once, and
+	 * the same bytes are sent to each client.
+	 */
+	private void sendPings() {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try {
+			this.server.getSerializer().writeMessage(new Ping(System.nanoTime()), baos);
+		} catch (IOException e) {
+			this.log.error("Could not serialize ping.", e);
+			return;
+		}
+		byte[] data = baos.toByteArray();
+		for (var clientThread : this.connections) {
+			if (clientThread.isIdentified()) {
+				clientThread.sendToClient(data);
+			}
+		}
+	}
+
+	/**
+	 * @return A snapshot of the connections that are being monitored.
+	 */
+	public Set<ClientThread> getConnections() {
+		return Set.copyOf(this.connections);
+	}
+
+	/**
+	 * @return The number of connections that are being monitored.
+	 */
+	public int getConnectionCount() {
+		return this.connections.size();
+	}
+
+	/**
+	 * @return The number of connections that have been shut down because they
+	 * were idle for too long.
+	 */
+	public long getEvictions() {
+		return this.evictions.sum();
+	}
+}
@@ -4,7 +4,22 @@ package nl.andrewl.concord_server.client;
  * Exception that's thrown when a client's identification information is invalid.
  */
 public class InvalidIdentificationException extends Exception {
+	/**
+	 * If greater than 0, the identification was refused because the server is
+	 * too busy, and the client may try again after this many milliseconds.
+	 */
+	private final long retryAfterMillis;
+
 	public InvalidIdentificationException(String message) {
+		this(message, 0);
+	}
+
+	public InvalidIdentificationException(String message, long retryAfterMillis) {
 		super(message);
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	public long getRetryAfterMillis() {
+		return this.retryAfterMillis;
 	}
 }
@@ -0,0 +1,299 @@
+package nl.andrewl.concord_server.client;
+
+import nl.andrewl.concord_core.msg.FragmentAssembler;
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_core.msg.Serializer;
+import nl.andrewl.concord_core.msg.types.MessageFragment;
+import nl.andrewl.concord_core.msg.types.channel.ChannelMembers;
+import nl.andrewl.concord_core.msg.types.chat.ChatHistoryResponse;
+import nl.andrewl.concord_server.logging.ServerLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The queue of messages that are waiting to be written to a single client.
+ * Messages are sent in one of two lanes:
+ * <ul>
+ *     <li>Interactive messages, like chats and pings, are written right away
+ *     by the thread that sends them, unless another thread is currently
+ *     writing, in which case that thread writes them as soon as it can.</li>
+ *     <li>Bulk messages, like chat history, are split into fragments, which
+ *     are written one at a time by a task on the server's executor. Between
+ *     each fragment, any waiting interactive messages are written first.</li>
+ * </ul>
+ * This means that an interactive message never waits for more than a single
+ * fragment of a large message.
+ * <p>
+ *     Each bulk message is queued as a whole, and is only split into
+ *     fragments by the thread that writes it, which finishes writing one
+ *     message before it starts the next. So the fragments of messages that
+ *     were sent at the same time are never interleaved, which the client
+ *     couldn't put back together.
+ * </p>
+ * <p>
+ *     A client that doesn't read its messages fast enough would make the
+ *     queue grow without bounds, so once more than a certain number of bytes
+ *     are waiting, the queue gives up on the client, and drops everything.
+ * </p>
+ */
+public class OutboundQueue {
+	/**
+	 * The maximum number of bytes of a bulk message that are written at once.
+	 */
+	private static final int FRAGMENT_SIZE = 16 * 1024;
+
+	public enum Lane {INTERACTIVE, BULK}
+
+	private record Frame(byte[] data, long enqueuedAt) {}
+
+	private final OutputStream out;
+	private final Serializer serializer;
+	private final ExecutorService executor;
+	private final OutboundStats stats;
+	private final ServerLogger log;
+	private final long maxQueuedBytes;
+	private final Runnable onOverflow;
+
+	private final Queue<Frame> interactive = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The bulk messages that are waiting to be written, each as a single
+	 * frame.
+	 */
+	private final Queue<Frame> bulk = new ConcurrentLinkedQueue<>();
+	private final ReentrantLock writeLock = new ReentrantLock();
+	private final AtomicBoolean bulkWriterScheduled = new AtomicBoolean(false);
+	private final AtomicBoolean failed = new AtomicBoolean(false);
+
+	/**
+	 * The number of bytes of messages that are waiting to be written.
+	 */
+	private final AtomicLong queuedBytes = new AtomicLong();
+
+	/**
+	 * The fragments of the bulk message that's being written, which are still
+	 * left to write, or null if no message is being written. This is only
+	 * used while holding the write lock.
+	 */
+	private Iterator<MessageFragment> currentFragments;
+	private long currentEnqueuedAt;
+
+	/**
+	 * Constructs a new queue.
+	 * @param out The stream to write to.
+	 * @param serializer The serializer to use to split up bulk messages.
+	 * @param executor The executor on which to write bulk messages.
+	 * @param stats The statistics to update when frames are written.
+	 * @param log The logger to report write failures to.
+	 * @param maxQueuedBytes The number of bytes that may wait to be written,
+	 *                       beyond which the queue gives up on the client, or
+	 *                       0 if there's no limit.
+	 * @param onOverflow What to do when the queue gives up on the client,
+	 *                   like closing its connection.
+	 */
+	public OutboundQueue(OutputStream out, Serializer serializer, ExecutorService executor, OutboundStats stats, ServerLogger log, long maxQueuedBytes, Runnable onOverflow) {
+		this.out = out;
+		this.serializer = serializer;
+		this.executor = executor;
+		this.stats = stats;
+		this.log = log;
+		this.maxQueuedBytes = maxQueuedBytes;
+		this.onOverflow = onOverflow;
+	}
+
+	/**
+	 * Determines which lane a message should be sent in.
+	 * @param message The message.
+	 * @return The lane for the message.
+	 */
+	public static Lane laneOf(Message message) {
+		if (message instanceof ChatHistoryResponse || message instanceof ChannelMembers) {
+			return Lane.BULK;
+		}
+		return Lane.INTERACTIVE;
+	}
+
+	/**
+	 * Sends a serialized message in the given lane. If this makes too many
+	 * bytes wait to be written, the message is dropped together with all
+	 * others, and the queue gives up on the client.
+	 * @param data The serialized message.
+	 * @param lane The lane to send the message in.
+	 */
+	public void send(byte[] data, Lane lane) {
+		if (this.failed.get()) return;
+		long queued = this.queuedBytes.addAndGet(data.length);
+		if (this.maxQueuedBytes > 0 && queued > this.maxQueuedBytes) {
+			if (this.fail()) {
+				this.log.debug("Outbound queue grew to {} bytes.", queued);
+				this.onOverflow.run();
+			}
+			return;
+		}
+		var frame = new Frame(data, System.nanoTime());
+		if (lane == Lane.BULK) {
+			this.bulk.add(frame);
+			this.scheduleBulkWriter();
+		} else {
+			this.interactive.add(frame);
+			this.writeInteractive();
+		}
+	}
+
+	/**
+	 * @return The number of bytes of messages that are waiting to be written.
+	 */
+	public long getQueuedBytes() {
+		return this.queuedBytes.get();
+	}
+
+	/**
+	 * Writes all waiting interactive frames, unless another thread holds the
+	 * write lock. In that case, that thread checks the queue again after it
+	 * releases the lock, so the frames are not left behind.
+	 */
+	private void writeInteractive() {
+		do {
+			if (!this.writeLock.tryLock()) return;
+			try {
+				this.drainInteractive();
+			} finally {
+				this.writeLock.unlock();
+			}
+		} while (!this.interactive.isEmpty());
+	}
+
+	private void scheduleBulkWriter() {
+		if (this.bulkWriterScheduled.compareAndSet(false, true)) {
+			try {
+				this.executor.execute(this::writeBulk);
+			} catch (RejectedExecutionException e) {
+				// The server is shutting down, so leave the frames for flush().
+				this.bulkWriterScheduled.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Writes bulk fragments one at a time, writing any waiting interactive
+	 * frames before each one, until the bulk queue is empty.
+	 */
+	private void writeBulk() {
+		while (true) {
+			boolean written;
+			do {
+				this.writeLock.lock();
+				try {
+					this.drainInteractive();
+					written = this.writeBulkFragment();
+				} finally {
+					this.writeLock.unlock();
+				}
+			} while (written);
+			this.bulkWriterScheduled.set(false);
+			// Check again, in case a frame was added after the queue was found
+			// empty, but before the flag was cleared.
+			if (this.bulk.isEmpty() || !this.bulkWriterScheduled.compareAndSet(false, true)) break;
+		}
+		if (!this.interactive.isEmpty()) this.writeInteractive();
+	}
+
+	/**
+	 * Writes the next fragment of the bulk message that's being written, or
+	 * starts writing the next bulk message if there's none. A message that's
+	 * small enough is written as a whole. This must be called while holding
+	 * the write lock.
+	 * @return True if anything was written, or false if there are no more
+	 * bulk messages.
+	 */
+	private boolean writeBulkFragment() {
+		if (this.currentFragments == null) {
+			Frame frame = this.bulk.poll();
+			if (frame == null) return false;
+			if (frame.data.length <= FRAGMENT_SIZE) {
+				this.write(frame.data, frame.enqueuedAt, Lane.BULK, frame.data.length);
+				return true;
+			}
+			this.currentFragments = FragmentAssembler.split(frame.data, FRAGMENT_SIZE).iterator();
+			this.currentEnqueuedAt = frame.enqueuedAt;
+		}
+		var fragment = this.currentFragments.next();
+		if (!this.currentFragments.hasNext()) this.currentFragments = null;
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(fragment.byteSize() + 1);
+		try {
+			this.serializer.writeMessage(fragment, baos);
+		} catch (IOException e) {
+			this.log.error("Could not serialize a message fragment.", e);
+			this.fail();
+			return false;
+		}
+		this.write(baos.toByteArray(), this.currentEnqueuedAt, Lane.BULK, fragment.data().length);
+		return true;
+	}
+
+	private void drainInteractive() {
+		Frame frame;
+		while ((frame = this.interactive.poll()) != null) {
+			this.write(frame.data, frame.enqueuedAt, Lane.INTERACTIVE, frame.data.length);
+		}
+	}
+
+	/**
+	 * Writes a frame to the client.
+	 * @param data The frame's bytes.
+	 * @param enqueuedAt The time at which the frame's message was sent.
+	 * @param lane The lane of the frame's message.
+	 * @param messageBytes The number of bytes of the message that this frame
+	 *                     holds, which are no longer waiting once it's written.
+	 */
+	private void write(byte[] data, long enqueuedAt, Lane lane, int messageBytes) {
+		if (this.failed.get()) return;
+		this.stats.record(lane, data.length, System.nanoTime() - enqueuedAt);
+		try {
+			this.out.write(data);
+			this.out.flush();
+			this.queuedBytes.addAndGet(-messageBytes);
+		} catch (IOException e) {
+			this.log.debug("Could not write to client: {}", e.getMessage());
+			this.fail();
+		}
+	}
+
+	/**
+	 * Gives up on the client, because its connection is broken, or it isn't
+	 * reading fast enough, and drops everything that's still queued.
+	 * @return True if this is the first time that the queue gave up.
+	 */
+	private boolean fail() {
+		if (!this.failed.compareAndSet(false, true)) return false;
+		this.interactive.clear();
+		this.bulk.clear();
+		return true;
+	}
+
+	/**
+	 * Writes any frames that are still waiting, on the calling thread. This
+	 * should be called before the connection is closed.
+	 */
+	public void flush() {
+		this.writeLock.lock();
+		try {
+			this.drainInteractive();
+			while (this.writeBulkFragment()) {
+				this.drainInteractive();
+			}
+		} finally {
+			this.writeLock.unlock();
+		}
+	}
+}
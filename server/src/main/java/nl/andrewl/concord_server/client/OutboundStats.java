@@ -0,0 +1,75 @@
+package nl.andrewl.concord_server.client;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics about how long outbound frames wait in clients' queues before
+ * they're written, for each {@link OutboundQueue.Lane}. This is shared by all
+ * clients of a server.
+ */
+public class OutboundStats {
+	private final Map<OutboundQueue.Lane, LaneStats> lanes = new EnumMap<>(OutboundQueue.Lane.class);
+
+	public OutboundStats() {
+		for (var lane : OutboundQueue.Lane.values()) {
+			this.lanes.put(lane, new LaneStats());
+		}
+	}
+
+	void record(OutboundQueue.Lane lane, int bytes, long waitNanos) {
+		this.lanes.get(lane).record(bytes, waitNanos);
+	}
+
+	public LaneStats get(OutboundQueue.Lane lane) {
+		return this.lanes.get(lane);
+	}
+
+	public static class LaneStats {
+		private final LongAdder frames = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+		private final LongAdder totalWaitNanos = new LongAdder();
+		private final AtomicLong maxWaitNanos = new AtomicLong();
+
+		private void record(int bytes, long waitNanos) {
+			this.frames.increment();
+			this.bytes.add(bytes);
+			this.totalWaitNanos.add(waitNanos);
+			this.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+		}
+
+		/**
+		 * @return The number of frames that have been written.
+		 */
+		public long getFrames() {
+			return this.frames.sum();
+		}
+
+		/**
+		 * @return The number of bytes that have been written.
+		 */
+		public long getBytes() {
+			return this.bytes.sum();
+		}
+
+		/**
+		 * @return The average time, in milliseconds, that frames waited before
+		 * being written.
+		 */
+		public double getAverageWaitMillis() {
+			long count = this.frames.sum();
+			if (count == 0) return 0;
+			return this.totalWaitNanos.sum() / (count * 1_000_000.0);
+		}
+
+		/**
+		 * @return The longest time, in milliseconds, that a frame waited before
+		 * being written.
+		 */
+		public double getMaxWaitMillis() {
+			return this.maxWaitNanos.get() / 1_000_000.0;
+		}
+	}
+}
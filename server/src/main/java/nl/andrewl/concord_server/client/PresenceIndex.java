@@ -0,0 +1,105 @@
+package nl.andrewl.concord_server.client;
+
+import nl.andrewl.concord_core.msg.types.PresenceUpdate;
+import nl.andrewl.concord_core.msg.types.UserData;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * A set of users, like those that are online or those in a channel, kept
+ * sorted by name, so that the full list can be sent to a client without
+ * sorting it each time. It can also collect the changes that haven't been
+ * announced yet, so that several joins and leaves can be sent to clients as a
+ * single {@link PresenceUpdate}.
+ */
+public class PresenceIndex {
+	private static final Comparator<UserData> ORDER = Comparator.comparing(UserData::name).thenComparing(UserData::id);
+
+	private final Set<UserData> users = new ConcurrentSkipListSet<>(ORDER);
+	private final Map<UUID, UserData> usersById = new ConcurrentHashMap<>();
+
+	/**
+	 * The changes since the last update, by user id. Each user is in at most
+	 * one of these, depending on what happened to them last.
+	 */
+	private final Map<UUID, UserData> joined = new LinkedHashMap<>();
+	private final Map<UUID, UserData> left = new LinkedHashMap<>();
+
+	private final boolean trackChanges;
+
+	/**
+	 * Constructs a new, empty index.
+	 * @param trackChanges Whether to collect changes for
+	 *                     {@link PresenceIndex#takeUpdate(UUID)}.
+	 */
+	public PresenceIndex(boolean trackChanges) {
+		this.trackChanges = trackChanges;
+	}
+
+	/**
+	 * Adds a user to the index.
+	 * @param user The user that joined.
+	 */
+	public void join(UserData user) {
+		var previous = this.usersById.put(user.id(), user);
+		if (previous != null) this.users.remove(previous);
+		this.users.add(user);
+		if (!this.trackChanges) return;
+		synchronized (this) {
+			this.left.remove(user.id());
+			this.joined.put(user.id(), user);
+		}
+	}
+
+	/**
+	 * Removes a user from the index.
+	 * @param userId The id of the user that left.
+	 */
+	public void leave(UUID userId) {
+		var user = this.usersById.remove(userId);
+		if (user == null) return;
+		this.users.remove(user);
+		if (!this.trackChanges) return;
+		synchronized (this) {
+			this.joined.remove(userId);
+			this.left.put(userId, user);
+		}
+	}
+
+	/**
+	 * @return True if the given user is in the index.
+	 */
+	public boolean contains(UUID userId) {
+		return this.usersById.containsKey(userId);
+	}
+
+	/**
+	 * @return The list of all users, sorted by name.
+	 */
+	public List<UserData> getUsers() {
+		return List.copyOf(this.users);
+	}
+
+	public int size() {
+		return this.usersById.size();
+	}
+
+	/**
+	 * Takes all changes that haven't been announced yet.
+	 * @param channelId The id of the channel that the update is for.
+	 * @return An update with the changes, or null if there are none.
+	 */
+	public synchronized PresenceUpdate takeUpdate(UUID channelId) {
+		if (this.joined.isEmpty() && this.left.isEmpty()) return null;
+		var update = new PresenceUpdate(
+				channelId,
+				this.joined.values().toArray(new UserData[0]),
+				this.left.values().toArray(new UserData[0])
+		);
+		this.joined.clear();
+		this.left.clear();
+		return update;
+	}
+}
@@ -0,0 +1,50 @@
+package nl.andrewl.concord_server.client;
+
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_server.config.ServerConfig;
+import nl.andrewl.concord_server.util.TokenBucket;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits how often a single client may send each type of message, using one
+ * {@link TokenBucket} per type. Each client thread has its own rate limiter,
+ * which only it uses, so this class is not thread-safe.
+ */
+public class RateLimiter {
+	private final Map<String, ServerConfig.RateLimit> limits;
+
+	/**
+	 * The bucket for each type of message that has been received so far. Types
+	 * without a limit are mapped to null, so that they're only looked up once.
+	 */
+	private final Map<Class<? extends Message>, TokenBucket> buckets = new HashMap<>();
+
+	/**
+	 * Constructs a new rate limiter.
+	 * @param limits The limit for each type of message, by the simple name of
+	 *               the type. This may be null, if there are no limits. Limits
+	 *               of 0 or fewer messages per second are ignored.
+	 */
+	public RateLimiter(Map<String, ServerConfig.RateLimit> limits) {
+		this.limits = limits == null ? Map.of() : limits;
+	}
+
+	/**
+	 * Counts a message against the client's budget for its type.
+	 * @param message The message that was received.
+	 * @return 0 if the message is within the budget, or otherwise the number of
+	 * nanoseconds to wait before handling it.
+	 */
+	public long acquire(Message message) {
+		var type = message.getClass();
+		TokenBucket bucket = this.buckets.get(type);
+		if (bucket == null && !this.buckets.containsKey(type)) {
+			var limit = this.limits.get(type.getSimpleName());
+			bucket = limit == null || limit.getPerSecond() <= 0 ? null : new TokenBucket(limit.getPerSecond(), limit.getBurst());
+			this.buckets.put(type, bucket);
+		}
+		return bucket == null ? 0 : bucket.take();
+	}
+}
@@ -0,0 +1,200 @@
+package nl.andrewl.concord_server.client;
+
+import nl.andrewl.concord_server.util.CollectionUtils;
+import org.dizitart.no2.Document;
+import org.dizitart.no2.IndexType;
+import org.dizitart.no2.Nitrite;
+import org.dizitart.no2.NitriteCollection;
+import org.dizitart.no2.filters.Filters;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates and verifies stateless session tokens, which are signed with an HMAC
+ * so that they can be verified without any database lookup. Each token
+ * contains the following data, followed by a signature of that data:
+ * <ol>
+ *     <li>The version of the key that was used to sign the token.</li>
+ *     <li>The id of the user that the token belongs to.</li>
+ *     <li>The timestamp at which the token was issued.</li>
+ *     <li>The timestamp at which the token expires.</li>
+ * </ol>
+ * <p>
+ *     Signing keys can be rotated; tokens signed with an older key stay valid
+ *     until they expire. A user's sessions can be revoked, which invalidates
+ *     all tokens that were issued to them before the time of revocation.
+ * </p>
+ */
+public class SessionTokenSigner {
+	private static final String ALGORITHM = "HmacSHA256";
+	private static final int PAYLOAD_SIZE = Integer.BYTES + 2 * Long.BYTES + 2 * Long.BYTES;
+	private static final int SIGNATURE_SIZE = 32;
+
+	/**
+	 * The collection which stores all signing keys.
+	 */
+	private final NitriteCollection keyCollection;
+
+	/**
+	 * The collection which stores the timestamp at which each revoked user's
+	 * sessions were revoked.
+	 */
+	private final NitriteCollection revocationCollection;
+
+	/**
+	 * Prototype MAC instances for each key version, which are cloned for each
+	 * use, since MAC instances are not thread-safe.
+	 */
+	private final Map<Integer, Mac> macs = new ConcurrentHashMap<>();
+
+	/**
+	 * In-memory copy of the revocation collection, mapping each user id to the
+	 * time at which their sessions were revoked.
+	 */
+	private final Map<UUID, Long> revocations = new ConcurrentHashMap<>();
+
+	private volatile int currentKeyVersion;
+
+	public SessionTokenSigner(Nitrite db) {
+		this.keyCollection = db.getCollection("session-signing-keys");
+		CollectionUtils.ensureIndexes(this.keyCollection, Map.of("version", IndexType.Unique));
+		this.revocationCollection = db.getCollection("session-revocations");
+		CollectionUtils.ensureIndexes(this.revocationCollection, Map.of("userId", IndexType.Unique));
+		for (var doc : this.keyCollection.find()) {
+			int version = doc.get("version", Integer.class);
+			this.macs.put(version, createMac(Base64.getDecoder().decode(doc.get("key", String.class))));
+			this.currentKeyVersion = Math.max(this.currentKeyVersion, version);
+		}
+		if (this.macs.isEmpty()) {
+			this.rotateKey();
+		}
+		for (var doc : this.revocationCollection.find()) {
+			this.revocations.put(doc.get("userId", UUID.class), doc.get("revokedAt", Long.class));
+		}
+	}
+
+	/**
+	 * Creates a new signed token.
+	 * @param userId The id of the user that the token is for.
+	 * @param expiresAt The timestamp at which the token expires.
+	 * @return The token.
+	 */
+	public String sign(UUID userId, long expiresAt) {
+		int version = this.currentKeyVersion;
+		ByteBuffer buffer = ByteBuffer.allocate(PAYLOAD_SIZE + SIGNATURE_SIZE);
+		buffer.putInt(version);
+		buffer.putLong(userId.getMostSignificantBits());
+		buffer.putLong(userId.getLeastSignificantBits());
+		buffer.putLong(System.currentTimeMillis());
+		buffer.putLong(expiresAt);
+		Mac mac = this.getMac(version);
+		mac.update(buffer.array(), 0, PAYLOAD_SIZE);
+		buffer.put(mac.doFinal());
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+	}
+
+	/**
+	 * Verifies a token.
+	 * @param token The token to verify.
+	 * @return The id of the user that the token belongs to, or null if the
+	 * token is not valid, expired, or revoked.
+	 */
+	public UUID verify(String token) {
+		byte[] data;
+		try {
+			data = Base64.getUrlDecoder().decode(token);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		if (data.length != PAYLOAD_SIZE + SIGNATURE_SIZE) return null;
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		int version = buffer.getInt();
+		if (!this.macs.containsKey(version)) return null;
+		Mac mac = this.getMac(version);
+		mac.update(data, 0, PAYLOAD_SIZE);
+		byte[] expectedSignature = mac.doFinal();
+		byte[] signature = new byte[SIGNATURE_SIZE];
+		System.arraycopy(data, PAYLOAD_SIZE, signature, 0, SIGNATURE_SIZE);
+		if (!MessageDigest.isEqual(expectedSignature, signature)) return null;
+		UUID userId = new UUID(buffer.getLong(), buffer.getLong());
+		long issuedAt = buffer.getLong();
+		long expiresAt = buffer.getLong();
+		if (expiresAt < System.currentTimeMillis()) return null;
+		Long revokedAt = this.revocations.get(userId);
+		if (revokedAt != null && issuedAt <= revokedAt) return null;
+		return userId;
+	}
+
+	/**
+	 * Revokes all tokens that have been issued to the given user so far.
+	 * @param userId The id of the user whose sessions to revoke.
+	 */
+	public synchronized void revoke(UUID userId) {
+		long now = System.currentTimeMillis();
+		this.revocations.put(userId, now);
+		this.revocationCollection.remove(Filters.eq("userId", userId));
+		this.revocationCollection.insert(new Document(Map.of("userId", userId, "revokedAt", now)));
+	}
+
+	/**
+	 * Removes any revocations which are older than the given timestamp. Since
+	 * tokens that were issued before then have expired anyway, these
+	 * revocations no longer have any effect.
+	 * @param timestamp The timestamp before which to remove revocations.
+	 */
+	public synchronized void removeRevocationsBefore(long timestamp) {
+		this.revocations.values().removeIf(revokedAt -> revokedAt < timestamp);
+		this.revocationCollection.remove(Filters.lt("revokedAt", timestamp));
+	}
+
+	/**
+	 * Generates a new signing key, which is used for all new tokens from now
+	 * on. Tokens signed with previous keys remain valid.
+	 */
+	public synchronized void rotateKey() {
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		int version = this.currentKeyVersion + 1;
+		this.keyCollection.insert(new Document(Map.of(
+				"version", version,
+				"key", Base64.getEncoder().encodeToString(key),
+				"createdAt", System.currentTimeMillis()
+		)));
+		this.macs.put(version, createMac(key));
+		this.currentKeyVersion = version;
+	}
+
+	/**
+	 * @return The version of the key that's currently used to sign new tokens.
+	 */
+	public int getCurrentKeyVersion() {
+		return this.currentKeyVersion;
+	}
+
+	private Mac getMac(int version) {
+		try {
+			return (Mac) this.macs.get(version).clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Mac createMac(byte[] key) {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(new SecretKeySpec(key, ALGORITHM));
+			return mac;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package nl.andrewl.concord_server.cluster;
+
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_core.msg.types.UserData;
+import nl.andrewl.concord_core.msg.types.chat.Chat;
+import nl.andrewl.concord_core.msg.types.chat.ChatHistoryRequest;
+import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.channel.Channel;
+import nl.andrewl.concord_server.cluster.msg.*;
+import nl.andrewl.concord_server.config.ServerConfig;
+import nl.andrewl.concord_server.event.ChatHistoryRequestHandler;
+import nl.andrewl.concord_server.logging.ServerLogger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cluster manager is responsible for this server's participation in a
+ * cluster of server nodes, which together serve a single Concord server. Each
+ * public channel is owned by exactly one node, chosen by consistent hashing of
+ * the channel's id. The owner persists and numbers all chats in the channel,
+ * and fans them out to every other node, which deliver them to their own
+ * clients in the channel. Each node also shares the list of clients connected
+ * to it, so that presence is cluster-wide.
+ * <p>
+ *     Nodes communicate over plain, unencrypted TCP links, so these should
+ *     only be exposed on a trusted internal network. Each node opens a link to
+ *     every other node for sending, and accepts links from every other node
+ *     for receiving. Links are only used once both nodes have proven that
+ *     they know the cluster's shared secret; see {@link NodeAuthenticator}.
+ * </p>
+ * <p>
+ *     Private channels are not distributed; they're persisted and delivered
+ *     by whichever node the sender is connected to.
+ * </p>
+ */
+public class ClusterManager {
+	/**
+	 * The number of milliseconds between attempts to connect the links to
+	 * other nodes that aren't connected.
+	 */
+	public static final long RECONNECT_MILLIS = 2000;
+
+	private final ConcordServer server;
+	private final ServerLogger log;
+	private final String nodeId;
+	private final ConsistentHashRing ring;
+	private final ClusterSerializer serializer;
+	private final NodeAuthenticator authenticator;
+	private final ServerSocket linkServerSocket;
+
+	/**
+	 * Outgoing links to each other node, mapped by node id.
+	 */
+	private final Map<String, NodeLink> links;
+
+	/**
+	 * Handler that's used to answer history requests forwarded by other nodes.
+	 */
+	private final ChatHistoryRequestHandler historyRequestHandler = new ChatHistoryRequestHandler();
+
+	private volatile boolean running;
+
+	public ClusterManager(ConcordServer server, ServerConfig.ClusterConfig config) throws IOException {
+		this.server = server;
+		this.log = server.getLogger().named(getClass());
+		this.nodeId = config.getNodeId();
+		this.serializer = new ClusterSerializer();
+		this.authenticator = new NodeAuthenticator(config.getSecret());
+		this.links = new HashMap<>();
+		ServerConfig.NodeConfig localNode = null;
+		List<String> nodeIds = new ArrayList<>();
+		for (var node : config.getNodes()) {
+			nodeIds.add(node.getId());
+			if (node.getId().equals(this.nodeId)) {
+				localNode = node;
+			} else {
+				var address = new InetSocketAddress(node.getHost(), node.getPort());
+				this.links.put(node.getId(), new NodeLink(this.nodeId, node.getId(), address, this.serializer, this.authenticator, this.log));
+			}
+		}
+		if (localNode == null) {
+			throw new IllegalArgumentException("The cluster's list of nodes doesn't contain this node's id: " + this.nodeId);
+		}
+		this.ring = new ConsistentHashRing(nodeIds);
+		this.linkServerSocket = new ServerSocket(localNode.getPort());
+	}
+
+	/**
+	 * Starts accepting links from other nodes, and connecting to them.
+	 */
+	public void start() {
+		this.running = true;
+		var acceptThread = new Thread(this::acceptLinks, "concord-cluster-accept");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+		this.server.getScheduledExecutorService().scheduleWithFixedDelay(this::connectLinks, 0, RECONNECT_MILLIS, TimeUnit.MILLISECONDS);
+		this.log.info("Cluster node {} is accepting node links on port {}.", this.nodeId, this.linkServerSocket.getLocalPort());
+	}
+
+	/**
+	 * Stops the cluster manager, closing all links.
+	 */
+	public void shutdown() {
+		this.running = false;
+		try {
+			this.linkServerSocket.close();
+		} catch (IOException e) {
+			this.log.error("Could not close the node link socket.", e);
+		}
+		this.links.values().forEach(NodeLink::close);
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * Determines if a channel is distributed over the cluster. Only public
+	 * channels are distributed.
+	 * @param channel The channel to check.
+	 * @return True if the channel is distributed.
+	 */
+	public boolean isDistributed(Channel channel) {
+		return this.server.getChannelManager().getChannelById(channel.getId()).isPresent();
+	}
+
+	/**
+	 * Determines if this node is the owner of a channel, which persists and
+	 * numbers its chats. Unlike {@link ClusterManager#isLocallyOwned(Channel)},
+	 * this doesn't fall back to this node when the owner can't be reached,
+	 * since two nodes numbering the same channel's chats would give out the
+	 * same sequence numbers twice.
+	 * @param channel The channel to check.
+	 * @return True if this node persists the channel's chats.
+	 */
+	public boolean isOwner(Channel channel) {
+		return !this.isDistributed(channel) || this.ring.getOwner(channel.getId()).equals(this.nodeId);
+	}
+
+	/**
+	 * Determines if a channel's history should be read from this node. This
+	 * is the case if the channel is owned by this node, and also if the owner
+	 * is not reachable, so that the history stays readable while a node is
+	 * down.
+	 * @param channel The channel to check.
+	 * @return True if this node should answer history requests for the channel.
+	 */
+	public boolean isLocallyOwned(Channel channel) {
+		if (this.isOwner(channel)) return true;
+		return !this.links.get(this.ring.getOwner(channel.getId())).isConnected();
+	}
+
+	/**
+	 * Forwards a chat to the node that owns the channel it was sent in. This
+	 * should only be called when this node isn't the owner.
+	 * @param channel The channel the chat was sent in.
+	 * @param chat The chat.
+	 * @return True if the chat was forwarded, or false if the owner can't be
+	 * reached.
+	 */
+	public boolean forwardChat(Channel channel, Chat chat) {
+		return this.links.get(this.ring.getOwner(channel.getId())).send(new ForwardedChat(channel.getId(), chat));
+	}
+
+	/**
+	 * Forwards a client's history request to the node that owns the channel.
+	 * @param channel The channel whose history is requested.
+	 * @param clientId The id of the client that requested it.
+	 * @param request The request.
+	 * @return True if the request was forwarded, or false if it should be
+	 * handled by this node instead.
+	 */
+	public boolean forwardHistoryRequest(Channel channel, UUID clientId, ChatHistoryRequest request) {
+		if (this.isLocallyOwned(channel)) return false;
+		return this.links.get(this.ring.getOwner(channel.getId())).send(new ForwardedHistoryRequest(this.nodeId, clientId, request));
+	}
+
+	/**
+	 * Sends a chat which this node has persisted to every other node, so they
+	 * can deliver it to their clients.
+	 * @param channel The channel the chat was sent in.
+	 * @param chat The chat.
+	 */
+	public void fanOut(Channel channel, Chat chat) {
+		if (!this.isDistributed(channel)) return;
+		this.sendToAll(new ChannelChat(channel.getId(), chat));
+	}
+
+	/**
+	 * Sends the list of clients connected to this node to every other node.
+	 * @param users The list of clients connected to this node.
+	 */
+	public void publishPresence(List<UserData> users) {
+		this.sendToAll(new NodePresence(this.nodeId, users.toArray(new UserData[0])));
+	}
+
+	private void sendToAll(Message msg) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(msg.byteSize() + 1);
+		try {
+			this.serializer.writeMessage(msg, baos);
+		} catch (IOException e) {
+			this.log.error("Could not serialize {}.", msg.getClass().getSimpleName(), e);
+			return;
+		}
+		byte[] data = baos.toByteArray();
+		for (var link : this.links.values()) {
+			link.send(data);
+		}
+	}
+
+	/**
+	 * Tries to connect any links that are not connected, and sends this node's
+	 * presence over any newly-connected links.
+	 */
+	private void connectLinks() {
+		for (var link : this.links.values()) {
+			if (link.connect()) {
+				link.send(new NodePresence(this.nodeId, this.server.getClientManager().getLocalClients().toArray(new UserData[0])));
+			}
+		}
+	}
+
+	private void acceptLinks() {
+		while (this.running) {
+			try {
+				Socket socket = this.linkServerSocket.accept();
+				var readerThread = new Thread(() -> this.readLink(socket), "concord-cluster-link");
+				readerThread.setDaemon(true);
+				readerThread.start();
+			} catch (IOException e) {
+				if (this.running) {
+					this.log.warning("Could not accept cluster node link: {}", e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads and handles messages from an incoming link, until it's closed.
+	 * @param socket The link's socket.
+	 */
+	private void readLink(Socket socket) {
+		String remoteNodeId = null;
+		try (socket) {
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			remoteNodeId = this.authenticateLink(socket, in);
+			if (remoteNodeId == null) {
+				this.log.warning("Rejected cluster node link from {}.", socket.getRemoteSocketAddress());
+				return;
+			}
+			while (this.running) {
+				this.handle(this.serializer.readMessage(in));
+			}
+		} catch (IOException e) {
+			if (remoteNodeId != null) {
+				this.log.warning("Link from cluster node {} closed: {}", remoteNodeId, e.getMessage());
+			}
+		}
+		if (remoteNodeId != null) {
+			this.server.getClientManager().setRemoteClients(remoteNodeId, List.of());
+		}
+	}
+
+	/**
+	 * Performs this node's side of the handshake on an incoming link, in which
+	 * both nodes prove that they know the cluster's secret.
+	 * @param socket The link's socket.
+	 * @param in The stream to read the other node's messages from.
+	 * @return The id of the node that opened the link, or null if it isn't
+	 * one of the cluster's nodes, or its proof was invalid.
+	 * @throws IOException If the handshake could not be completed.
+	 */
+	private String authenticateLink(Socket socket, InputStream in) throws IOException {
+		// Don't let a peer that never finishes the handshake hold on to this thread.
+		socket.setSoTimeout(NodeLink.HANDSHAKE_TIMEOUT);
+		if (!(this.serializer.readMessage(in) instanceof NodeHello hello) || !this.links.containsKey(hello.nodeId())) {
+			return null;
+		}
+		byte[] nonce = this.authenticator.newNonce();
+		byte[] proof = this.authenticator.prove(NodeAuthenticator.Side.ACCEPTOR, hello.nodeId(), this.nodeId, hello.nonce());
+		this.serializer.writeMessage(new NodeChallenge(proof, nonce), socket.getOutputStream());
+		if (!(this.serializer.readMessage(in) instanceof NodeAuth auth)) return null;
+		if (!this.authenticator.verify(auth.proof(), NodeAuthenticator.Side.CONNECTOR, hello.nodeId(), this.nodeId, nonce)) {
+			return null;
+		}
+		socket.setSoTimeout(0);
+		return hello.nodeId();
+	}
+
+	private void handle(Message msg) {
+		var channelManager = this.server.getChannelManager();
+		if (msg instanceof ForwardedChat fc) {
+			channelManager.getChannelById(fc.channelId())
+					.ifPresent(channel -> channel.publishChat(fc.chat(), chat -> this.fanOut(channel, chat)));
+		} else if (msg instanceof ChannelChat cc) {
+			channelManager.getChannelById(cc.channelId()).ifPresent(channel -> channel.sendChat(cc.chat()));
+		} else if (msg instanceof NodePresence np) {
+			this.server.getClientManager().setRemoteClients(np.nodeId(), Arrays.asList(np.users()));
+		} else if (msg instanceof ForwardedHistoryRequest fhr) {
+			var link = this.links.get(fhr.nodeId());
+			channelManager.getChannelById(fhr.request().channelId()).ifPresent(channel -> {
+				var response = this.historyRequestHandler.buildResponse(fhr.request(), channel, this.server);
+				if (response != null && link != null) {
+					link.send(new ForwardedHistoryResponse(fhr.clientId(), response));
+				}
+			});
+		} else if (msg instanceof ForwardedHistoryResponse fhr) {
+			this.server.getClientManager().getClientById(fhr.clientId())
+					.ifPresent(client -> client.sendToClient(fhr.response()));
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package nl.andrewl.concord_server.cluster;
+
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_core.msg.Serializer;
+import nl.andrewl.concord_server.cluster.msg.*;
+
+import java.util.List;
+
+/**
+ * A serializer which supports all the standard message types, as well as the
+ * messages that are only sent between the nodes of a cluster.
+ */
+public class ClusterSerializer extends Serializer {
+	/**
+	 * The id of the first cluster message type. This leaves plenty of room for
+	 * new standard message types.
+	 */
+	private static final int FIRST_TYPE_ID = 100;
+
+	public ClusterSerializer() {
+		super();
+		List<Class<? extends Message>> messageClasses = List.of(
+				NodeHello.class,
+				NodeChallenge.class,
+				NodeAuth.class,
+				ForwardedChat.class,
+				ChannelChat.class,
+				NodePresence.class,
+				ForwardedHistoryRequest.class,
+				ForwardedHistoryResponse.class
+		);
+		for (int i = 0; i < messageClasses.size(); i++) {
+			registerType(FIRST_TYPE_ID + i, messageClasses.get(i));
+		}
+	}
+}
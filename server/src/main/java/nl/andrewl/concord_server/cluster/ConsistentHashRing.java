@@ -0,0 +1,55 @@
+package nl.andrewl.concord_server.cluster;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * A consistent hash ring which assigns each key to one of a set of nodes. Each
+ * node is placed on the ring at a number of virtual positions, so that keys
+ * are spread evenly, and adding or removing a node only moves the keys of
+ * that node.
+ */
+public class ConsistentHashRing {
+	private static final int VIRTUAL_NODES = 128;
+
+	private final TreeMap<Long, String> ring = new TreeMap<>();
+
+	/**
+	 * Constructs a ring containing the given nodes.
+	 * @param nodeIds The ids of the nodes.
+	 */
+	public ConsistentHashRing(Collection<String> nodeIds) {
+		for (var nodeId : nodeIds) {
+			for (int i = 0; i < VIRTUAL_NODES; i++) {
+				this.ring.put(hash(nodeId + "#" + i), nodeId);
+			}
+		}
+	}
+
+	/**
+	 * Gets the node that owns the given key.
+	 * @param key The key.
+	 * @return The id of the node that owns the key.
+	 */
+	public String getOwner(UUID key) {
+		if (this.ring.isEmpty()) throw new IllegalStateException("The ring doesn't contain any nodes.");
+		Map.Entry<Long, String> entry = this.ring.ceilingEntry(hash(key.toString()));
+		if (entry == null) entry = this.ring.firstEntry();
+		return entry.getValue();
+	}
+
+	private static long hash(String s) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(s.getBytes(StandardCharsets.UTF_8));
+			return ByteBuffer.wrap(digest).getLong();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package nl.andrewl.concord_server.cluster;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Lets the nodes of a cluster prove to each other that they know the
+ * cluster's shared secret, without ever sending it. When a node opens a link
+ * to another node, the following challenge-response handshake takes place:
+ * <ol>
+ *     <li>The connecting node sends its id and a random nonce.</li>
+ *     <li>The accepting node answers with an HMAC of that nonce, and a nonce
+ *     of its own.</li>
+ *     <li>The connecting node checks the HMAC, and answers with an HMAC of the
+ *     accepting node's nonce.</li>
+ *     <li>The accepting node checks that HMAC, and only then starts reading
+ *     messages from the link.</li>
+ * </ol>
+ * Each HMAC also covers the ids of both nodes, and which side of the link
+ * made it, so that a proof can't be replayed on another link, or reflected
+ * back at the node that made it.
+ */
+public class NodeAuthenticator {
+	private static final String ALGORITHM = "HmacSHA256";
+	private static final int NONCE_SIZE = 32;
+
+	/**
+	 * The side of a link that makes a proof.
+	 */
+	public enum Side {CONNECTOR, ACCEPTOR}
+
+	/**
+	 * A prototype MAC instance, which is cloned for each use, since MAC
+	 * instances are not thread-safe.
+	 */
+	private final Mac mac;
+	private final SecureRandom random = new SecureRandom();
+
+	/**
+	 * Constructs an authenticator.
+	 * @param secret The cluster's shared secret.
+	 */
+	public NodeAuthenticator(String secret) {
+		if (secret == null || secret.isBlank()) {
+			throw new IllegalArgumentException("The cluster's secret must be set.");
+		}
+		try {
+			this.mac = Mac.getInstance(ALGORITHM);
+			this.mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return A new random nonce to challenge another node with.
+	 */
+	public byte[] newNonce() {
+		byte[] nonce = new byte[NONCE_SIZE];
+		this.random.nextBytes(nonce);
+		return nonce;
+	}
+
+	/**
+	 * Proves that this node knows the cluster's secret, in answer to a
+	 * challenge.
+	 * @param side The side of the link that this node is on.
+	 * @param connectorId The id of the node that opened the link.
+	 * @param acceptorId The id of the node that accepted the link.
+	 * @param nonce The nonce that the other node challenged this node with.
+	 * @return The proof.
+	 */
+	public byte[] prove(Side side, String connectorId, String acceptorId, byte[] nonce) {
+		var baos = new ByteArrayOutputStream();
+		try (var d = new DataOutputStream(baos)) {
+			d.writeUTF(side.name());
+			d.writeUTF(connectorId);
+			d.writeUTF(acceptorId);
+			d.write(nonce);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		try {
+			return ((Mac) this.mac.clone()).doFinal(baos.toByteArray());
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Checks another node's proof that it knows the cluster's secret.
+	 * @param proof The proof that the other node sent.
+	 * @param side The side of the link that the other node is on.
+	 * @param connectorId The id of the node that opened the link.
+	 * @param acceptorId The id of the node that accepted the link.
+	 * @param nonce The nonce that this node challenged the other node with.
+	 * @return True if the proof is valid.
+	 */
+	public boolean verify(byte[] proof, Side side, String connectorId, String acceptorId, byte[] nonce) {
+		return proof != null && MessageDigest.isEqual(proof, this.prove(side, connectorId, acceptorId, nonce));
+	}
+}
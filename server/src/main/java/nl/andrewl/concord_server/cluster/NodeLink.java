@@ -0,0 +1,158 @@
+package nl.andrewl.concord_server.cluster;
+
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_server.cluster.msg.NodeAuth;
+import nl.andrewl.concord_server.cluster.msg.NodeChallenge;
+import nl.andrewl.concord_server.cluster.msg.NodeHello;
+import nl.andrewl.concord_server.logging.ServerLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * An outgoing link from this node to another node in the cluster, which is
+ * used to send messages to that node. Messages from the other node are
+ * received over a separate link that the other node opens to this one.
+ * <p>
+ *     Before any messages are sent, both nodes prove to each other that they
+ *     know the cluster's secret; see {@link NodeAuthenticator}.
+ * </p>
+ */
+public class NodeLink {
+	private static final int CONNECT_TIMEOUT = 3000;
+
+	/**
+	 * The number of milliseconds that a node may take to answer during the
+	 * handshake of a new link.
+	 */
+	static final int HANDSHAKE_TIMEOUT = 3000;
+
+	private final String localNodeId;
+	private final String remoteNodeId;
+	private final InetSocketAddress address;
+	private final ClusterSerializer serializer;
+	private final NodeAuthenticator authenticator;
+	private final ServerLogger log;
+
+	private Socket socket;
+	private OutputStream out;
+
+	public NodeLink(String localNodeId, String remoteNodeId, InetSocketAddress address, ClusterSerializer serializer, NodeAuthenticator authenticator, ServerLogger log) {
+		this.localNodeId = localNodeId;
+		this.remoteNodeId = remoteNodeId;
+		this.address = address;
+		this.serializer = serializer;
+		this.authenticator = authenticator;
+		this.log = log;
+	}
+
+	public String getRemoteNodeId() {
+		return remoteNodeId;
+	}
+
+	public synchronized boolean isConnected() {
+		return this.socket != null;
+	}
+
+	/**
+	 * Tries to connect to the remote node, if not already connected, and
+	 * authenticates the link.
+	 * @return True if a new connection was opened, or false if the link was
+	 * already connected, or the connection or authentication failed.
+	 */
+	public synchronized boolean connect() {
+		if (this.socket != null) return false;
+		try {
+			var s = new Socket();
+			s.connect(this.address, CONNECT_TIMEOUT);
+			s.setTcpNoDelay(true);
+			this.socket = s;
+			this.out = new BufferedOutputStream(s.getOutputStream());
+			if (!this.authenticate(s)) {
+				this.log.warning("Could not authenticate link to cluster node {}. Check that it uses the same cluster secret.", this.remoteNodeId);
+				this.close();
+				return false;
+			}
+			this.log.info("Connected to cluster node {} at {}.", this.remoteNodeId, this.address);
+			return true;
+		} catch (IOException e) {
+			this.close();
+			return false;
+		}
+	}
+
+	/**
+	 * Performs this node's side of the handshake, in which both nodes prove
+	 * that they know the cluster's secret.
+	 * @param s The link's socket.
+	 * @return True if the remote node's proof was valid.
+	 * @throws IOException If the handshake could not be completed.
+	 */
+	private boolean authenticate(Socket s) throws IOException {
+		s.setSoTimeout(HANDSHAKE_TIMEOUT);
+		var in = new BufferedInputStream(s.getInputStream());
+		byte[] nonce = this.authenticator.newNonce();
+		this.serializer.writeMessage(new NodeHello(this.localNodeId, nonce), this.out);
+		if (!(this.serializer.readMessage(in) instanceof NodeChallenge challenge)) return false;
+		if (!this.authenticator.verify(challenge.proof(), NodeAuthenticator.Side.ACCEPTOR, this.localNodeId, this.remoteNodeId, nonce)) {
+			return false;
+		}
+		byte[] proof = this.authenticator.prove(NodeAuthenticator.Side.CONNECTOR, this.localNodeId, this.remoteNodeId, challenge.nonce());
+		this.serializer.writeMessage(new NodeAuth(proof), this.out);
+		s.setSoTimeout(0);
+		return true;
+	}
+
+	/**
+	 * Sends a message to the remote node.
+	 * @param msg The message to send.
+	 * @return True if the message was sent, or false if the link is not
+	 * connected, or sending failed.
+	 */
+	public synchronized boolean send(Message msg) {
+		if (this.socket == null) return false;
+		try {
+			this.serializer.writeMessage(msg, this.out);
+			return true;
+		} catch (IOException e) {
+			this.log.warning("Lost connection to cluster node {}: {}", this.remoteNodeId, e.getMessage());
+			this.close();
+			return false;
+		}
+	}
+
+	/**
+	 * Sends a pre-serialized message to the remote node.
+	 * @param data The bytes of the message.
+	 * @return True if the message was sent, or false if the link is not
+	 * connected, or sending failed.
+	 */
+	public synchronized boolean send(byte[] data) {
+		if (this.socket == null) return false;
+		try {
+			this.out.write(data);
+			this.out.flush();
+			return true;
+		} catch (IOException e) {
+			this.log.warning("Lost connection to cluster node {}: {}", this.remoteNodeId, e.getMessage());
+			this.close();
+			return false;
+		}
+	}
+
+	public synchronized void close() {
+		if (this.socket != null) {
+			try {
+				this.socket.close();
+			} catch (IOException e) {
+				this.log.warning("Could not close link to cluster node {}.", this.remoteNodeId, e);
+			}
+		}
+		this.socket = null;
+		this.out = null;
+	}
+}
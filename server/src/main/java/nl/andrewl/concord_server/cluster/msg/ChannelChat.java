@@ -0,0 +1,15 @@
+package nl.andrewl.concord_server.cluster.msg;
+
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_core.msg.types.chat.Chat;
+
+import java.util.UUID;
+
+/**
+ * Sent by the owner of a channel to every other node, once a chat has been
+ * persisted, so that each node can deliver it to its own clients in that
+ * channel.
+ * @param channelId The id of the channel that the chat was sent in.
+ * @param chat The chat, as it was persisted.
+ */
+public record ChannelChat (UUID channelId, Chat chat) implements Message {}
@@ -0,0 +1,14 @@
+package nl.andrewl.concord_server.cluster.msg;
+
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_core.msg.types.chat.Chat;
+
+import java.util.UUID;
+
+/**
+ * Sent by a node to the owner of a channel, when one of its clients sends a
+ * chat in that channel. The owner persists the chat and fans it out.
+ * @param channelId The id of the channel that the chat was sent in.
+ * @param chat The chat.
+ */
+public record ForwardedChat (UUID channelId, Chat chat) implements Message {}
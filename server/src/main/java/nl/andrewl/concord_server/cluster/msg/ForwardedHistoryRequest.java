@@ -0,0 +1,15 @@
+package nl.andrewl.concord_server.cluster.msg;
+
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_core.msg.types.chat.ChatHistoryRequest;
+
+import java.util.UUID;
+
+/**
+ * Sent by a node to the owner of a channel, when one of its clients requests
+ * the channel's history.
+ * @param nodeId The id of the node that the client is connected to.
+ * @param clientId The id of the client.
+ * @param request The client's request.
+ */
+public record ForwardedHistoryRequest (String nodeId, UUID clientId, ChatHistoryRequest request) implements Message {}
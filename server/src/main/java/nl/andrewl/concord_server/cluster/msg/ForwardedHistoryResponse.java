@@ -0,0 +1,13 @@
+package nl.andrewl.concord_server.cluster.msg;
+
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_core.msg.types.chat.ChatHistoryResponse;
+
+import java.util.UUID;
+
+/**
+ * Sent by the owner of a channel in response to a {@link ForwardedHistoryRequest}.
+ * @param clientId The id of the client that requested the history.
+ * @param response The response to send to the client.
+ */
+public record ForwardedHistoryResponse (UUID clientId, ChatHistoryResponse response) implements Message {}
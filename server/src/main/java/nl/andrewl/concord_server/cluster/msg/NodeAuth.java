@@ -0,0 +1,11 @@
+package nl.andrewl.concord_server.cluster.msg;
+
+import nl.andrewl.concord_core.msg.Message;
+
+/**
+ * The answer of a node that opened a link to a {@link NodeChallenge}, after
+ * which the link is authenticated.
+ * @param proof The HMAC of the challenge's nonce, which proves that this node
+ *              knows the cluster's secret.
+ */
+public record NodeAuth (byte[] proof) implements Message {}
@@ -0,0 +1,12 @@
+package nl.andrewl.concord_server.cluster.msg;
+
+import nl.andrewl.concord_core.msg.Message;
+
+/**
+ * The answer of a node that accepted a link to a {@link NodeHello}.
+ * @param proof The HMAC of the hello's nonce, which proves that this node
+ *              knows the cluster's secret.
+ * @param nonce A random nonce, which the node that opened the link must prove
+ *              that it knows the cluster's secret with.
+ */
+public record NodeChallenge (byte[] proof, byte[] nonce) implements Message {}
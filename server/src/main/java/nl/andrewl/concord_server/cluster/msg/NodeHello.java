@@ -0,0 +1,11 @@
+package nl.andrewl.concord_server.cluster.msg;
+
+import nl.andrewl.concord_core.msg.Message;
+
+/**
+ * The first message that a node sends over a new link to another node.
+ * @param nodeId The id of the node that opened the link.
+ * @param nonce A random nonce, which the other node must prove that it knows
+ *              the cluster's secret with.
+ */
+public record NodeHello (String nodeId, byte[] nonce) implements Message {}
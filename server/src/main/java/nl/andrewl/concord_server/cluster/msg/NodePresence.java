@@ -0,0 +1,12 @@
+package nl.andrewl.concord_server.cluster.msg;
+
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_core.msg.types.UserData;
+
+/**
+ * Sent by a node to every other node whenever the set of clients connected to
+ * it changes.
+ * @param nodeId The id of the node.
+ * @param users The complete list of users that are connected to the node.
+ */
+public record NodePresence (String nodeId, UserData[] users) implements Message {}
@@ -0,0 +1,69 @@
+package nl.andrewl.concord_server.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration for hosting many servers, called tenants, in a single process.
+ * Each tenant has its own server configuration and database, and listens on
+ * the port that's given in its configuration.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public final class HostConfig {
+	private List<TenantConfig> tenants;
+
+	/**
+	 * The share of available processor cores that may be used concurrently for
+	 * password hashing, by all tenants together.
+	 */
+	private double authThreadShare = 0.25;
+
+	/**
+	 * The maximum number of log events that may wait to be written, for all
+	 * tenants together.
+	 */
+	private int logBufferSize = 8192;
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static final class TenantConfig {
+		private String id;
+		private String configFile;
+		private String databaseFile;
+	}
+
+	public static HostConfig loadOrCreate(Path filePath) {
+		ObjectMapper mapper = new ObjectMapper();
+		HostConfig config;
+		if (Files.notExists(filePath)) {
+			config = new HostConfig();
+			config.setTenants(new ArrayList<>(List.of(new TenantConfig("default", "server-config.json", "concord-server.db"))));
+			try (var out = Files.newOutputStream(filePath)) {
+				mapper.writerWithDefaultPrettyPrinter().writeValue(out, config);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			System.err.println(filePath + " does not exist. Creating it with initial values. Edit and restart to apply changes.");
+		} else {
+			try {
+				config = mapper.readValue(Files.newInputStream(filePath), HostConfig.class);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			System.out.println("Loaded host configuration from " + filePath);
+		}
+		return config;
+	}
+}
@@ -5,13 +5,19 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import nl.andrewl.concord_server.logging.LogLevel;
 import nl.andrewl.concord_server.util.IdProvider;
+import nl.andrewl.concord_server.util.TimeOrderedIdProvider;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
@@ -29,6 +35,141 @@ public final class ServerConfig {
 
 	private List<String> discoveryServers;
 
+	/**
+	 * The share of available processor cores that may be used concurrently for
+	 * password hashing and verification during logins and registrations.
+	 */
+	private double authThreadShare = 0.25;
+
+	/**
+	 * The maximum number of session tokens and user records to cache in memory.
+	 */
+	private int sessionCacheSize = 10_000;
+
+	/**
+	 * Whether to use stateless, signed session tokens instead of random tokens
+	 * that are stored in the database.
+	 */
+	private boolean signedSessionTokens = false;
+
+	/**
+	 * The maximum number of channels in a page of the channel directory.
+	 */
+	private int channelDirectoryPageSize = 100;
+
+	/**
+	 * The maximum number of private channels to keep loaded in memory.
+	 */
+	private int privateChannelCacheSize = 10_000;
+
+	/**
+	 * The number of seconds after which a private channel that hasn't been
+	 * used is unloaded from memory.
+	 */
+	private int privateChannelIdleSeconds = 600;
+
+	/**
+	 * The number of seconds between each heartbeat ping sent to clients.
+	 */
+	private int heartbeatIntervalSeconds = 15;
+
+	/**
+	 * The number of seconds after which a client that hasn't sent anything is
+	 * considered dead, and disconnected.
+	 */
+	private int idleTimeoutSeconds = 45;
+
+	/**
+	 * The number of bytes of messages that may be waiting to be written to a
+	 * single client, beyond which the client is disconnected. A value of 0
+	 * means there's no limit.
+	 */
+	private long maxOutboundQueueBytes = 8 * 1024 * 1024;
+
+	/**
+	 * The number of seconds that the server may take to shut down. Clients
+	 * that haven't been disconnected cleanly by then are disconnected
+	 * forcibly.
+	 */
+	private int shutdownTimeoutSeconds = 10;
+
+	/**
+	 * The minimum level of log events to write.
+	 */
+	private LogLevel logLevel = LogLevel.INFO;
+
+	/**
+	 * Levels for individual components, like "ChatHandler", which override
+	 * {@link ServerConfig#logLevel}. This may be null.
+	 */
+	private Map<String, LogLevel> logLevels;
+
+	/**
+	 * The maximum number of log events that may wait to be written. When the
+	 * buffer is full, new events are dropped.
+	 */
+	private int logBufferSize = 8192;
+
+	/**
+	 * The number of milliseconds after which a message handler is reported
+	 * as slow, with a stack trace of the thread that's running it. If this is
+	 * 0, handlers are not watched.
+	 */
+	private int handlerSlowThresholdMillis = 1000;
+
+	/**
+	 * The number of members that a channel must have for its chats to be
+	 * delivered in batches, once per tick. If this is 0, chats are never
+	 * batched.
+	 */
+	private int chatBatchThreshold = 1000;
+
+	/**
+	 * The number of milliseconds for which chats are collected into a batch.
+	 */
+	private int chatBatchTickMillis = 20;
+
+	/**
+	 * The number of milliseconds for which users joining and leaving are
+	 * collected, before clients are told about them in a single update.
+	 */
+	private int presenceCoalesceMillis = 100;
+
+	/**
+	 * Limits on how often each client may send certain types of messages, by
+	 * the simple name of the message type, like "Chat". Types without a limit
+	 * may be sent as often as the client likes.
+	 */
+	private Map<String, RateLimit> rateLimits = new HashMap<>(Map.of(
+			"Chat", new RateLimit(10, 20),
+			"ChatHistoryRequest", new RateLimit(2, 5),
+			"MoveToChannel", new RateLimit(5, 10),
+			"ChannelDirectoryRequest", new RateLimit(5, 20)
+	));
+
+	/**
+	 * The maximum number of client connections that this server accepts at
+	 * once. If this is 0, there is no limit.
+	 */
+	private int maxConnections = 0;
+
+	/**
+	 * Settings for shedding expensive requests when the server is overloaded.
+	 */
+	private AdmissionConfig admission = new AdmissionConfig();
+
+	/**
+	 * The path of a Unix domain socket on which to also accept connections,
+	 * for clients on the same host. If this is null, no such socket is opened.
+	 */
+	private String unixSocketPath;
+
+	/**
+	 * Configuration for running this server as one node of a cluster. If this
+	 * is null, the server runs on its own.
+	 */
+	private ClusterConfig cluster;
+
 	/**
 	 * The path at which this config is stored.
 	 */
@@ -44,23 +185,161 @@ public final class ServerConfig {
 		private String description;
 	}
 
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static final class ClusterConfig {
+		/**
+		 * The id of this node. This must be the id of one of the nodes.
+		 */
+		private String nodeId;
+
+		/**
+		 * The list of all nodes in the cluster, including this one.
+		 */
+		private List<NodeConfig> nodes;
+
+		/**
+		 * The secret that's shared by all nodes of the cluster, which they use
+		 * to prove to each other that they belong to the cluster.
+		 */
+		private String secret;
+
+		/**
+		 * Gets the number of this node, which is put in the ids that it
+		 * generates, so that they never collide with the ids from other nodes.
+		 * @return The number of this node.
+		 * @throws IllegalArgumentException If two nodes have the same number,
+		 * a number is out of range, or this node isn't one of the nodes.
+		 */
+		@JsonIgnore
+		public int getLocalNodeNumber() {
+			var numbers = new HashSet<Integer>();
+			Integer localNumber = null;
+			for (int i = 0; i < this.nodes.size(); i++) {
+				var node = this.nodes.get(i);
+				int number = node.getNumber() != null ? node.getNumber() : i;
+				if (number < 0 || number > TimeOrderedIdProvider.MAX_NODE) {
+					throw new IllegalArgumentException("The number of cluster node " + node.getId() + " must be between 0 and " + TimeOrderedIdProvider.MAX_NODE + ".");
+				}
+				if (!numbers.add(number)) {
+					throw new IllegalArgumentException("More than one cluster node has the number " + number + ".");
+				}
+				if (node.getId().equals(this.nodeId)) localNumber = number;
+			}
+			if (localNumber == null) {
+				throw new IllegalArgumentException("The cluster's list of nodes doesn't contain this node's id: " + this.nodeId);
+			}
+			return localNumber;
+		}
+	}
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static final class NodeConfig {
+		private String id;
+		private String host;
+
+		/**
+		 * The port on which the node accepts links from other nodes. This is
+		 * separate from the port that clients connect to.
+		 */
+		private int port;
+
+		/**
+		 * The number of the node, which must be different for each node. If
+		 * this is null, the node's position in the list of nodes is used.
+		 */
+		private Integer number;
+	}
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static final class RateLimit {
+		/**
+		 * The number of messages that may be sent per second, on average. If
+		 * this is 0 or less, there is no limit.
+		 */
+		private double perSecond;
+
+		/**
+		 * The number of messages that may be sent at once, after a quiet
+		 * period.
+		 */
+		private int burst;
+	}
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static final class AdmissionConfig {
+		/**
+		 * Whether to shed expensive requests when the server is overloaded.
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * The number of message handlers that may be running at once before
+		 * the server is considered overloaded.
+		 */
+		private int maxHandlersInFlight = 64;
+
+		/**
+		 * The number of logins and registrations that may be waiting for
+		 * password hashing before the server is considered overloaded.
+		 */
+		private int maxAuthQueueDepth = 100;
+
+		/**
+		 * The average number of milliseconds that handling a message may take
+		 * before the server is considered overloaded.
+		 */
+		private double maxHandlerMillis = 250;
+
+		/**
+		 * The fraction of the heap that may still be in use after garbage
+		 * collection before the server is considered overloaded.
+		 */
+		private double maxHeapFraction = 0.9;
+
+		/**
+		 * The base number of milliseconds after which clients are told to retry
+		 * a shed request. This grows with the server's load.
+		 */
+		private long retryAfterMillis = 2000;
+	}
+
+	/**
+	 * Creates a new configuration with default values, which is not backed by
+	 * any file. This can be used to configure a server programmatically, for
+	 * example when embedding it in tests.
+	 * @param idProvider The id provider to use to generate the default
+	 *                   channel's id.
+	 * @return The configuration.
+	 */
+	public static ServerConfig defaults(IdProvider idProvider) {
+		ServerConfig config = new ServerConfig();
+		config.setName("My Concord Server");
+		config.setDescription("A concord server for my friends and I.");
+		config.setPort(8123);
+		config.setAcceptAllNewClients(false);
+		config.setChatHistoryMaxCount(100);
+		config.setChatHistoryDefaultCount(50);
+		config.setMaxMessageLength(8192);
+		config.setDefaultChannel("general");
+		config.setChannels(new ArrayList<>(List.of(new ChannelConfig(idProvider.newId().toString(), "general", "Default channel for general discussion."))));
+		config.setDiscoveryServers(List.of());
+		return config;
+	}
+
 	public static ServerConfig loadOrCreate(Path filePath, IdProvider idProvider) {
 		ObjectMapper mapper = new ObjectMapper();
 		ServerConfig config;
 		if (Files.notExists(filePath)) {
-			config = new ServerConfig(
-					"My Concord Server",
-					"A concord server for my friends and I.",
-					8123,
-					false,
-					100,
-					50,
-					8192,
-					"general",
-					List.of(new ChannelConfig(idProvider.newId().toString(), "general", "Default channel for general discussion.")),
-					List.of(),
-					filePath
-			);
+			config = defaults(idProvider);
+			config.setFilePath(filePath);
 			try (var out = Files.newOutputStream(filePath)) {
 				mapper.writerWithDefaultPrettyPrinter().writeValue(out, config);
 			} catch (IOException e) {
@@ -79,7 +358,13 @@ public final class ServerConfig {
 		return config;
 	}
 
+	/**
+	 * Saves this configuration to the file it was loaded from. If it was not
+	 * loaded from a file, this does nothing.
+	 * @throws IOException If the file could not be written.
+	 */
 	public void save() throws IOException {
+		if (filePath == null) return;
 		ObjectMapper mapper = new ObjectMapper();
 		try (var out = Files.newOutputStream(filePath)) {
 			mapper.writerWithDefaultPrettyPrinter().writeValue(out, this);
@@ -0,0 +1,28 @@
+package nl.andrewl.concord_server.event;
+
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryRequest;
+import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.client.ClientThread;
+
+import java.io.IOException;
+
+/**
+ * Handles client requests for a page of the channel directory. The page size
+ * is limited by the server's configured maximum. The first page of the whole
+ * directory, which every client asks for when it logs in, is sent from the
+ * directory's serialized snapshot.
+ */
+public class ChannelDirectoryRequestHandler implements MessageHandler<ChannelDirectoryRequest> {
+	@Override
+	public void handle(ChannelDirectoryRequest msg, ClientThread client, ConcordServer server) throws IOException {
+		int maxPageSize = server.getConfig().getChannelDirectoryPageSize();
+		int limit = msg.limit() < 1 ? maxPageSize : Math.min(msg.limit(), maxPageSize);
+		String prefix = msg.prefix() == null ? "" : msg.prefix().trim().toLowerCase();
+		var directory = server.getChannelManager().getDirectory();
+		if (prefix.isEmpty() && msg.after() == null) {
+			client.sendToClient(directory.getFirstPageBytes(limit));
+		} else {
+			client.sendToClient(directory.getPage(prefix, msg.after(), limit));
+		}
+	}
+}
@@ -2,7 +2,9 @@ package nl.andrewl.concord_server.event;
 
 import nl.andrewl.concord_core.msg.types.Error;
 import nl.andrewl.concord_core.msg.types.channel.MoveToChannel;
+import nl.andrewl.concord_server.AdmissionController;
 import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.channel.Channel;
 import nl.andrewl.concord_server.client.ClientThread;
 
 import java.util.Set;
@@ -22,11 +24,20 @@ public class ChannelMoveHandler implements MessageHandler<MoveToChannel> {
 		} else {
 			var optionalClient = server.getClientManager().getClientById(msg.id());
 			if (optionalClient.isPresent()) {
-				var privateChannel = server.getChannelManager().getPrivateChannel(Set.of(
-						client.getClientId(),
-						optionalClient.get().getClientId()
-				));
-				server.getChannelManager().moveToChannel(client, privateChannel);
+				var clientIds = Set.of(client.getClientId(), optionalClient.get().getClientId());
+				// Loading or creating a private channel is expensive, so it may be shed.
+				if (!server.getChannelManager().isPrivateChannelLoaded(clientIds)) {
+					long retryAfter = server.getAdmissionController().admit(AdmissionController.Work.PRIVATE_CHANNEL_CREATION);
+					if (retryAfter > 0) {
+						client.sendToClient(Error.retryLater("The server is too busy to open private channels right now.", retryAfter));
+						return;
+					}
+				}
+				// If the channel is unloaded right after we get it, get it again.
+				Channel privateChannel;
+				do {
+					privateChannel = server.getChannelManager().getPrivateChannel(clientIds);
+				} while (!server.getChannelManager().moveToChannel(client, privateChannel));
 			} else {
 				client.sendToClient(Error.warning("Unknown channel or client id."));
 			}
@@ -4,17 +4,25 @@ import nl.andrewl.concord_core.msg.types.Error;
 import nl.andrewl.concord_core.msg.types.chat.Chat;
 import nl.andrewl.concord_server.ConcordServer;
 import nl.andrewl.concord_server.client.ClientThread;
-import org.dizitart.no2.Document;
+import nl.andrewl.concord_server.cluster.ClusterManager;
+import nl.andrewl.concord_server.logging.ServerLogger;
 
 import java.io.IOException;
-import java.util.Map;
 
 /**
  * This handler is responsible for taking incoming chat messages and saving them
  * to the channel's message collection, and then relaying the new message to all
- * clients in the channel.
+ * clients in the channel. If the server is part of a cluster, chats in a
+ * channel that's owned by another node are forwarded to that node instead,
+ * and refused while that node can't be reached.
  */
 public class ChatHandler implements MessageHandler<Chat> {
+	private final ServerLogger log;
+
+	public ChatHandler(ServerLogger log) {
+		this.log = log;
+	}
+
 	@Override
 	public void handle(Chat msg, ClientThread client, ConcordServer server) throws IOException {
 		if (msg.message().length() > server.getConfig().getMaxMessageLength()) {
@@ -28,16 +36,17 @@ public class ChatHandler implements MessageHandler<Chat> {
 		know is safe.
 		 */
 		msg = new Chat(server.getIdProvider().newId(), msg);
-		var collection = client.getCurrentChannel().getMessageCollection();
-		Document doc = new Document(Map.of(
-				"id", msg.id(),
-				"senderId", msg.senderId(),
-				"senderNickname", msg.senderNickname(),
-				"timestamp", msg.timestamp(),
-				"message", msg.message()
-		));
-		collection.insert(doc);
-		System.out.printf("#%s | %s: %s\n", client.getCurrentChannel(), client.getClientNickname(), msg.message());
-		client.getCurrentChannel().sendMessage(msg);
+		var channel = client.getCurrentChannel();
+		var cluster = server.getClusterManager();
+		if (cluster != null && !cluster.isOwner(channel)) {
+			// Only the owner may number the channel's chats, so if it can't be
+			// reached, the chat can't be sent until it's back.
+			if (!cluster.forwardChat(channel, msg)) {
+				client.sendToClient(Error.retryLater("The server that stores this channel can't be reached right now.", ClusterManager.RECONNECT_MILLIS));
+			}
+			return;
+		}
+		msg = channel.publishChat(msg, cluster == null ? null : chat -> cluster.fanOut(channel, chat));
+		this.log.info("#{} | {}: {}", channel, client.getClientNickname(), msg.message());
 	}
 }
@@ -4,6 +4,7 @@ import nl.andrewl.concord_core.msg.types.Error;
 import nl.andrewl.concord_core.msg.types.chat.Chat;
 import nl.andrewl.concord_core.msg.types.chat.ChatHistoryRequest;
 import nl.andrewl.concord_core.msg.types.chat.ChatHistoryResponse;
+import nl.andrewl.concord_server.AdmissionController;
 import nl.andrewl.concord_server.ConcordServer;
 import nl.andrewl.concord_server.channel.Channel;
 import nl.andrewl.concord_server.client.ClientThread;
@@ -29,38 +30,127 @@ public class ChatHistoryRequestHandler implements MessageHandler<ChatHistoryRequ
 			client.sendToClient(Error.warning("Unknown channel id."));
 			return;
 		}
-		var params = msg.getQueryAsMap();
-		if (params.containsKey("id")) {
-			this.handleIdRequest(client, channel, params.get("id"));
-		} else {
-			Long count = this.getOrDefault(params, "count", (long) server.getConfig().getChatHistoryDefaultCount());
-			if (count > server.getConfig().getChatHistoryMaxCount()) {
+		if (this.isLarge(msg, server)) {
+			long retryAfter = server.getAdmissionController().admit(AdmissionController.Work.LARGE_HISTORY);
+			if (retryAfter > 0) {
+				client.sendToClient(Error.retryLater("The server is too busy to load this much chat history right now.", retryAfter));
 				return;
 			}
-			Long from = this.getOrDefault(params, "from", null);
-			Long to = this.getOrDefault(params, "to", null);
-			client.sendToClient(this.getResponse(channel, count, from, to));
 		}
+		var cluster = server.getClusterManager();
+		if (cluster != null && cluster.forwardHistoryRequest(channel, client.getClientId(), msg)) {
+			return;
+		}
+		var response = this.buildResponse(msg, channel, server);
+		if (response != null) {
+			client.sendToClient(response);
+		}
+	}
+
+	/**
+	 * Checks whether a request is for more than the default number of
+	 * messages, in which case it may be shed when the server is busy.
+	 * @param msg The request.
+	 * @param server The server.
+	 * @return True if the request is large.
+	 */
+	private boolean isLarge(ChatHistoryRequest msg, ConcordServer server) {
+		var params = msg.getQueryAsMap();
+		if (params.containsKey("id")) return false;
+		long defaultCount = server.getConfig().getChatHistoryDefaultCount();
+		return this.getOrDefault(params, "count", defaultCount) > defaultCount;
+	}
+
+	/**
+	 * Builds the response to a chat history request for a channel.
+	 * @param msg The request.
+	 * @param channel The channel whose history is requested.
+	 * @param server The server.
+	 * @return The response, or null if the request is not valid.
+	 */
+	public ChatHistoryResponse buildResponse(ChatHistoryRequest msg, Channel channel, ConcordServer server) {
+		var params = msg.getQueryAsMap();
+		if (params.containsKey("id")) {
+			return this.getIdResponse(channel, params.get("id"));
+		}
+		Long count = this.getOrDefault(params, "count", (long) server.getConfig().getChatHistoryDefaultCount());
+		if (count > server.getConfig().getChatHistoryMaxCount()) {
+			return null;
+		}
+		Long after = this.getOrDefault(params, "after", null);
+		Long before = this.getOrDefault(params, "before", null);
+		Long from = this.getOrDefault(params, "from", null);
+		Long to = this.getOrDefault(params, "to", null);
+		if (after == null && before == null && (from != null || to != null)) {
+			return this.getResponse(channel, count, from, to);
+		}
+		return this.getSequenceResponse(channel, count, after, before);
 	}
 
 	/**
-	 * Handles a request for a single message from a channel.
-	 * @param client The client who's requesting the data.
+	 * Gets a response for a request for a single message from a channel.
 	 * @param channel The channel in which to search for the message.
 	 * @param id The id of the message.
+	 * @return A chat history response containing the message, if it was found.
 	 */
-	private void handleIdRequest(ClientThread client, Channel channel, String id) {
-		var cursor = channel.getMessageCollection().find(Filters.eq("id", id));
-		List<Chat> chats = new ArrayList<>(1);
-		for (var doc : cursor) {
-			chats.add(this.read(doc));
+	private ChatHistoryResponse getIdResponse(Channel channel, String id) {
+		List<Chat> chats = channel.useMessageCollection(col -> {
+			List<Chat> found = new ArrayList<>(1);
+			for (var doc : col.find(Filters.eq("id", id))) {
+				found.add(this.read(doc));
+			}
+			return found;
+		});
+		return new ChatHistoryResponse(channel.getId(), chats.toArray(new Chat[0]));
+	}
+
+	/**
+	 * Gets a response for a request for a range of messages by their sequence
+	 * numbers. Since the messages in a channel are numbered without any gaps,
+	 * the range of sequence numbers to get is known up front, and is looked up
+	 * directly in the sequence index.
+	 * @param channel The channel to get chat history from.
+	 * @param count The number of messages to retrieve.
+	 * @param after If not null, get the oldest messages after this sequence
+	 *              number.
+	 * @param before If not null, only include messages before this sequence
+	 *               number. If after is null, get the newest ones.
+	 * @return A chat history response.
+	 */
+	private ChatHistoryResponse getSequenceResponse(Channel channel, long count, Long after, Long before) {
+		long last = channel.getLastSequence();
+		long max = before == null ? last : Math.min(before - 1, last);
+		long min;
+		if (after != null) {
+			min = Math.max(after + 1, 1);
+			max = Math.min(max, min + count - 1);
+		} else {
+			min = Math.max(max - count + 1, 1);
 		}
-		client.sendToClient(new ChatHistoryResponse(channel.getId(), chats.toArray(new Chat[0])));
+		if (count <= 0 || min > max) {
+			return new ChatHistoryResponse(channel.getId(), new Chat[0]);
+		}
+		Long[] sequences = new Long[(int) (max - min + 1)];
+		for (int i = 0; i < sequences.length; i++) {
+			sequences[i] = min + i;
+		}
+		List<Chat> chats = channel.useMessageCollection(col -> {
+			var cursor = col.find(
+					Filters.in("sequence", (Object[]) sequences),
+					FindOptions.sort("sequence", SortOrder.Ascending)
+			);
+			List<Chat> found = new ArrayList<>(sequences.length);
+			for (Document doc : cursor) {
+				found.add(this.read(doc));
+			}
+			return found;
+		});
+		return new ChatHistoryResponse(channel.getId(), chats.toArray(new Chat[0]));
 	}
 
 	/**
-	 * Gets a response for a standard chat history request, using a standard set
-	 * of parameters.
+	 * Gets a response for a request for messages within a range of
+	 * timestamps.
 	 * @param channel The channel to get chat history from.
 	 * @param count The number of messages to retrieve.
 	 * @param from If not null, only include messages made after this timestamp.
@@ -68,8 +158,6 @@ public class ChatHistoryRequestHandler implements MessageHandler<ChatHistoryRequ
 	 * @return A chat history response.
 	 */
 	private ChatHistoryResponse getResponse(Channel channel, long count, Long from, Long to) {
-		var col = channel.getMessageCollection();
-		Cursor cursor;
 		FindOptions options = FindOptions.sort("timestamp", SortOrder.Descending).thenLimit(0, (int) count);
 		List<Filter> filters = new ArrayList<>(2);
 		if (from != null) {
@@ -78,16 +166,19 @@ public class ChatHistoryRequestHandler implements MessageHandler<ChatHistoryRequ
 		if (to != null) {
 			filters.add(Filters.lt("timestamp", to));
 		}
-		if (filters.isEmpty()) {
-			cursor = col.find(options);
-		} else {
-			cursor = col.find(Filters.and(filters.toArray(new Filter[0])), options);
-		}
-
-		List<Chat> chats = new ArrayList<>((int) count);
-		for (Document doc : cursor) {
-			chats.add(this.read(doc));
-		}
+		List<Chat> chats = channel.useMessageCollection(col -> {
+			Cursor cursor;
+			if (filters.isEmpty()) {
+				cursor = col.find(options);
+			} else {
+				cursor = col.find(Filters.and(filters.toArray(new Filter[0])), options);
+			}
+			List<Chat> found = new ArrayList<>((int) count);
+			for (Document doc : cursor) {
+				found.add(this.read(doc));
+			}
+			return found;
+		});
 		Collections.reverse(chats);
 		return new ChatHistoryResponse(channel.getId(), chats.toArray(new Chat[0]));
 	}
@@ -99,8 +190,10 @@ public class ChatHistoryRequestHandler implements MessageHandler<ChatHistoryRequ
 	 * @return The chat that was read.
 	 */
 	private Chat read(Document doc) {
+		Long sequence = doc.get("sequence", Long.class);
 		return new Chat(
 				doc.get("id", UUID.class),
+				sequence == null ? 0 : sequence,
 				doc.get("senderId", UUID.class),
 				doc.get("senderNickname", String.class),
 				doc.get("timestamp", Long.class),
@@ -1,31 +1,50 @@
 package nl.andrewl.concord_server.event;
 
-import lombok.extern.java.Log;
+import lombok.Getter;
 import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_core.msg.types.Pong;
 import nl.andrewl.concord_core.msg.types.chat.Chat;
 import nl.andrewl.concord_core.msg.types.chat.ChatHistoryRequest;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryRequest;
 import nl.andrewl.concord_core.msg.types.channel.MoveToChannel;
 import nl.andrewl.concord_server.ConcordServer;
 import nl.andrewl.concord_server.client.ClientThread;
+import nl.andrewl.concord_server.logging.ServerLogger;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The event manager is responsible for the server's ability to respond to
  * various client requests.
  */
-@Log
 public class EventManager {
 	private final Map<Class<? extends Message>, MessageHandler<?>> messageHandlers;
 	private final ConcordServer server;
+	private final ServerLogger log;
+
+	/**
+	 * The watchdog which reports handlers that take too long.
+	 */
+	@Getter
+	private final HandlerWatchdog watchdog;
+
+	/**
+	 * The number of handlers that are currently running.
+	 */
+	private final LongAdder handlersInFlight = new LongAdder();
 
 	public EventManager(ConcordServer server) {
 		this.server = server;
+		this.log = server.getLogger().named(getClass());
+		this.watchdog = new HandlerWatchdog(server);
 		this.messageHandlers = new HashMap<>();
-		this.messageHandlers.put(Chat.class, new ChatHandler());
+		this.messageHandlers.put(Chat.class, new ChatHandler(server.getLogger().named(ChatHandler.class)));
 		this.messageHandlers.put(MoveToChannel.class, new ChannelMoveHandler());
 		this.messageHandlers.put(ChatHistoryRequest.class, new ChatHistoryRequestHandler());
+		this.messageHandlers.put(ChannelDirectoryRequest.class, new ChannelDirectoryRequestHandler());
+		this.messageHandlers.put(Pong.class, new PongHandler());
 	}
 
 	/**
@@ -47,12 +66,23 @@ public class EventManager {
 	public <T extends Message> void handle(T message, ClientThread client) {
 		MessageHandler<T> handler = (MessageHandler<T>) this.messageHandlers.get(message.getClass());
 		if (handler != null) {
+			this.watchdog.begin(handler.getClass().getSimpleName(), message.getClass().getSimpleName(), client.getClientId());
+			this.handlersInFlight.increment();
 			try {
 				handler.handle(message, client, this.server);
 			} catch (Exception e) {
-				e.printStackTrace();
-				log.warning("Exception occurred while handling message: " + e.getMessage());
+				this.log.warning("Exception occurred while handling {}.", message.getClass().getSimpleName(), e);
+			} finally {
+				this.handlersInFlight.decrement();
+				this.watchdog.end();
 			}
 		}
 	}
+
+	/**
+	 * @return The number of message handlers that are currently running.
+	 */
+	public long getHandlersInFlight() {
+		return this.handlersInFlight.sum();
+	}
 }
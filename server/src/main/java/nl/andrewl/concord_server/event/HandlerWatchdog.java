@@ -0,0 +1,213 @@
+package nl.andrewl.concord_server.event;
+
+import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.logging.ServerLogger;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of the message handlers that are currently running, and reports
+ * any that take longer than the configured threshold, together with the stack
+ * trace of the thread that's running it, so that slow queries and other stalls
+ * can be found without having to attach a debugger.
+ * <p>
+ *     Each thread that runs handlers gets its own {@link Slot}, which it
+ *     updates with a few volatile writes when a handler starts and ends. A
+ *     scheduled task periodically scans the slots, so the watchdog adds almost
+ *     nothing to the cost of handling a message.
+ * </p>
+ */
+public class HandlerWatchdog {
+	private final long thresholdNanos;
+	private final ServerLogger log;
+
+	private final ThreadLocal<Slot> slot = ThreadLocal.withInitial(this::newSlot);
+	private final Queue<Slot> slots = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Statistics for each handler, by the handler's name.
+	 */
+	private final Map<String, HandlerStats> stats = new ConcurrentHashMap<>();
+
+	private final LongAdder stuckReports = new LongAdder();
+	private volatile String lastReport;
+
+	public HandlerWatchdog(ConcordServer server) {
+		this.log = server.getLogger().named(getClass());
+		long thresholdMillis = server.getConfig().getHandlerSlowThresholdMillis();
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		if (thresholdMillis > 0) {
+			long period = Math.max(10, thresholdMillis / 2);
+			server.getScheduledExecutorService().scheduleAtFixedRate(this::scan, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Marks the start of a handler on the current thread. Each call must be
+	 * followed by a call to {@link HandlerWatchdog#end()} on the same thread.
+	 * @param handlerName The name of the handler.
+	 * @param messageType The type of message being handled.
+	 * @param clientId The id of the client that sent the message, if known.
+	 */
+	public void begin(String handlerName, String messageType, UUID clientId) {
+		if (this.thresholdNanos <= 0) return;
+		Slot s = this.slot.get();
+		s.handlerName = handlerName;
+		s.messageType = messageType;
+		s.clientId = clientId;
+		s.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Marks the end of the handler that's running on the current thread, and
+	 * records its duration.
+	 */
+	public void end() {
+		if (this.thresholdNanos <= 0) return;
+		Slot s = this.slot.get();
+		long elapsed = System.nanoTime() - s.startNanos;
+		s.startNanos = 0;
+		this.stats.computeIfAbsent(s.handlerName, k -> new HandlerStats()).record(elapsed, elapsed >= this.thresholdNanos);
+	}
+
+	private Slot newSlot() {
+		Slot s = new Slot(Thread.currentThread());
+		this.slots.add(s);
+		return s;
+	}
+
+	/**
+	 * Checks all slots for handlers which have been running for longer than
+	 * the threshold, and reports each one once.
+	 */
+	private void scan() {
+		long now = System.nanoTime();
+		for (var s : this.slots) {
+			if (!s.thread.isAlive()) {
+				this.slots.remove(s);
+				continue;
+			}
+			long start = s.startNanos;
+			if (start == 0 || start == s.reportedStartNanos || now - start < this.thresholdNanos) continue;
+			s.reportedStartNanos = start;
+			this.report(s, now - start);
+		}
+	}
+
+	private void report(Slot s, long elapsedNanos) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(
+				"Handler %s has been running for %d ms on thread %s, handling %s from client %s.",
+				s.handlerName,
+				TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+				s.thread.getName(),
+				s.messageType,
+				s.clientId
+		));
+		for (var element : s.thread.getStackTrace()) {
+			sb.append("\n\tat ").append(element);
+		}
+		String report = sb.toString();
+		this.lastReport = report;
+		this.stuckReports.increment();
+		this.stats.computeIfAbsent(s.handlerName, k -> new HandlerStats()).stuck.increment();
+		this.log.warning(report);
+	}
+
+	/**
+	 * @return An unmodifiable view of the statistics for each handler, by the
+	 * handler's name.
+	 */
+	public Map<String, HandlerStats> getStats() {
+		return Map.copyOf(this.stats);
+	}
+
+	/**
+	 * @return The number of times that a handler was reported for running
+	 * longer than the threshold.
+	 */
+	public long getStuckReports() {
+		return this.stuckReports.sum();
+	}
+
+	/**
+	 * @return The most recent report, including the stack trace, or null if
+	 * there have been none.
+	 */
+	public String getLastReport() {
+		return this.lastReport;
+	}
+
+	/**
+	 * The state of the handler that's running on a single thread. Only the
+	 * owning thread writes to it, except for {@link Slot#reportedStartNanos},
+	 * which only the watchdog's scan writes to.
+	 */
+	private static final class Slot {
+		private final Thread thread;
+		private volatile String handlerName;
+		private volatile String messageType;
+		private volatile UUID clientId;
+
+		/**
+		 * The time at which the current handler started, or 0 if no handler is
+		 * running.
+		 */
+		private volatile long startNanos;
+
+		/**
+		 * The start time of the last handler that was reported, so that each
+		 * execution is only reported once.
+		 */
+		private long reportedStartNanos;
+
+		private Slot(Thread thread) {
+			this.thread = thread;
+		}
+	}
+
+	public static final class HandlerStats {
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder slowCalls = new LongAdder();
+		private final LongAdder stuck = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		private void record(long nanos, boolean slow) {
+			this.calls.increment();
+			if (slow) this.slowCalls.increment();
+			if (nanos > this.maxNanos.get()) {
+				this.maxNanos.accumulateAndGet(nanos, Math::max);
+			}
+		}
+
+		public long getCalls() {
+			return this.calls.sum();
+		}
+
+		/**
+		 * @return The number of calls that took longer than the threshold.
+		 */
+		public long getSlowCalls() {
+			return this.slowCalls.sum();
+		}
+
+		/**
+		 * @return The number of times that a call was reported while it was
+		 * still running.
+		 */
+		public long getStuckReports() {
+			return this.stuck.sum();
+		}
+
+		public double getMaxMillis() {
+			return this.maxNanos.get() / 1_000_000.0;
+		}
+	}
+}
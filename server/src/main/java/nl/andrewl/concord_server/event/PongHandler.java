@@ -0,0 +1,16 @@
+package nl.andrewl.concord_server.event;
+
+import nl.andrewl.concord_core.msg.types.Pong;
+import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.client.ClientThread;
+
+/**
+ * Handles a client's response to a heartbeat ping, by recording the round-trip
+ * time of the client's connection.
+ */
+public class PongHandler implements MessageHandler<Pong> {
+	@Override
+	public void handle(Pong msg, ClientThread client, ConcordServer server) {
+		client.setRoundTripTimeNanos(System.nanoTime() - msg.timestamp());
+	}
+}
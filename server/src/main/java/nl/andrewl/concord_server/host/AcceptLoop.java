@@ -0,0 +1,146 @@
+package nl.andrewl.concord_server.host;
+
+import nl.andrewl.concord_core.transport.ChannelConnection;
+import nl.andrewl.concord_core.transport.Connection;
+import nl.andrewl.concord_server.logging.ServerLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * A single thread which accepts TCP connections on any number of ports, using
+ * a {@link Selector}. Each port is bound by a {@link Listener}, which routes
+ * its connections to a handler, usually a server. This means that many
+ * servers in the same process don't each need their own accept thread.
+ */
+public class AcceptLoop implements Closeable {
+	private final Selector selector;
+	private final Queue<Listener> pendingListeners = new ConcurrentLinkedQueue<>();
+	private volatile boolean running = true;
+	private final ServerLogger log;
+
+	public AcceptLoop(ServerLogger log) throws IOException {
+		this.log = log;
+		this.selector = Selector.open();
+		Thread thread = new Thread(this::run, "concord-accept");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Binds a new listener to the given port. The listener doesn't accept any
+	 * connections until it's started.
+	 * @param port The port to bind to, or 0 to pick any free port.
+	 * @return The listener.
+	 * @throws IOException If the port could not be bound.
+	 */
+	public Listener bind(int port) throws IOException {
+		var channel = ServerSocketChannel.open();
+		channel.bind(new InetSocketAddress(port));
+		channel.configureBlocking(false);
+		return new Listener(channel);
+	}
+
+	private void run() {
+		while (this.running) {
+			try {
+				this.selector.select();
+				Listener listener;
+				while ((listener = this.pendingListeners.poll()) != null) {
+					if (listener.channel.isOpen()) {
+						listener.channel.register(this.selector, SelectionKey.OP_ACCEPT, listener);
+					}
+				}
+				var keys = this.selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					var key = keys.next();
+					keys.remove();
+					if (key.isValid() && key.isAcceptable()) {
+						this.accept((Listener) key.attachment());
+					}
+				}
+			} catch (ClosedSelectorException e) {
+				break;
+			} catch (IOException e) {
+				this.log.error("Error in accept loop: {}", e.getMessage());
+			}
+		}
+	}
+
+	private void accept(Listener listener) {
+		SocketChannel channel;
+		try {
+			while ((channel = listener.channel.accept()) != null) {
+				channel.configureBlocking(true);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				var connection = new ChannelConnection(channel, channel.getRemoteAddress().toString());
+				try {
+					listener.handler.accept(connection);
+				} catch (Exception e) {
+					this.log.error("Could not handle new connection.", e);
+					connection.close();
+				}
+			}
+		} catch (IOException e) {
+			this.log.warning("Could not accept new client connection: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Stops accepting connections on all ports.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.running = false;
+		this.selector.close();
+	}
+
+	/**
+	 * A bound port, which accepts connections once it's started.
+	 */
+	public class Listener implements Closeable {
+		private final ServerSocketChannel channel;
+		private Consumer<Connection> handler;
+
+		private Listener(ServerSocketChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * @return The port that this listener is bound to.
+		 */
+		public int getPort() {
+			return this.channel.socket().getLocalPort();
+		}
+
+		/**
+		 * Starts accepting connections. The handler is called on the accept
+		 * thread, so it should return quickly.
+		 * @param handler The handler to give accepted connections to.
+		 */
+		public void start(Consumer<Connection> handler) {
+			this.handler = handler;
+			pendingListeners.add(this);
+			selector.wakeup();
+		}
+
+		/**
+		 * Stops accepting connections, and unbinds the port.
+		 */
+		@Override
+		public void close() throws IOException {
+			this.channel.close();
+			selector.wakeup();
+		}
+	}
+}
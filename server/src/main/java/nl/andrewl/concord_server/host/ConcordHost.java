@@ -0,0 +1,96 @@
+package nl.andrewl.concord_server.host;
+
+import lombok.Getter;
+import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.cli.HostCli;
+import nl.andrewl.concord_server.config.HostConfig;
+import nl.andrewl.concord_server.config.ServerConfig;
+import nl.andrewl.concord_server.util.UUIDProvider;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hosts many independent servers, called tenants, in a single process. All
+ * tenants share one {@link ServerRuntime}, so that a host with hundreds of
+ * small servers doesn't need hundreds of thread pools. Each tenant listens on
+ * its own port, and keeps its own configuration, database, and resource usage.
+ */
+public class ConcordHost {
+	private static final Path CONFIG_FILE = Path.of("host-config.json");
+
+	@Getter
+	private final ServerRuntime runtime;
+
+	/**
+	 * The tenant servers, by their id.
+	 */
+	private final Map<String, ConcordServer> tenants = new LinkedHashMap<>();
+
+	@Getter
+	private volatile boolean running;
+
+	public ConcordHost(HostConfig config) throws IOException {
+		this.runtime = new ServerRuntime(config.getAuthThreadShare(), config.getLogBufferSize());
+		var idProvider = new UUIDProvider();
+		for (var tenant : config.getTenants()) {
+			if (this.tenants.containsKey(tenant.getId())) {
+				throw new IllegalArgumentException("Duplicate tenant id: " + tenant.getId());
+			}
+			var serverConfig = ServerConfig.loadOrCreate(Path.of(tenant.getConfigFile()), idProvider);
+			Path databaseFile = tenant.getDatabaseFile() == null ? null : Path.of(tenant.getDatabaseFile());
+			this.tenants.put(tenant.getId(), new ConcordServer(serverConfig, databaseFile, this.runtime));
+		}
+	}
+
+	/**
+	 * @return An unmodifiable view of the tenant servers, by their id.
+	 */
+	public Map<String, ConcordServer> getTenants() {
+		return Collections.unmodifiableMap(this.tenants);
+	}
+
+	/**
+	 * Starts all tenant servers.
+	 */
+	public void start() {
+		this.running = true;
+		this.tenants.forEach((id, server) -> {
+			server.start();
+			server.getLogger().info("Started tenant {} on port {}.", id, server.getPort());
+		});
+	}
+
+	/**
+	 * Stops all tenant servers, waits for them to shut down, and then stops the
+	 * shared runtime.
+	 */
+	public void stop() {
+		this.running = false;
+		this.tenants.values().forEach(ConcordServer::stop);
+		for (var server : this.tenants.values()) {
+			try {
+				server.awaitTermination();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		this.runtime.shutdown();
+	}
+
+	/**
+	 * Starts the host. Optionally, the path to the host configuration file can
+	 * be given as an argument.
+	 * @param args The command-line arguments.
+	 * @throws IOException If the host could not be started.
+	 */
+	public static void main(String[] args) throws IOException {
+		Path configFile = args.length > 0 ? Path.of(args[0]) : CONFIG_FILE;
+		var host = new ConcordHost(HostConfig.loadOrCreate(configFile));
+		host.start();
+		new HostCli(host).run();
+	}
+}
@@ -0,0 +1,108 @@
+package nl.andrewl.concord_server.host;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of the resources that a single server uses, so that when many
+ * servers share a process, a noisy one can be identified and limited.
+ */
+public class ResourceUsage {
+	private final AtomicInteger activeConnections = new AtomicInteger();
+	private final LongAdder acceptedConnections = new LongAdder();
+	private final LongAdder rejectedConnections = new LongAdder();
+	private final LongAdder messagesReceived = new LongAdder();
+	private final LongAdder messagesSent = new LongAdder();
+	private final LongAdder handlerNanos = new LongAdder();
+	private final LongAdder throttleEvents = new LongAdder();
+	private final LongAdder throttledNanos = new LongAdder();
+
+	/**
+	 * Tries to count a new connection, if the limit allows it.
+	 * @param maxConnections The maximum number of connections, or 0 for no
+	 *                       limit.
+	 * @return True if the connection may be opened, or false if it should be
+	 * rejected.
+	 */
+	public boolean tryOpenConnection(int maxConnections) {
+		int count;
+		do {
+			count = this.activeConnections.get();
+			if (maxConnections > 0 && count >= maxConnections) {
+				this.rejectedConnections.increment();
+				return false;
+			}
+		} while (!this.activeConnections.compareAndSet(count, count + 1));
+		this.acceptedConnections.increment();
+		return true;
+	}
+
+	public void closeConnection() {
+		this.activeConnections.decrementAndGet();
+	}
+
+	/**
+	 * Records that a message was received and handled.
+	 * @param nanos The time it took to handle the message.
+	 */
+	public void recordMessageReceived(long nanos) {
+		this.messagesReceived.increment();
+		this.handlerNanos.add(nanos);
+	}
+
+	/**
+	 * Records that a client sent more than its budget allows, and was made to
+	 * wait.
+	 * @param nanos The time that the client had to wait.
+	 */
+	public void recordThrottle(long nanos) {
+		this.throttleEvents.increment();
+		this.throttledNanos.add(nanos);
+	}
+
+	public void recordMessageSent() {
+		this.messagesSent.increment();
+	}
+
+	public int getActiveConnections() {
+		return this.activeConnections.get();
+	}
+
+	public long getAcceptedConnections() {
+		return this.acceptedConnections.sum();
+	}
+
+	public long getRejectedConnections() {
+		return this.rejectedConnections.sum();
+	}
+
+	public long getMessagesReceived() {
+		return this.messagesReceived.sum();
+	}
+
+	public long getMessagesSent() {
+		return this.messagesSent.sum();
+	}
+
+	/**
+	 * @return The number of times that a client was made to wait because it
+	 * sent more than its budget allows.
+	 */
+	public long getThrottleEvents() {
+		return this.throttleEvents.sum();
+	}
+
+	/**
+	 * @return The total time that clients were made to wait, in milliseconds.
+	 */
+	public double getThrottledMillis() {
+		return this.throttledNanos.sum() / 1_000_000.0;
+	}
+
+	/**
+	 * @return The total time spent handling messages, in milliseconds.
+	 */
+	public double getHandlerMillis() {
+		return this.handlerNanos.sum() / 1_000_000.0;
+	}
+}
@@ -0,0 +1,102 @@
+package nl.andrewl.concord_server.host;
+
+import nl.andrewl.concord_server.logging.LogBuffer;
+import nl.andrewl.concord_server.logging.LogLevel;
+import nl.andrewl.concord_server.logging.ServerLogger;
+import nl.andrewl.concord_server.util.ScopedExecutorService;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The set of threads that servers use to do their work, which can be shared by
+ * many servers in the same process. This includes a general-purpose worker
+ * pool, a scheduler for periodic tasks, a bounded pool for password hashing,
+ * and the loop which accepts new TCP connections.
+ * <p>
+ *     Each server gets its own {@link ScopedExecutorService} from the runtime,
+ *     so that it can cancel its own tasks when it stops, without affecting
+ *     other servers.
+ * </p>
+ */
+public class ServerRuntime {
+	private final ExecutorService workers;
+	private final ScheduledExecutorService scheduler;
+	private final ThreadPoolExecutor authExecutor;
+	private final AcceptLoop acceptLoop;
+	private final LogBuffer logBuffer;
+
+	/**
+	 * Constructs a new runtime and starts its threads.
+	 * @param authThreadShare The share of the machine's processor cores to use
+	 *                        for password hashing.
+	 * @param logBufferSize The maximum number of log events that may wait to
+	 *                      be written.
+	 * @throws IOException If the accept loop could not be opened.
+	 */
+	public ServerRuntime(double authThreadShare, int logBufferSize) throws IOException {
+		this.logBuffer = new LogBuffer(logBufferSize, System.out, System.err);
+		int cores = Runtime.getRuntime().availableProcessors();
+		this.workers = Executors.newCachedThreadPool(daemonThreads("concord-worker-"));
+		this.scheduler = Executors.newScheduledThreadPool(Math.max(2, cores / 4), daemonThreads("concord-scheduler-"));
+		int authThreads = Math.max(1, (int) Math.round(cores * authThreadShare));
+		this.authExecutor = new ThreadPoolExecutor(authThreads, authThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), daemonThreads("concord-auth-"));
+		this.acceptLoop = new AcceptLoop(new ServerLogger(this.logBuffer, "runtime", LogLevel.INFO, null));
+	}
+
+	/**
+	 * @return A new executor service for a single server, which runs its tasks
+	 * on this runtime's threads.
+	 */
+	public ScopedExecutorService newScope() {
+		return new ScopedExecutorService(this.workers, this.scheduler);
+	}
+
+	/**
+	 * @return The executor on which all password hashing and verification is
+	 * done.
+	 */
+	public ThreadPoolExecutor getAuthExecutor() {
+		return this.authExecutor;
+	}
+
+	/**
+	 * @return The buffer that all servers on this runtime log to.
+	 */
+	public LogBuffer getLogBuffer() {
+		return this.logBuffer;
+	}
+
+	/**
+	 * @return The loop which accepts new TCP connections.
+	 */
+	public AcceptLoop getAcceptLoop() {
+		return this.acceptLoop;
+	}
+
+	/**
+	 * Stops all of the runtime's threads. This should only be done once all
+	 * servers using the runtime have stopped.
+	 */
+	public void shutdown() {
+		try {
+			this.acceptLoop.close();
+		} catch (IOException e) {
+			System.err.println("Could not close the accept loop: " + e.getMessage());
+		}
+		this.scheduler.shutdown();
+		this.authExecutor.shutdown();
+		this.workers.shutdown();
+		this.logBuffer.close();
+	}
+
+	private static ThreadFactory daemonThreads(String namePrefix) {
+		var counter = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, namePrefix + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+}
@@ -0,0 +1,279 @@
+package nl.andrewl.concord_server.logging;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free buffer of log events, which are formatted and written
+ * by a single background thread. Threads that log an event only claim a slot
+ * in a ring of preallocated events and copy the event's arguments into it, so
+ * logging never blocks on the console, and doesn't allocate anything besides
+ * the arguments themselves.
+ * <p>
+ *     If the ring is full, new events are dropped and counted, instead of
+ *     making the logging thread wait. The writer reports the number of dropped
+ *     events once it catches up.
+ * </p>
+ * <p>
+ *     The ring follows the design of a bounded multi-producer queue, where
+ *     each slot has a sequence number that tells producers whether the slot
+ *     is free, and tells the consumer whether the slot has been published.
+ * </p>
+ */
+public class LogBuffer implements Closeable {
+	/**
+	 * The maximum number of arguments that an event can have.
+	 */
+	static final int MAX_ARGS = 4;
+
+	private final Event[] ring;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	private long head = 0;
+
+	private final PrintStream out;
+	private final PrintStream err;
+	private final StringBuilder line = new StringBuilder(256);
+
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder written = new LongAdder();
+	private long reportedDropped = 0;
+
+	private final Thread writer;
+	private volatile boolean writerSleeping = false;
+	private volatile boolean running = true;
+
+	/**
+	 * Constructs a new buffer, and starts its writer thread.
+	 * @param capacity The maximum number of events that may wait to be
+	 *                 written. This is rounded up to a power of two.
+	 * @param out The stream to write debug and info events to.
+	 * @param err The stream to write warning and error events to.
+	 */
+	public LogBuffer(int capacity, PrintStream out, PrintStream err) {
+		int size = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+		this.ring = new Event[size];
+		for (int i = 0; i < size; i++) {
+			this.ring[i] = new Event(i);
+		}
+		this.mask = size - 1;
+		this.out = out;
+		this.err = err;
+		this.writer = new Thread(this::run, "concord-log-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Adds an event to the buffer, or drops it if the buffer is full.
+	 * @return True if the event was added, or false if it was dropped.
+	 */
+	boolean publish(LogLevel level, String source, String template, Object a0, Object a1, Object a2, Object a3) {
+		long pos;
+		Event event;
+		while (true) {
+			pos = this.tail.get();
+			event = this.ring[(int) pos & this.mask];
+			long diff = event.sequence - pos;
+			if (diff == 0) {
+				if (this.tail.compareAndSet(pos, pos + 1)) break;
+			} else if (diff < 0) {
+				this.dropped.increment();
+				return false;
+			}
+		}
+		event.timestamp = System.currentTimeMillis();
+		event.level = level;
+		event.source = source;
+		event.thread = Thread.currentThread().getName();
+		event.template = template;
+		event.args[0] = a0;
+		event.args[1] = a1;
+		event.args[2] = a2;
+		event.args[3] = a3;
+		event.sequence = pos + 1;
+		if (this.writerSleeping) {
+			LockSupport.unpark(this.writer);
+		}
+		return true;
+	}
+
+	private void run() {
+		while (this.running) {
+			if (!this.drain()) {
+				this.writerSleeping = true;
+				// Check again after announcing that we're going to sleep, so that
+				// an event published in between isn't left waiting.
+				if (!this.hasNext()) {
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+				}
+				this.writerSleeping = false;
+			}
+		}
+		this.drain();
+	}
+
+	private boolean hasNext() {
+		return this.ring[(int) this.head & this.mask].sequence == this.head + 1;
+	}
+
+	/**
+	 * Writes all published events.
+	 * @return True if any events were written.
+	 */
+	private boolean drain() {
+		boolean any = false;
+		while (this.hasNext()) {
+			Event event = this.ring[(int) this.head & this.mask];
+			this.write(event);
+			event.clear();
+			event.sequence = this.head + this.ring.length;
+			this.head++;
+			any = true;
+		}
+		long droppedNow = this.dropped.sum();
+		if (droppedNow > this.reportedDropped) {
+			this.err.printf("%s WARNING [log] Dropped %d log events because the log buffer was full.%n", Instant.now(), droppedNow - this.reportedDropped);
+			this.reportedDropped = droppedNow;
+		}
+		if (any) {
+			this.out.flush();
+			this.err.flush();
+		}
+		return any;
+	}
+
+	private void write(Event event) {
+		StringBuilder sb = this.line;
+		sb.setLength(0);
+		sb.append(Instant.ofEpochMilli(event.timestamp)).append(' ')
+				.append(event.level).append(' ')
+				.append('[').append(event.source).append("] ");
+		Throwable throwable = format(sb, event.template, event.args);
+		sb.append(" (").append(event.thread).append(')');
+		PrintStream stream = event.level.compareTo(LogLevel.WARNING) >= 0 ? this.err : this.out;
+		stream.println(sb);
+		if (throwable != null) {
+			throwable.printStackTrace(stream);
+		}
+		this.written.increment();
+	}
+
+	/**
+	 * Appends a message template to a string builder, replacing each
+	 * {@code {}} with the next argument. If there's an argument left over that
+	 * is a throwable, it's returned, so that its stack trace can be written.
+	 */
+	private static Throwable format(StringBuilder sb, String template, Object[] args) {
+		int argIndex = 0;
+		int start = 0;
+		int index;
+		while ((index = template.indexOf("{}", start)) >= 0 && argIndex < MAX_ARGS) {
+			sb.append(template, start, index).append(args[argIndex++]);
+			start = index + 2;
+		}
+		sb.append(template, start, template.length());
+		while (argIndex < MAX_ARGS) {
+			if (args[argIndex] instanceof Throwable t) return t;
+			argIndex++;
+		}
+		return null;
+	}
+
+	/**
+	 * @return The number of events that were dropped because the buffer was
+	 * full.
+	 */
+	public long getDropped() {
+		return this.dropped.sum();
+	}
+
+	/**
+	 * @return The number of events that have been written.
+	 */
+	public long getWritten() {
+		return this.written.sum();
+	}
+
+	/**
+	 * @return The number of events that are waiting to be written.
+	 */
+	public long getPending() {
+		return Math.max(0, this.tail.get() - this.written.sum());
+	}
+
+	/**
+	 * @return The maximum number of events that can wait to be written.
+	 */
+	public int getCapacity() {
+		return this.ring.length;
+	}
+
+	/**
+	 * Waits until all events that were published before this call have been
+	 * written, without stopping the writer thread.
+	 * @param timeoutMillis The maximum number of milliseconds to wait.
+	 * @return True if all events were written, or false if the timeout
+	 * expired first.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public boolean flush(long timeoutMillis) throws InterruptedException {
+		long target = this.tail.get();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		LockSupport.unpark(this.writer);
+		while (this.written.sum() < target) {
+			if (System.nanoTime() >= deadline) return false;
+			Thread.sleep(1);
+		}
+		return true;
+	}
+
+	/**
+	 * Writes any events that are still waiting, and stops the writer thread.
+	 */
+	@Override
+	public void close() {
+		this.running = false;
+		LockSupport.unpark(this.writer);
+		try {
+			this.writer.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * A slot in the ring, which is reused for many events.
+	 */
+	private static final class Event {
+		/**
+		 * If this equals the producer's position, the slot is free. If it's one
+		 * more than the consumer's position, the slot holds a published event.
+		 */
+		private volatile long sequence;
+		private long timestamp;
+		private LogLevel level;
+		private String source;
+		private String thread;
+		private String template;
+		private final Object[] args = new Object[MAX_ARGS];
+
+		private Event(long sequence) {
+			this.sequence = sequence;
+		}
+
+		private void clear() {
+			this.source = null;
+			this.thread = null;
+			this.template = null;
+			for (int i = 0; i < MAX_ARGS; i++) {
+				this.args[i] = null;
+			}
+		}
+	}
+}
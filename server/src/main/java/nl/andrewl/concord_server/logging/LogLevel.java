@@ -0,0 +1,9 @@
+package nl.andrewl.concord_server.logging;
+
+/**
+ * The severity of a log event. Events below a logger's level are discarded
+ * before they're buffered.
+ */
+public enum LogLevel {
+	DEBUG, INFO, WARNING, ERROR
+}
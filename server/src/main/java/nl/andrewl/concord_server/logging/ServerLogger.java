@@ -0,0 +1,133 @@
+package nl.andrewl.concord_server.logging;
+
+import java.util.Map;
+
+/**
+ * The logger that the server's components use, which writes events to a
+ * shared {@link LogBuffer}. Messages are templates in which each {@code {}} is
+ * replaced by the next argument, and they're only formatted by the buffer's
+ * writer thread, so a call to a logger costs little more than copying its
+ * arguments. If the last argument is a throwable that isn't used by the
+ * template, its stack trace is written after the message.
+ * <p>
+ *     Each logger has a source, which is written with every event, and a
+ *     level, below which events are discarded right away.
+ * </p>
+ */
+public class ServerLogger {
+	private final LogBuffer buffer;
+	private final String source;
+	private final LogLevel level;
+	private final Map<String, LogLevel> sourceLevels;
+
+	/**
+	 * Constructs a new logger.
+	 * @param buffer The buffer to write events to.
+	 * @param source The name of the logger's source.
+	 * @param level The minimum level of events to log.
+	 * @param sourceLevels Levels that override the default level for loggers
+	 *                     that are created via {@link ServerLogger#named(String)}.
+	 */
+	public ServerLogger(LogBuffer buffer, String source, LogLevel level, Map<String, LogLevel> sourceLevels) {
+		this.buffer = buffer;
+		this.source = source;
+		this.level = level;
+		this.sourceLevels = sourceLevels == null ? Map.of() : Map.copyOf(sourceLevels);
+	}
+
+	/**
+	 * Creates a logger for a component, which writes to the same buffer.
+	 * @param name The name of the component. If the level for this name has
+	 *             been configured, that level is used.
+	 * @return The logger.
+	 */
+	public ServerLogger named(String name) {
+		return new ServerLogger(this.buffer, this.source + "/" + name, this.sourceLevels.getOrDefault(name, this.level), this.sourceLevels);
+	}
+
+	public ServerLogger named(Class<?> type) {
+		return this.named(type.getSimpleName());
+	}
+
+	public boolean isEnabled(LogLevel level) {
+		return level.compareTo(this.level) >= 0;
+	}
+
+	public LogBuffer getBuffer() {
+		return this.buffer;
+	}
+
+	private void log(LogLevel level, String template, Object a0, Object a1, Object a2, Object a3) {
+		if (this.isEnabled(level)) {
+			this.buffer.publish(level, this.source, template, a0, a1, a2, a3);
+		}
+	}
+
+	public void debug(String message) {
+		this.log(LogLevel.DEBUG, message, null, null, null, null);
+	}
+
+	public void debug(String template, Object a0) {
+		this.log(LogLevel.DEBUG, template, a0, null, null, null);
+	}
+
+	public void debug(String template, Object a0, Object a1) {
+		this.log(LogLevel.DEBUG, template, a0, a1, null, null);
+	}
+
+	public void debug(String template, Object a0, Object a1, Object a2) {
+		this.log(LogLevel.DEBUG, template, a0, a1, a2, null);
+	}
+
+	public void info(String message) {
+		this.log(LogLevel.INFO, message, null, null, null, null);
+	}
+
+	public void info(String template, Object a0) {
+		this.log(LogLevel.INFO, template, a0, null, null, null);
+	}
+
+	public void info(String template, Object a0, Object a1) {
+		this.log(LogLevel.INFO, template, a0, a1, null, null);
+	}
+
+	public void info(String template, Object a0, Object a1, Object a2) {
+		this.log(LogLevel.INFO, template, a0, a1, a2, null);
+	}
+
+	public void warning(String message) {
+		this.log(LogLevel.WARNING, message, null, null, null, null);
+	}
+
+	public void warning(String template, Object a0) {
+		this.log(LogLevel.WARNING, template, a0, null, null, null);
+	}
+
+	public void warning(String template, Object a0, Object a1) {
+		this.log(LogLevel.WARNING, template, a0, a1, null, null);
+	}
+
+	public void warning(String template, Object a0, Object a1, Object a2) {
+		this.log(LogLevel.WARNING, template, a0, a1, a2, null);
+	}
+
+	public void warning(String template, Object a0, Object a1, Object a2, Object a3) {
+		this.log(LogLevel.WARNING, template, a0, a1, a2, a3);
+	}
+
+	public void error(String message) {
+		this.log(LogLevel.ERROR, message, null, null, null, null);
+	}
+
+	public void error(String template, Object a0) {
+		this.log(LogLevel.ERROR, template, a0, null, null, null);
+	}
+
+	public void error(String template, Object a0, Object a1) {
+		this.log(LogLevel.ERROR, template, a0, a1, null, null);
+	}
+
+	public void error(String template, Object a0, Object a1, Object a2) {
+		this.log(LogLevel.ERROR, template, a0, a1, a2, null);
+	}
+}
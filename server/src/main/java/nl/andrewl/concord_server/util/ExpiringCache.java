@@ -0,0 +1,91 @@
+package nl.andrewl.concord_server.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A simple thread-safe cache which holds at most a fixed number of entries,
+ * and where each entry has its own expiration time. When the cache is full,
+ * the least-recently-used entry is evicted to make room for new ones. Expired
+ * entries are removed lazily when they're accessed.
+ * @param <K> The type of key.
+ * @param <V> The type of value.
+ */
+public class ExpiringCache<K, V> {
+	private record Entry<V>(V value, long expiresAt) {}
+
+	private final Map<K, Entry<V>> entries;
+
+	/**
+	 * Constructs a new cache.
+	 * @param maxSize The maximum number of entries to keep in the cache.
+	 */
+	public ExpiringCache(int maxSize) {
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Gets a value from the cache.
+	 * @param key The key to get the value for.
+	 * @return The value, or null if there's no value for the given key, or if
+	 * the value has expired.
+	 */
+	public synchronized V get(K key) {
+		var entry = this.entries.get(key);
+		if (entry == null) return null;
+		if (entry.expiresAt() < System.currentTimeMillis()) {
+			this.entries.remove(key);
+			return null;
+		}
+		return entry.value();
+	}
+
+	/**
+	 * Puts a value in the cache.
+	 * @param key The key to put the value under.
+	 * @param value The value to put.
+	 * @param expiresAt The timestamp, in milliseconds since the epoch, at which
+	 *                  the value expires.
+	 */
+	public synchronized void put(K key, V value, long expiresAt) {
+		this.entries.put(key, new Entry<>(value, expiresAt));
+	}
+
+	/**
+	 * Removes a value from the cache.
+	 * @param key The key of the value to remove.
+	 */
+	public synchronized void remove(K key) {
+		this.entries.remove(key);
+	}
+
+	/**
+	 * Removes all entries whose value matches the given predicate.
+	 * @param predicate The predicate to test values against.
+	 */
+	public synchronized void removeIf(Predicate<V> predicate) {
+		this.entries.values().removeIf(entry -> predicate.test(entry.value()));
+	}
+
+	/**
+	 * Removes all expired entries from the cache.
+	 */
+	public synchronized void removeExpired() {
+		long now = System.currentTimeMillis();
+		this.entries.values().removeIf(entry -> entry.expiresAt() < now);
+	}
+
+	/**
+	 * @return The number of entries in the cache, including any that have
+	 * expired but not yet been removed.
+	 */
+	public synchronized int size() {
+		return this.entries.size();
+	}
+}
@@ -0,0 +1,135 @@
+package nl.andrewl.concord_server.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel, which can keep track of a very large number of
+ * timeouts, where scheduling and cancelling a timeout is O(1). The wheel is
+ * divided into a fixed number of slots, each representing one tick of time,
+ * and a timeout is placed in the slot for the tick at which it expires. Each
+ * call to {@link HashedTimingWheel#tick()} advances the wheel by one slot and
+ * expires any timeouts in that slot whose deadline has been reached.
+ * <p>
+ *     Timeouts may be scheduled and cancelled from any thread, but it is
+ *     expected that {@link HashedTimingWheel#tick()} is only ever called from
+ *     a single thread, at a fixed rate equal to the wheel's tick duration.
+ * </p>
+ * @param <T> The type of item that timeouts are scheduled for.
+ */
+public class HashedTimingWheel<T> {
+	/**
+	 * A handle to a scheduled timeout, which can be used to cancel it.
+	 * @param <T> The type of item that the timeout is for.
+	 */
+	public static final class Timeout<T> {
+		private final T item;
+		private final long deadlineTick;
+		private volatile boolean cancelled;
+
+		private Timeout(T item, long deadlineTick) {
+			this.item = item;
+			this.deadlineTick = deadlineTick;
+		}
+
+		public T getItem() {
+			return item;
+		}
+
+		/**
+		 * Cancels this timeout, so that it will not expire.
+		 */
+		public void cancel() {
+			this.cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+
+	private final long tickMillis;
+	private final List<LinkedList<Timeout<T>>> slots;
+	private final int mask;
+	private final Consumer<T> expiryHandler;
+
+	/**
+	 * Timeouts which have been scheduled, but not yet placed in a slot. These
+	 * are placed in their slot on the next tick, so that only the ticking
+	 * thread ever touches the slots.
+	 */
+	private final Queue<Timeout<T>> pendingTimeouts = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The tick that the wheel is currently at. Only written by the ticking
+	 * thread.
+	 */
+	private volatile long currentTick = 0;
+
+	/**
+	 * Constructs a new timing wheel.
+	 * @param tickMillis The duration of a single tick, in milliseconds.
+	 * @param slotCount The number of slots in the wheel. This is rounded up to
+	 *                  the next power of two.
+	 * @param expiryHandler The handler that's called for the item of each
+	 *                      timeout that expires.
+	 */
+	public HashedTimingWheel(long tickMillis, int slotCount, Consumer<T> expiryHandler) {
+		this.tickMillis = tickMillis;
+		int size = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+		this.slots = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			this.slots.add(new LinkedList<>());
+		}
+		this.mask = size - 1;
+		this.expiryHandler = expiryHandler;
+	}
+
+	/**
+	 * Schedules a timeout for the given item.
+	 * @param item The item to schedule a timeout for.
+	 * @param delayMillis The number of milliseconds after which the timeout
+	 *                    should expire. This is rounded up to a whole tick.
+	 * @return A handle to the timeout, which can be used to cancel it.
+	 */
+	public Timeout<T> schedule(T item, long delayMillis) {
+		long ticks = Math.max(1, (delayMillis + this.tickMillis - 1) / this.tickMillis);
+		var timeout = new Timeout<>(item, this.currentTick + ticks);
+		this.pendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Advances the wheel by one tick, expiring any timeouts whose deadline has
+	 * been reached.
+	 */
+	public void tick() {
+		long tick = this.currentTick + 1;
+		Timeout<T> pending;
+		while ((pending = this.pendingTimeouts.poll()) != null) {
+			// A timeout may have been scheduled just as the wheel advanced, so never place it in a slot that's already passed.
+			long slotTick = Math.max(pending.deadlineTick, tick);
+			this.slots.get((int) (slotTick & this.mask)).add(pending);
+		}
+		this.currentTick = tick;
+		Iterator<Timeout<T>> it = this.slots.get((int) (tick & this.mask)).iterator();
+		while (it.hasNext()) {
+			var timeout = it.next();
+			if (timeout.cancelled) {
+				it.remove();
+			} else if (timeout.deadlineTick <= tick) {
+				it.remove();
+				this.expiryHandler.accept(timeout.item);
+			}
+		}
+	}
+
+	public long getTickMillis() {
+		return tickMillis;
+	}
+}
@@ -0,0 +1,215 @@
+package nl.andrewl.concord_server.util;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * An executor service that runs its tasks on shared executors, but which can
+ * be shut down on its own. Shutting it down cancels all periodic and delayed
+ * tasks that were scheduled through it, and rejects new tasks, while the
+ * shared executors keep running. This lets several servers in the same
+ * process share the same threads.
+ * <p>
+ *     The service keeps count of its tasks that are waiting to run on the
+ *     shared workers, or that are running right now, so that it's only
+ *     terminated once the last of them is done.
+ * </p>
+ */
+public class ScopedExecutorService extends AbstractExecutorService implements ScheduledExecutorService {
+	private final ExecutorService workers;
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * The scheduled tasks that may still run, which are cancelled on shutdown.
+	 * Each task removes itself from this set once it's done.
+	 */
+	private final Set<ScheduledFuture<?>> scheduledTasks = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean shutdown;
+
+	/**
+	 * The number of submitted tasks that haven't finished yet, and scheduled
+	 * tasks that are running right now. This is guarded by this service's
+	 * lock.
+	 */
+	private int activeTasks;
+
+	/**
+	 * Constructs a new scoped executor service.
+	 * @param workers The shared executor to run submitted tasks on.
+	 * @param scheduler The shared executor to schedule delayed and periodic
+	 *                  tasks on.
+	 */
+	public ScopedExecutorService(ExecutorService workers, ScheduledExecutorService scheduler) {
+		this.workers = workers;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * A scheduled task, which counts as active while it runs, and which
+	 * removes itself from {@link ScopedExecutorService#scheduledTasks} once
+	 * it won't run again.
+	 * @param <V> The type of the task's result.
+	 */
+	private final class ScopedTask<V> implements Callable<V>, Runnable {
+		private final Callable<V> task;
+		private final boolean periodic;
+		private volatile ScheduledFuture<?> future;
+
+		private ScopedTask(Callable<V> task, boolean periodic) {
+			this.task = task;
+			this.periodic = periodic;
+		}
+
+		@Override
+		public V call() throws Exception {
+			if (!taskStarted()) return null;
+			boolean finished = !this.periodic;
+			try {
+				return this.task.call();
+			} catch (Exception | Error e) {
+				// A periodic task that throws is not run again.
+				finished = true;
+				throw e;
+			} finally {
+				taskDone();
+				var future = this.future;
+				if (finished && future != null) scheduledTasks.remove(future);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.call();
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		synchronized (this) {
+			if (this.shutdown) throw new RejectedExecutionException("Executor has been shut down.");
+			this.activeTasks++;
+		}
+		try {
+			this.workers.execute(() -> {
+				try {
+					command.run();
+				} finally {
+					this.taskDone();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			this.taskDone();
+			throw e;
+		}
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+		var task = new ScopedTask<>(Executors.callable(command), false);
+		return this.track(this.scheduler.schedule((Callable<Object>) task, delay, unit), task);
+	}
+
+	@Override
+	public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+		var task = new ScopedTask<>(callable, false);
+		return this.track(this.scheduler.schedule((Callable<V>) task, delay, unit), task);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+		var task = new ScopedTask<>(Executors.callable(command), true);
+		return this.track(this.scheduler.scheduleAtFixedRate(task, initialDelay, period, unit), task);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+		var task = new ScopedTask<>(Executors.callable(command), true);
+		return this.track(this.scheduler.scheduleWithFixedDelay(task, initialDelay, delay, unit), task);
+	}
+
+	private <F extends ScheduledFuture<?>> F track(F future, ScopedTask<?> task) {
+		task.future = future;
+		this.scheduledTasks.add(future);
+		if (this.shutdown) {
+			this.scheduledTasks.remove(future);
+			future.cancel(false);
+			throw new RejectedExecutionException("Executor has been shut down.");
+		}
+		// The task may have finished before it could be added.
+		if (future.isDone()) this.scheduledTasks.remove(future);
+		return future;
+	}
+
+	/**
+	 * Counts a scheduled task as active, unless this service has been shut
+	 * down, in which case the task shouldn't run anymore.
+	 * @return True if the task may run.
+	 */
+	private synchronized boolean taskStarted() {
+		if (this.shutdown) return false;
+		this.activeTasks++;
+		return true;
+	}
+
+	private synchronized void taskDone() {
+		this.activeTasks--;
+		if (this.activeTasks == 0 && this.shutdown) {
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Rejects any new tasks, and cancels all scheduled tasks. Tasks that were
+	 * already submitted, or that are running, are allowed to finish.
+	 */
+	@Override
+	public void shutdown() {
+		synchronized (this) {
+			this.shutdown = true;
+		}
+		this.scheduledTasks.forEach(task -> task.cancel(false));
+		this.scheduledTasks.clear();
+	}
+
+	/**
+	 * @return The number of scheduled tasks that may still run.
+	 */
+	int getScheduledTaskCount() {
+		return this.scheduledTasks.size();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		this.shutdown();
+		return List.of();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return this.shutdown;
+	}
+
+	@Override
+	public synchronized boolean isTerminated() {
+		return this.shutdown && this.activeTasks == 0;
+	}
+
+	@Override
+	public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!this.isTerminated()) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) return false;
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return true;
+	}
+}
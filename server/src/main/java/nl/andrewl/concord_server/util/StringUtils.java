@@ -4,13 +4,17 @@ import java.security.SecureRandom;
 import java.util.Random;
 
 public class StringUtils {
+	/**
+	 * A shared source of randomness, since creating a new secure random for
+	 * each string is needlessly expensive.
+	 */
+	private static final Random RANDOM = new SecureRandom();
+	private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_-=+[]{}()<>";
 
 	public static String random(int length) {
-		Random random = new SecureRandom();
-		final String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789_-=+[]{}()<>";
 		StringBuilder sb = new StringBuilder(length);
 		for (int i = 0; i < length; i++) {
-			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			sb.append(ALPHABET.charAt(RANDOM.nextInt(ALPHABET.length())));
 		}
 		return sb.toString();
 	}
@@ -0,0 +1,95 @@
+package nl.andrewl.concord_server.util;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates time-ordered ids in the layout of a version 7 UUID, much like
+ * Snowflake ids: the first 48 bits are the time in milliseconds, followed by
+ * a 16-bit node number, then a 22-bit sequence within that millisecond, and
+ * finally 36 random bits (with the version and variant bits in between).
+ * Ids are ordered by when they were made, so new ids are added near the end
+ * of an index, instead of anywhere in it.
+ * <p>
+ *     The ids from a single node are strictly increasing, in the order of
+ *     {@link UUID#compareTo(UUID)}, so they can be used as sort keys for the
+ *     things that the node makes. The time and sequence are kept together in
+ *     a single atomic number, which is only ever increased, so generating an
+ *     id never blocks. If a node generates more than about 4 million ids in a
+ *     millisecond, it continues in the next one, and if the clock goes back,
+ *     it keeps counting from its last time until the clock catches up.
+ * </p>
+ * <p>
+ *     Ids from different nodes are kept apart by their node numbers, which
+ *     must be unique in a cluster; see
+ *     {@link nl.andrewl.concord_server.config.ServerConfig.ClusterConfig#getLocalNodeNumber()}.
+ *     Clocks on different nodes may differ, so ids from different nodes that
+ *     were made at about the same time can't tell which came first; use
+ *     something like a chat's sequence number for that.
+ * </p>
+ * <p>
+ *     Unlike {@link UUID#randomUUID()}, the random bits don't come from a
+ *     secure random generator, so these ids shouldn't be used as secrets.
+ * </p>
+ */
+public class TimeOrderedIdProvider implements IdProvider {
+	/**
+	 * The number of bits of the node number.
+	 */
+	public static final int NODE_BITS = 16;
+
+	/**
+	 * The largest node number that fits in an id.
+	 */
+	public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+	private static final int SEQUENCE_BITS = 22;
+	private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+	private static final long VERSION = 7L << 12;
+	private static final long VARIANT = 2L << 62;
+	private static final int RANDOM_BITS = 36;
+	private static final long RANDOM_MASK = (1L << RANDOM_BITS) - 1;
+
+	/**
+	 * The time in milliseconds of the last id, shifted left past the
+	 * sequence, plus the sequence of the last id within that millisecond.
+	 */
+	private final AtomicLong lastTimeAndSequence = new AtomicLong();
+
+	/**
+	 * The upper 12 bits of the node number, in their place in the most
+	 * significant bits.
+	 */
+	private final long nodeHigh;
+
+	/**
+	 * The lower 4 bits of the node number, in their place in the least
+	 * significant bits.
+	 */
+	private final long nodeLow;
+
+	/**
+	 * Constructs an id provider for a node.
+	 * @param nodeNumber The node's number, from 0 to {@link #MAX_NODE}, which
+	 *                   must be different for each node of a cluster.
+	 */
+	public TimeOrderedIdProvider(int nodeNumber) {
+		if (nodeNumber < 0 || nodeNumber > MAX_NODE) {
+			throw new IllegalArgumentException("Node number must be between 0 and " + MAX_NODE + ".");
+		}
+		this.nodeHigh = nodeNumber >>> 4;
+		this.nodeLow = ((long) (nodeNumber & 0xF)) << (SEQUENCE_BITS + RANDOM_BITS);
+	}
+
+	@Override
+	public UUID newId() {
+		long now = System.currentTimeMillis() << SEQUENCE_BITS;
+		long timeAndSequence = this.lastTimeAndSequence.updateAndGet(last -> Math.max(last + 1, now));
+		long millis = timeAndSequence >>> SEQUENCE_BITS;
+		long sequence = timeAndSequence & SEQUENCE_MASK;
+		long msb = (millis << 16) | VERSION | this.nodeHigh;
+		long lsb = VARIANT | this.nodeLow | (sequence << RANDOM_BITS) | (ThreadLocalRandom.current().nextLong() & RANDOM_MASK);
+		return new UUID(msb, lsb);
+	}
+}
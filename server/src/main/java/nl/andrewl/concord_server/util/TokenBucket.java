@@ -0,0 +1,63 @@
+package nl.andrewl.concord_server.util;
+
+/**
+ * A token bucket, which allows a certain number of events per second on
+ * average, with bursts of up to a certain size. Tokens may be taken even when
+ * the bucket is empty, in which case the caller is told how long to wait for
+ * the bucket to be refilled. This class is not thread-safe.
+ */
+public class TokenBucket {
+	private final double capacity;
+	private final double tokensPerNano;
+	private double tokens;
+	private long lastRefill;
+
+	/**
+	 * Constructs a new, full bucket.
+	 * @param perSecond The number of tokens that are added per second. This
+	 *                  must be more than 0.
+	 * @param burst The maximum number of tokens in the bucket.
+	 */
+	public TokenBucket(double perSecond, int burst) {
+		this(perSecond, burst, System.nanoTime());
+	}
+
+	/**
+	 * Constructs a new, full bucket, at the given time.
+	 * @param perSecond The number of tokens that are added per second.
+	 * @param burst The maximum number of tokens in the bucket.
+	 * @param now The current time, in nanoseconds.
+	 */
+	TokenBucket(double perSecond, int burst, long now) {
+		if (!(perSecond > 0)) throw new IllegalArgumentException("perSecond must be more than 0.");
+		this.capacity = Math.max(1, burst);
+		this.tokensPerNano = perSecond / 1_000_000_000.0;
+		this.tokens = this.capacity;
+		this.lastRefill = now;
+	}
+
+	/**
+	 * Takes a token from the bucket.
+	 * @return 0 if a token was available, or otherwise the number of
+	 * nanoseconds to wait until the bucket has been refilled enough to cover
+	 * this token.
+	 */
+	public long take() {
+		return this.take(System.nanoTime());
+	}
+
+	/**
+	 * Takes a token from the bucket, at the given time.
+	 * @param now The current time, in nanoseconds.
+	 * @return 0 if a token was available, or otherwise the number of
+	 * nanoseconds to wait until the bucket has been refilled enough to cover
+	 * this token.
+	 */
+	long take(long now) {
+		this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.tokensPerNano);
+		this.lastRefill = now;
+		this.tokens -= 1;
+		if (this.tokens >= 0) return 0;
+		return (long) Math.ceil(-this.tokens / this.tokensPerNano);
+	}
+}
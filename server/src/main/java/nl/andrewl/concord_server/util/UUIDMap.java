@@ -0,0 +1,280 @@
+package nl.andrewl.concord_server.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+
+/**
+ * A concurrent hash map that's specialized for {@link UUID} keys. Instead of
+ * storing boxed keys in linked nodes like a {@link java.util.concurrent.ConcurrentHashMap},
+ * each key is stored as its two primitive 64-bit halves in a flat array, and
+ * collisions are resolved by linear probing. This means that a lookup doesn't
+ * need to chase any pointers to compare keys, and an entry costs no more
+ * memory than its slot in two arrays.
+ * <p>
+ *     Lookups never block. Each slot's key is written exactly once, before
+ *     its value is published, so a reader that sees a value always sees the
+ *     matching key. Removed entries are marked with a tombstone instead of
+ *     being shifted, and tombstones are only cleared when a segment rebuilds
+ *     its table into a fresh pair of arrays. Writes are serialized per
+ *     segment, so they should be rare compared to lookups; this suits things
+ *     like the set of connected clients.
+ * </p>
+ * <p>
+ *     Null values are not permitted.
+ * </p>
+ * @param <V> The type of value.
+ */
+public class UUIDMap<V> {
+	private static final int SEGMENT_COUNT = 16;
+	private static final int SEGMENT_SHIFT = 60;
+	private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+	/**
+	 * The maximum fraction of a segment's slots, in eighths, that may be used
+	 * by entries and tombstones before the segment's table is rebuilt.
+	 */
+	private static final int MAX_LOAD_EIGHTHS = 5;
+
+	/**
+	 * Marker for a slot whose entry has been removed. The slot's key remains,
+	 * so that probing continues past it.
+	 */
+	private static final Object TOMBSTONE = new Object();
+
+	private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+
+	private final Segment[] segments;
+
+	public UUIDMap() {
+		this.segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			this.segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * Gets the value for a key.
+	 * @param key The key to look up.
+	 * @return The value, or null if there is none.
+	 */
+	public V get(UUID key) {
+		return this.get(key.getMostSignificantBits(), key.getLeastSignificantBits());
+	}
+
+	/**
+	 * Gets the value for a key that's given as its two halves.
+	 * @param msb The most significant bits of the key.
+	 * @param lsb The least significant bits of the key.
+	 * @return The value, or null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long msb, long lsb) {
+		long hash = hash(msb, lsb);
+		Table table = this.segments[(int) (hash >>> SEGMENT_SHIFT)].table;
+		long[] keys = table.keys;
+		Object[] values = table.values;
+		int mask = values.length - 1;
+		int index = (int) hash & mask;
+		while (true) {
+			Object value = VALUES.getAcquire(values, index);
+			if (value == null) return null;
+			if (keys[2 * index] == msb && keys[2 * index + 1] == lsb) {
+				return value == TOMBSTONE ? null : (V) value;
+			}
+			index = (index + 1) & mask;
+		}
+	}
+
+	/**
+	 * Puts a value into the map, replacing any existing value for the key.
+	 * @param key The key.
+	 * @param value The value.
+	 * @return The previous value, or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(UUID key, V value) {
+		Objects.requireNonNull(value);
+		long msb = key.getMostSignificantBits();
+		long lsb = key.getLeastSignificantBits();
+		long hash = hash(msb, lsb);
+		return (V) this.segments[(int) (hash >>> SEGMENT_SHIFT)].put(msb, lsb, hash, value);
+	}
+
+	/**
+	 * Removes the value for a key.
+	 * @param key The key.
+	 * @return The value that was removed, or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(UUID key) {
+		long msb = key.getMostSignificantBits();
+		long lsb = key.getLeastSignificantBits();
+		long hash = hash(msb, lsb);
+		return (V) this.segments[(int) (hash >>> SEGMENT_SHIFT)].remove(msb, lsb, hash);
+	}
+
+	/**
+	 * @return The number of entries in the map.
+	 */
+	public int size() {
+		int size = 0;
+		for (var segment : this.segments) {
+			size += segment.size;
+		}
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return this.size() == 0;
+	}
+
+	/**
+	 * @return A snapshot of the keys in the map. Later changes to the map are
+	 * not reflected in the returned set.
+	 */
+	public Set<UUID> keys() {
+		Set<UUID> keys = new HashSet<>();
+		for (var segment : this.segments) {
+			Table table = segment.table;
+			for (int i = 0; i < table.values.length; i++) {
+				Object value = VALUES.getAcquire(table.values, i);
+				if (value != null && value != TOMBSTONE) {
+					keys.add(new UUID(table.keys[2 * i], table.keys[2 * i + 1]));
+				}
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * @return A snapshot of the values in the map. Later changes to the map
+	 * are not reflected in the returned list.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		List<V> values = new ArrayList<>();
+		for (var segment : this.segments) {
+			Table table = segment.table;
+			for (int i = 0; i < table.values.length; i++) {
+				Object value = VALUES.getAcquire(table.values, i);
+				if (value != null && value != TOMBSTONE) {
+					values.add((V) value);
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Mixes the two halves of a key into a well-distributed hash. The upper
+	 * bits select the segment, and the lower bits select the slot.
+	 */
+	private static long hash(long msb, long lsb) {
+		long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 32);
+	}
+
+	/**
+	 * The arrays of a hash table. Slot {@code i} stores its key in {@code keys[2i]}
+	 * and {@code keys[2i + 1]}, and is empty if {@code values[i]} is null.
+	 */
+	private static final class Table {
+		private final long[] keys;
+		private final Object[] values;
+
+		private Table(int capacity) {
+			this.keys = new long[capacity * 2];
+			this.values = new Object[capacity];
+		}
+	}
+
+	/**
+	 * A single open-addressing hash table. Writers synchronize on the segment,
+	 * while readers only read the volatile table reference.
+	 */
+	private static final class Segment {
+		private volatile Table table = new Table(INITIAL_SEGMENT_CAPACITY);
+		private volatile int size;
+
+		/**
+		 * The number of slots that are in use by entries or tombstones.
+		 */
+		private int usedSlots;
+
+		synchronized Object put(long msb, long lsb, long hash, Object value) {
+			Table t = this.table;
+			int mask = t.values.length - 1;
+			int index = (int) hash & mask;
+			Object existing;
+			while ((existing = t.values[index]) != null) {
+				if (t.keys[2 * index] == msb && t.keys[2 * index + 1] == lsb) {
+					VALUES.setRelease(t.values, index, value);
+					if (existing == TOMBSTONE) {
+						this.size++;
+						return null;
+					}
+					return existing;
+				}
+				index = (index + 1) & mask;
+			}
+			// Write the key before publishing the value, so readers never see a
+			// value with a partially written key.
+			t.keys[2 * index] = msb;
+			t.keys[2 * index + 1] = lsb;
+			VALUES.setRelease(t.values, index, value);
+			this.size++;
+			this.usedSlots++;
+			if (this.usedSlots * 8 > t.values.length * MAX_LOAD_EIGHTHS) {
+				this.rebuild();
+			}
+			return null;
+		}
+
+		synchronized Object remove(long msb, long lsb, long hash) {
+			Table t = this.table;
+			int mask = t.values.length - 1;
+			int index = (int) hash & mask;
+			Object existing;
+			while ((existing = t.values[index]) != null) {
+				if (t.keys[2 * index] == msb && t.keys[2 * index + 1] == lsb) {
+					if (existing == TOMBSTONE) return null;
+					VALUES.setRelease(t.values, index, TOMBSTONE);
+					this.size--;
+					return existing;
+				}
+				index = (index + 1) & mask;
+			}
+			return null;
+		}
+
+		/**
+		 * Copies all live entries into a new table, sized so that it's at most
+		 * a quarter full, and then publishes it. This drops all tombstones.
+		 */
+		private void rebuild() {
+			Table old = this.table;
+			int capacity = INITIAL_SEGMENT_CAPACITY;
+			while (capacity < this.size * 4) {
+				capacity *= 2;
+			}
+			Table t = new Table(capacity);
+			int mask = capacity - 1;
+			for (int i = 0; i < old.values.length; i++) {
+				Object value = old.values[i];
+				if (value == null || value == TOMBSTONE) continue;
+				long msb = old.keys[2 * i];
+				long lsb = old.keys[2 * i + 1];
+				int index = (int) hash(msb, lsb) & mask;
+				while (t.values[index] != null) {
+					index = (index + 1) & mask;
+				}
+				t.keys[2 * index] = msb;
+				t.keys[2 * index + 1] = lsb;
+				t.values[index] = value;
+			}
+			this.usedSlots = this.size;
+			this.table = t;
+		}
+	}
+}
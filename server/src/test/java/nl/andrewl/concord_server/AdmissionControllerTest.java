@@ -0,0 +1,34 @@
+package nl.andrewl.concord_server;
+
+import nl.andrewl.concord_server.AdmissionController.Level;
+import org.junit.jupiter.api.Test;
+
+import static nl.andrewl.concord_server.AdmissionController.nextLevel;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdmissionControllerTest {
+	@Test
+	public void testLevelsAreEnteredAtTheirThresholds() {
+		assertEquals(Level.NORMAL, nextLevel(Level.NORMAL, 0.5));
+		assertEquals(Level.ELEVATED, nextLevel(Level.NORMAL, 0.75));
+		assertEquals(Level.OVERLOADED, nextLevel(Level.NORMAL, 1.0));
+		assertEquals(Level.OVERLOADED, nextLevel(Level.ELEVATED, 1.5));
+	}
+
+	@Test
+	public void testOverloadedIsOnlyLeftWellBelowItsThreshold() {
+		assertEquals(Level.OVERLOADED, nextLevel(Level.OVERLOADED, 0.9));
+		assertEquals(Level.OVERLOADED, nextLevel(Level.OVERLOADED, 0.8));
+		assertEquals(Level.ELEVATED, nextLevel(Level.OVERLOADED, 0.79));
+		assertEquals(Level.NORMAL, nextLevel(Level.OVERLOADED, 0.1));
+	}
+
+	@Test
+	public void testElevatedIsOnlyLeftWellBelowItsThreshold() {
+		assertEquals(Level.ELEVATED, nextLevel(Level.ELEVATED, 0.7));
+		assertEquals(Level.ELEVATED, nextLevel(Level.ELEVATED, 0.61));
+		assertEquals(Level.NORMAL, nextLevel(Level.ELEVATED, 0.59));
+		// Without hysteresis, a pressure between the thresholds doesn't raise the level.
+		assertEquals(Level.NORMAL, nextLevel(Level.NORMAL, 0.7));
+	}
+}
@@ -0,0 +1,96 @@
+package nl.andrewl.concord_server.channel;
+
+import nl.andrewl.concord_core.msg.types.ServerMetaData;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryPage;
+import nl.andrewl.concord_core.msg.types.channel.ChannelDirectoryUpdate;
+import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.config.ServerConfig;
+import nl.andrewl.concord_server.util.UUIDProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChannelDirectoryTest {
+	private ConcordServer server;
+	private ChannelDirectory directory;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		var config = ServerConfig.defaults(new UUIDProvider());
+		config.setPort(0);
+		this.server = ConcordServer.inMemory(config);
+		this.server.start();
+		this.directory = new ChannelDirectory(this.server);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		this.server.stopAndWait();
+	}
+
+	@Test
+	public void testFirstPageIsOnlyRebuiltAfterChanges() throws Exception {
+		var general = UUID.randomUUID();
+		this.directory.add(UUID.randomUUID(), "memes");
+		this.directory.add(general, "general");
+		byte[] bytes = this.directory.getFirstPageBytes(10);
+		assertSame(bytes, this.directory.getFirstPageBytes(10));
+		var page = this.readPage(bytes);
+		assertEquals(this.directory.getVersion(), page.version());
+		assertArrayEquals(new String[]{"general", "memes"}, this.channelNames(page));
+
+		var update = this.directory.remove(general, "general");
+		assertEquals(page.version() + 1, update.version());
+		assertEquals(ChannelDirectoryUpdate.Type.REMOVED, update.type());
+		byte[] updated = this.directory.getFirstPageBytes(10);
+		assertNotSame(bytes, updated);
+		assertArrayEquals(new String[]{"memes"}, this.channelNames(this.readPage(updated)));
+		assertNotSame(updated, this.directory.getFirstPageBytes(1));
+	}
+
+	@Test
+	public void testPagesFollowTheCursorWithinThePrefix() {
+		for (var name : new String[]{"dev-backend", "dev-frontend", "dev-ops", "design", "general", "dev"}) {
+			this.directory.add(UUID.randomUUID(), name);
+		}
+		var first = this.directory.getPage("dev", null, 2);
+		assertArrayEquals(new String[]{"dev", "dev-backend"}, this.channelNames(first));
+		assertEquals("dev-backend", first.next());
+		var second = this.directory.getPage("dev", first.next(), 2);
+		assertArrayEquals(new String[]{"dev-frontend", "dev-ops"}, this.channelNames(second));
+		assertNull(second.next());
+
+		var all = this.directory.getPage("", null, 100);
+		assertArrayEquals(new String[]{"design", "dev", "dev-backend", "dev-frontend", "dev-ops", "general"}, this.channelNames(all));
+		assertNull(all.next());
+		assertEquals(0, this.directory.getPage("x", null, 100).channels().length);
+	}
+
+	@Test
+	public void testRenameMovesTheChannelInTheIndex() {
+		var id = UUID.randomUUID();
+		this.directory.add(id, "zebra");
+		this.directory.add(UUID.randomUUID(), "general");
+		var update = this.directory.rename(id, "zebra", "announcements");
+		assertEquals(ChannelDirectoryUpdate.Type.RENAMED, update.type());
+		assertEquals(this.directory.getVersion(), update.version());
+		var page = this.directory.getPage("", null, 100);
+		assertArrayEquals(new String[]{"announcements", "general"}, this.channelNames(page));
+		assertEquals(id, page.channels()[0].id());
+		assertEquals(2, this.directory.size());
+	}
+
+	private ChannelDirectoryPage readPage(byte[] bytes) throws Exception {
+		return (ChannelDirectoryPage) this.server.getSerializer().readMessage(new ByteArrayInputStream(bytes));
+	}
+
+	private String[] channelNames(ChannelDirectoryPage page) {
+		return Arrays.stream(page.channels()).map(ServerMetaData.ChannelData::name).toArray(String[]::new);
+	}
+}
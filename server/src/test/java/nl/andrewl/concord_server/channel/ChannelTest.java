@@ -0,0 +1,110 @@
+package nl.andrewl.concord_server.channel;
+
+import nl.andrewl.concord_core.msg.types.chat.Chat;
+import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.config.ServerConfig;
+import nl.andrewl.concord_server.util.UUIDProvider;
+import org.dizitart.no2.Document;
+import org.dizitart.no2.FindOptions;
+import org.dizitart.no2.SortOrder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChannelTest {
+	private ConcordServer server;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		var config = ServerConfig.defaults(new UUIDProvider());
+		config.setPort(0);
+		this.server = ConcordServer.inMemory(config);
+		this.server.start();
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		this.server.stopAndWait();
+	}
+
+	@Test
+	public void testConcurrentChatsAreNumberedAndRelayedInOrder() throws Exception {
+		var channel = new Channel(this.server, UUID.randomUUID(), "test");
+		List<Long> relayed = Collections.synchronizedList(new ArrayList<>());
+		int threads = 4;
+		int chatsPerThread = 50;
+		var pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(pool.submit(() -> {
+					for (int i = 0; i < chatsPerThread; i++) {
+						channel.publishChat(this.newChat("hello"), chat -> relayed.add(chat.sequence()));
+					}
+				}));
+			}
+			for (var future : futures) future.get(10, TimeUnit.SECONDS);
+		} finally {
+			pool.shutdownNow();
+		}
+		int total = threads * chatsPerThread;
+		assertEquals(total, channel.getLastSequence());
+		assertEquals(total, relayed.size());
+		for (int i = 0; i < total; i++) {
+			assertEquals(i + 1, relayed.get(i));
+		}
+	}
+
+	@Test
+	public void testSequenceContinuesAfterReload() {
+		var id = UUID.randomUUID();
+		var channel = new Channel(this.server, id, "test");
+		for (int i = 0; i < 5; i++) {
+			channel.publishChat(this.newChat("hello"), null);
+		}
+		assertTrue(channel.unload());
+		var reloaded = new Channel(this.server, id, "test");
+		assertEquals(5, reloaded.getLastSequence());
+		assertEquals(6, reloaded.publishChat(this.newChat("hello"), null).sequence());
+	}
+
+	@Test
+	public void testMessagesWithoutSequenceAreNumberedByTimestamp() {
+		var id = UUID.randomUUID();
+		var collection = this.server.getDb().getCollection("channel-" + id);
+		for (long timestamp : new long[]{300, 100, 200}) {
+			collection.insert(new Document(Map.of(
+					"id", UUID.randomUUID(),
+					"senderId", UUID.randomUUID(),
+					"senderNickname", "tester",
+					"timestamp", timestamp,
+					"message", "hello"
+			)));
+		}
+		var channel = new Channel(this.server, id, "test");
+		assertEquals(3, channel.getLastSequence());
+		List<Long> timestamps = channel.useMessageCollection(col -> {
+			List<Long> found = new ArrayList<>();
+			for (var doc : col.find(FindOptions.sort("sequence", SortOrder.Ascending))) {
+				found.add(doc.get("timestamp", Long.class));
+			}
+			return found;
+		});
+		assertEquals(List.of(100L, 200L, 300L), timestamps);
+	}
+
+	private Chat newChat(String message) {
+		return new Chat(UUID.randomUUID(), UUID.randomUUID(), "tester", System.currentTimeMillis(), message);
+	}
+}
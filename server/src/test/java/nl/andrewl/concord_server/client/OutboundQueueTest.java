@@ -0,0 +1,133 @@
+package nl.andrewl.concord_server.client;
+
+import nl.andrewl.concord_core.msg.FragmentAssembler;
+import nl.andrewl.concord_core.msg.Message;
+import nl.andrewl.concord_core.msg.Serializer;
+import nl.andrewl.concord_core.msg.types.MessageFragment;
+import nl.andrewl.concord_core.msg.types.chat.Chat;
+import nl.andrewl.concord_server.logging.LogBuffer;
+import nl.andrewl.concord_server.logging.LogLevel;
+import nl.andrewl.concord_server.logging.ServerLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutboundQueueTest {
+	private final Serializer serializer = new Serializer();
+	private ExecutorService executor;
+	private LogBuffer logBuffer;
+	private ServerLogger log;
+
+	@BeforeEach
+	public void setUp() {
+		this.executor = Executors.newFixedThreadPool(4);
+		this.logBuffer = new LogBuffer(64, System.out, System.err);
+		this.log = new ServerLogger(this.logBuffer, "test", LogLevel.WARNING, Map.of());
+	}
+
+	@AfterEach
+	public void tearDown() {
+		this.executor.shutdownNow();
+		this.logBuffer.close();
+	}
+
+	@Test
+	public void testConcurrentBulkMessagesAreNotInterleaved() throws Exception {
+		var out = new ByteArrayOutputStream();
+		var queue = new OutboundQueue(out, this.serializer, this.executor, new OutboundStats(), this.log, 0, () -> {});
+		int senders = 4;
+		int messagesPerSender = 10;
+		var start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		var senderPool = Executors.newFixedThreadPool(senders);
+		try {
+			for (int s = 0; s < senders; s++) {
+				int sender = s;
+				futures.add(senderPool.submit(() -> {
+					start.await();
+					for (int i = 0; i < messagesPerSender; i++) {
+						// Large enough to be split into several fragments.
+						queue.send(this.serialize(new Chat(sender + ":" + i + ":" + "x".repeat(40_000))), OutboundQueue.Lane.BULK);
+						queue.send(this.serialize(new Chat(sender + ":" + i)), OutboundQueue.Lane.INTERACTIVE);
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (var future : futures) future.get(10, TimeUnit.SECONDS);
+		} finally {
+			senderPool.shutdownNow();
+		}
+		queue.flush();
+
+		var assembler = new FragmentAssembler(this.serializer);
+		var in = new ByteArrayInputStream(out.toByteArray());
+		Map<Integer, Integer> nextBulk = new HashMap<>();
+		Map<Integer, Integer> nextInteractive = new HashMap<>();
+		int fragments = 0;
+		int received = 0;
+		while (in.available() > 0) {
+			Message msg = this.serializer.readMessage(in);
+			if (msg instanceof MessageFragment fragment) {
+				fragments++;
+				msg = assembler.accept(fragment);
+				if (msg == null) continue;
+			}
+			String[] parts = ((Chat) msg).message().split(":");
+			int sender = Integer.parseInt(parts[0]);
+			int index = Integer.parseInt(parts[1]);
+			// Each sender's messages arrive in the order in which they were sent.
+			var next = parts.length == 3 ? nextBulk : nextInteractive;
+			assertEquals(next.getOrDefault(sender, 0), index);
+			next.put(sender, index + 1);
+			received++;
+		}
+		assertEquals(senders * messagesPerSender * 2, received);
+		assertTrue(fragments > senders * messagesPerSender);
+		assertEquals(0, queue.getQueuedBytes());
+	}
+
+	@Test
+	public void testOverflowGivesUpOnClient() throws Exception {
+		var release = new CountDownLatch(1);
+		var blockingOut = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				this.write(new byte[]{(byte) b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+		};
+		var overflows = new AtomicInteger();
+		var queue = new OutboundQueue(blockingOut, this.serializer, this.executor, new OutboundStats(), this.log, 100_000, overflows::incrementAndGet);
+		byte[] data = this.serialize(new Chat("x".repeat(30_000)));
+		for (int i = 0; i < 10; i++) {
+			queue.send(data, OutboundQueue.Lane.BULK);
+		}
+		assertEquals(1, overflows.get());
+		release.countDown();
+	}
+
+	private byte[] serialize(Message msg) throws IOException {
+		var baos = new ByteArrayOutputStream();
+		this.serializer.writeMessage(msg, baos);
+		return baos.toByteArray();
+	}
+}
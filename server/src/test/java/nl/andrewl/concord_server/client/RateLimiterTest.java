@@ -0,0 +1,38 @@
+package nl.andrewl.concord_server.client;
+
+import nl.andrewl.concord_core.msg.types.chat.Chat;
+import nl.andrewl.concord_server.config.ServerConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+	private static final Chat CHAT = new Chat(UUID.randomUUID(), "tester", 0, "hello");
+
+	@Test
+	public void testLimitsConfiguredTypes() {
+		var limiter = new RateLimiter(Map.of("Chat", new ServerConfig.RateLimit(1, 2)));
+		assertEquals(0, limiter.acquire(CHAT));
+		assertEquals(0, limiter.acquire(CHAT));
+		assertTrue(limiter.acquire(CHAT) > 0);
+	}
+
+	@Test
+	public void testNonPositiveRateMeansNoLimit() {
+		var limiter = new RateLimiter(Map.of("Chat", new ServerConfig.RateLimit(0, 1)));
+		for (int i = 0; i < 100; i++) {
+			assertEquals(0, limiter.acquire(CHAT));
+		}
+	}
+
+	@Test
+	public void testTypesWithoutLimitAreNotLimited() {
+		var limiter = new RateLimiter(null);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(0, limiter.acquire(CHAT));
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package nl.andrewl.concord_server.event;
+
+import nl.andrewl.concord_core.msg.types.chat.Chat;
+import nl.andrewl.concord_core.msg.types.chat.ChatHistoryRequest;
+import nl.andrewl.concord_server.ConcordServer;
+import nl.andrewl.concord_server.channel.Channel;
+import nl.andrewl.concord_server.config.ServerConfig;
+import nl.andrewl.concord_server.util.UUIDProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChatHistoryRequestHandlerTest {
+	private final ChatHistoryRequestHandler handler = new ChatHistoryRequestHandler();
+	private ConcordServer server;
+	private Channel channel;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		var config = ServerConfig.defaults(new UUIDProvider());
+		config.setPort(0);
+		this.server = ConcordServer.inMemory(config);
+		this.server.start();
+		this.channel = new Channel(this.server, UUID.randomUUID(), "test");
+		for (int i = 0; i < 10; i++) {
+			this.channel.publishChat(new Chat(UUID.randomUUID(), UUID.randomUUID(), "tester", i, "chat " + (i + 1)), null);
+		}
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		this.server.stopAndWait();
+	}
+
+	@Test
+	public void testGapIsFilledExactly() {
+		assertEquals(List.of(4L, 5L, 6L, 7L), this.sequences(Map.of("after", "3", "before", "8")));
+	}
+
+	@Test
+	public void testPagingForwardAndBack() {
+		assertEquals(List.of(8L, 9L, 10L), this.sequences(Map.of("count", "3")));
+		assertEquals(List.of(5L, 6L, 7L), this.sequences(Map.of("count", "3", "before", "8")));
+		assertEquals(List.of(9L, 10L), this.sequences(Map.of("count", "3", "after", "8")));
+		assertEquals(List.of(), this.sequences(Map.of("after", "10")));
+	}
+
+	private List<Long> sequences(Map<String, String> params) {
+		var response = this.handler.buildResponse(new ChatHistoryRequest(this.channel.getId(), params), this.channel, this.server);
+		assertNotNull(response);
+		return Arrays.stream(response.messages()).map(Chat::sequence).toList();
+	}
+}
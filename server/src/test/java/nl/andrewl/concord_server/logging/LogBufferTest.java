@@ -0,0 +1,77 @@
+package nl.andrewl.concord_server.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogBufferTest {
+	@Test
+	public void testEventsAreFormattedAndWrittenToTheirStream() {
+		var out = new ByteArrayOutputStream();
+		var err = new ByteArrayOutputStream();
+		var buffer = new LogBuffer(16, new PrintStream(out, true), new PrintStream(err, true));
+		assertTrue(buffer.publish(LogLevel.INFO, "test", "Hello {}, you have {} messages.", "alice", 3, null, null));
+		assertTrue(buffer.publish(LogLevel.ERROR, "test", "Could not do {}.", "that", new IOException("broken"), null, null));
+		buffer.close();
+
+		String info = out.toString();
+		assertTrue(info.contains("INFO [test] Hello alice, you have 3 messages."));
+		String error = err.toString();
+		assertTrue(error.contains("ERROR [test] Could not do that."));
+		assertTrue(error.contains("java.io.IOException: broken"));
+		assertEquals(2, buffer.getWritten());
+		assertEquals(0, buffer.getDropped());
+		assertEquals(0, buffer.getPending());
+	}
+
+	@Test
+	public void testEventsAreDroppedWhenTheBufferIsFull() throws Exception {
+		var writing = new CountDownLatch(1);
+		var release = new CountDownLatch(1);
+		var out = new ByteArrayOutputStream();
+		var blockingOut = new OutputStream() {
+			@Override
+			public void write(int b) {
+				out.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				writing.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				out.write(b, off, len);
+			}
+		};
+		var err = new ByteArrayOutputStream();
+		var buffer = new LogBuffer(16, new PrintStream(blockingOut), new PrintStream(err, true));
+		assertEquals(16, buffer.getCapacity());
+
+		// The writer holds on to the first event's slot until it's written.
+		buffer.publish(LogLevel.INFO, "test", "first", null, null, null, null);
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+		int published = 0;
+		for (int i = 0; i < 20; i++) {
+			if (buffer.publish(LogLevel.INFO, "test", "event {}", i, null, null, null)) published++;
+		}
+		assertEquals(15, published);
+		assertEquals(5, buffer.getDropped());
+
+		release.countDown();
+		buffer.close();
+		assertEquals(16, buffer.getWritten());
+		assertTrue(out.toString().contains("event 14"));
+		assertFalse(out.toString().contains("event 15"));
+		assertTrue(err.toString().contains("Dropped 5 log events"));
+	}
+}
@@ -0,0 +1,87 @@
+package nl.andrewl.concord_server.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScopedExecutorServiceTest {
+	private ExecutorService workers;
+	private ScheduledExecutorService scheduler;
+	private ScopedExecutorService scope;
+
+	@BeforeEach
+	public void setUp() {
+		this.workers = Executors.newCachedThreadPool();
+		this.scheduler = Executors.newSingleThreadScheduledExecutor();
+		this.scope = new ScopedExecutorService(this.workers, this.scheduler);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		this.workers.shutdownNow();
+		this.scheduler.shutdownNow();
+	}
+
+	@Test
+	public void testScheduledTasksAreForgottenWhenDone() throws Exception {
+		var done = new CountDownLatch(100);
+		for (int i = 0; i < 100; i++) {
+			this.scope.schedule(done::countDown, 1, TimeUnit.MILLISECONDS);
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (this.scope.getScheduledTaskCount() > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(0, this.scope.getScheduledTaskCount());
+	}
+
+	@Test
+	public void testPeriodicTasksAreKeptUntilShutdown() throws Exception {
+		var runs = new CountDownLatch(3);
+		this.scope.scheduleAtFixedRate(runs::countDown, 0, 1, TimeUnit.MILLISECONDS);
+		assertTrue(runs.await(5, TimeUnit.SECONDS));
+		assertEquals(1, this.scope.getScheduledTaskCount());
+		this.scope.shutdown();
+		assertEquals(0, this.scope.getScheduledTaskCount());
+	}
+
+	@Test
+	public void testTerminationWaitsForRunningTasks() throws Exception {
+		var started = new CountDownLatch(1);
+		var release = new CountDownLatch(1);
+		this.scope.execute(() -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		this.scope.shutdown();
+		assertTrue(this.scope.isShutdown());
+		assertFalse(this.scope.isTerminated());
+		assertFalse(this.scope.awaitTermination(50, TimeUnit.MILLISECONDS));
+		release.countDown();
+		assertTrue(this.scope.awaitTermination(5, TimeUnit.SECONDS));
+		assertTrue(this.scope.isTerminated());
+	}
+
+	@Test
+	public void testShutdownCancelsScheduledTasksAndRejectsNewOnes() throws Exception {
+		var runs = new AtomicInteger();
+		this.scope.schedule(runs::incrementAndGet, 1, TimeUnit.HOURS);
+		this.scope.shutdown();
+		assertTrue(this.scope.awaitTermination(1, TimeUnit.SECONDS));
+		assertThrows(RejectedExecutionException.class, () -> this.scope.execute(runs::incrementAndGet));
+		assertThrows(RejectedExecutionException.class, () -> this.scope.schedule(runs::incrementAndGet, 1, TimeUnit.MILLISECONDS));
+		assertEquals(0, runs.get());
+		assertFalse(this.workers.isShutdown());
+	}
+}
@@ -0,0 +1,75 @@
+package nl.andrewl.concord_server.util;
+
+import nl.andrewl.concord_server.config.ServerConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeOrderedIdProviderTest {
+	@Test
+	public void testIdsAreStrictlyIncreasingInEachThread() throws Exception {
+		var provider = new TimeOrderedIdProvider(42);
+		int threads = 4;
+		int idsPerThread = 50_000;
+		var pool = Executors.newFixedThreadPool(threads);
+		List<Future<List<UUID>>> futures = new ArrayList<>();
+		try {
+			for (int t = 0; t < threads; t++) {
+				futures.add(pool.submit(() -> {
+					List<UUID> ids = new ArrayList<>(idsPerThread);
+					for (int i = 0; i < idsPerThread; i++) ids.add(provider.newId());
+					return ids;
+				}));
+			}
+			var allIds = ConcurrentHashMap.<UUID>newKeySet();
+			for (var future : futures) {
+				var ids = future.get(10, TimeUnit.SECONDS);
+				for (int i = 1; i < ids.size(); i++) {
+					assertTrue(ids.get(i - 1).compareTo(ids.get(i)) < 0);
+				}
+				allIds.addAll(ids);
+			}
+			assertEquals(threads * idsPerThread, allIds.size());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testIdsContainTheNodeNumber() {
+		var a = new TimeOrderedIdProvider(0).newId();
+		var b = new TimeOrderedIdProvider(TimeOrderedIdProvider.MAX_NODE).newId();
+		assertEquals(7, a.version());
+		assertEquals(2, a.variant());
+		assertEquals(0, a.getMostSignificantBits() & 0xFFF);
+		assertEquals(0, a.getLeastSignificantBits() >>> 58 & 0xF);
+		assertEquals(0xFFF, b.getMostSignificantBits() & 0xFFF);
+		assertEquals(0xF, b.getLeastSignificantBits() >>> 58 & 0xF);
+	}
+
+	@Test
+	public void testInvalidNodeNumbersAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIdProvider(-1));
+		assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIdProvider(TimeOrderedIdProvider.MAX_NODE + 1));
+	}
+
+	@Test
+	public void testClusterNodeNumbersMustBeUnique() {
+		var cluster = new ServerConfig.ClusterConfig();
+		cluster.setNodeId("b");
+		cluster.setNodes(List.of(
+				new ServerConfig.NodeConfig("a", "localhost", 8124, null),
+				new ServerConfig.NodeConfig("b", "localhost", 8125, null)
+		));
+		assertEquals(1, cluster.getLocalNodeNumber());
+		cluster.getNodes().get(1).setNumber(7);
+		assertEquals(7, cluster.getLocalNodeNumber());
+		cluster.getNodes().get(0).setNumber(7);
+		assertThrows(IllegalArgumentException.class, cluster::getLocalNodeNumber);
+	}
+}
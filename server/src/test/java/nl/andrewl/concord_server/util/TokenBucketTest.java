@@ -0,0 +1,60 @@
+package nl.andrewl.concord_server.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBucketTest {
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	public void testBurstIsAvailableRightAway() {
+		var bucket = new TokenBucket(10, 5, 0);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, bucket.take(0));
+		}
+		assertEquals(SECOND / 10, bucket.take(0));
+	}
+
+	@Test
+	public void testRefillsOverTime() {
+		var bucket = new TokenBucket(10, 5, 0);
+		for (int i = 0; i < 5; i++) bucket.take(0);
+		// After 300 ms, 3 tokens have been added.
+		long now = 300 * 1_000_000L;
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, bucket.take(now));
+		}
+		assertEquals(SECOND / 10, bucket.take(now));
+	}
+
+	@Test
+	public void testRefillIsCappedAtBurst() {
+		var bucket = new TokenBucket(10, 5, 0);
+		for (int i = 0; i < 5; i++) bucket.take(0);
+		long now = 60 * SECOND;
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, bucket.take(now));
+		}
+		assertTrue(bucket.take(now) > 0);
+	}
+
+	@Test
+	public void testWaitGrowsWithDebt() {
+		var bucket = new TokenBucket(2, 1, 0);
+		assertEquals(0, bucket.take(0));
+		assertEquals(SECOND / 2, bucket.take(0));
+		assertEquals(SECOND, bucket.take(0));
+		// Once the client has waited, its debt is paid, and the next token
+		// takes just as long as one from an empty bucket.
+		assertEquals(SECOND / 2, bucket.take(SECOND));
+	}
+
+	@Test
+	public void testRateMustBePositive() {
+		assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 5));
+		assertThrows(IllegalArgumentException.class, () -> new TokenBucket(-1, 5));
+	}
+}